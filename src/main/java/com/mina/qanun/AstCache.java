@@ -0,0 +1,912 @@
+package com.mina.qanun;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On disk cache of parsed and resolved programs. A '.qanc' file holds the
+ * statements of one source file together with the scope distances the
+ * Resolver computed for them, keyed by the SHA-256 of the source and the
+ * interpreter version. Caches live next to the source unless the
+ * 'qanun.cache.dir' property names a directory, 'qanun.cache=false' turns
+ * caching off.
+ *
+ * @author mina
+ */
+final class AstCache {
+
+	static final String EXTENSION = ".qanc";
+	// bump whenever the layout below or the shape of the AST changes
+	private static final int FORMAT_VERSION = 1;
+	private static final int MAGIC = 0x51414E43;
+
+	// expression tags
+	private static final int NULL = 0;
+	private static final int ASSIGN = 1;
+	private static final int BINARY = 2;
+	private static final int CALL = 3;
+	private static final int GET = 4;
+	private static final int SET = 5;
+	private static final int THIS = 6;
+	private static final int SUPER = 7;
+	private static final int GROUPING = 8;
+	private static final int LIST_ACCESSOR = 9;
+	private static final int LIST_MUTATOR = 10;
+	private static final int LITERAL = 11;
+	private static final int QANUN_LIST = 12;
+	private static final int LOGICAL = 13;
+	private static final int ANONYMOUS_FUN = 14;
+	private static final int UNARY = 15;
+	private static final int VARIABLE = 16;
+	private static final int CONDITIONAL_TERNARY = 17;
+
+	// statement tags
+	private static final int BLOCK = 1;
+	private static final int EXPRESSION = 2;
+	private static final int FUNCTION = 3;
+	private static final int CLASS = 4;
+	private static final int IF = 5;
+	private static final int RETURN = 6;
+	private static final int VAR = 7;
+	private static final int VAL = 8;
+	private static final int WHILE = 9;
+	private static final int FOR = 10;
+	private static final int FOR_EACH = 11;
+	private static final int BREAK = 12;
+	private static final int CONTINUE = 13;
+	private static final int SWITCH = 14;
+	private static final int IMPORT = 15;
+	private static final int PARALLEL_FOR_EACH = 16;
+
+	// literal tags
+	private static final int NIL = 0;
+	private static final int TRUE = 1;
+	private static final int FALSE = 2;
+	private static final int LONG = 3;
+	private static final int DOUBLE = 4;
+	private static final int STRING = 5;
+
+	private final Path file;
+	private final byte[] hash;
+
+	private AstCache(Path file, byte[] hash) {
+		this.file = file;
+		this.hash = hash;
+	}
+
+	// returns null when caching is turned off
+	static AstCache forSource(Path source, byte[] content, boolean isModule) {
+		if ("false".equals(System.getProperty("qanun.cache"))) {
+			return null;
+		}
+		byte[] hash;
+		try {
+			// modules are resolved differently from scripts
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update((byte) (isModule ? 1 : 0));
+			hash = digest.digest(content);
+		} catch (NoSuchAlgorithmException exception) {
+			return null;
+		}
+		String directory = System.getProperty("qanun.cache.dir");
+		if (directory != null) {
+			// the key is the content so identical sources share an entry
+			return new AstCache(Paths.get(directory, toHex(hash) + EXTENSION), hash);
+		}
+		String name = source.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+		return new AstCache(source.toAbsolutePath().resolveSibling(name + EXTENSION), hash);
+	}
+
+	// returns the cached statements and puts their scope distances into
+	// locals, or null when there is no valid entry
+	List<Stmt> load(Map<Expr, Integer> locals) {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			Reader reader = new Reader(buffer);
+			if (!reader.readHeader(MAGIC, hash)) {
+				return null;
+			}
+			List<Stmt> statements = reader.readStatements();
+			locals.putAll(reader.getLocals());
+			return statements;
+		} catch (IOException | RuntimeException exception) {
+			// a truncated or foreign file is just a cache miss
+			return null;
+		}
+	}
+
+	// the cache is best effort, failing to write it is not an error
+	void store(List<Stmt> statements, Map<Expr, Integer> locals) {
+		try {
+			Writer writer = new Writer(locals);
+			writer.writeStatements(statements);
+			byte[] bytes = writer.write(MAGIC, hash);
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try {
+				Files.write(temporary, bytes);
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (IOException | RuntimeException exception) {
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	// the encoding is shared with bundles, which hold several programs
+	static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+		private final Map<Expr, Integer> locals;
+		private final Map<String, Integer> strings = new LinkedHashMap<>();
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		Writer(Map<Expr, Integer> locals) {
+			this.locals = locals;
+		}
+
+		// the header followed by everything written so far
+		byte[] write(int magic, byte[] hash) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(bytes);
+			header.writeInt(magic);
+			header.writeInt(FORMAT_VERSION);
+			header.writeUTF(Qanun.VERSION);
+			header.write(hash);
+			header.flush();
+			ByteArrayOutputStream pool = new ByteArrayOutputStream();
+			writeVarInt(pool, strings.size());
+			for (String string : strings.keySet()) {
+				byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(pool, utf8.length);
+				pool.write(utf8);
+			}
+			pool.writeTo(bytes);
+			body.writeTo(bytes);
+			return bytes.toByteArray();
+		}
+
+		void writeInt(int value) {
+			writeVarInt(body, value);
+		}
+
+		void writeStatements(List<? extends Stmt> statements) {
+			if (statements == null) {
+				writeVarInt(body, 0);
+				return;
+			}
+			writeVarInt(body, statements.size() + 1);
+			for (Stmt statement : statements) {
+				writeStmt(statement);
+			}
+		}
+
+		private void writeExpressions(List<Expr> expressions) {
+			writeVarInt(body, expressions.size());
+			for (Expr expression : expressions) {
+				writeExpr(expression);
+			}
+		}
+
+		private void writeStmt(Stmt statement) {
+			if (statement == null) {
+				body.write(NULL);
+				return;
+			}
+			statement.accept(this);
+		}
+
+		private void writeExpr(Expr expression) {
+			if (expression == null) {
+				body.write(NULL);
+				return;
+			}
+			expression.accept(this);
+		}
+
+		// writes the resolved scope distance of a variable reference
+		private void writeDepth(Expr expression) {
+			Integer depth = locals.get(expression);
+			writeVarInt(body, depth == null ? 0 : depth + 1);
+		}
+
+		private void writeToken(Token token) {
+			if (token == null) {
+				writeVarInt(body, 0);
+				return;
+			}
+			writeVarInt(body, token.getType() == null ? 1 : token.getType().ordinal() + 2);
+			writeString(token.getLexeme());
+			writeLiteral(token.getLiteral());
+			writeVarInt(body, token.getLine() + 1);
+		}
+
+		void writeString(String string) {
+			Integer index = strings.get(string);
+			if (index == null) {
+				index = strings.size();
+				strings.put(string, index);
+			}
+			writeVarInt(body, index);
+		}
+
+		void writeExpression(Expr expression) {
+			writeExpr(expression);
+		}
+
+		void writeLiteral(Object value) {
+			if (value == null) {
+				body.write(NIL);
+			} else if (value instanceof Boolean) {
+				body.write((Boolean) value ? TRUE : FALSE);
+			} else if (value instanceof Long) {
+				body.write(LONG);
+				long number = (Long) value;
+				writeVarLong(body, (number << 1) ^ (number >> 63));
+			} else if (value instanceof Double) {
+				body.write(DOUBLE);
+				writeVarLong(body, Double.doubleToRawLongBits((Double) value));
+			} else if (value instanceof String) {
+				body.write(STRING);
+				writeString((String) value);
+			} else {
+				throw new IllegalStateException("Can't cache literal " + value);
+			}
+		}
+
+		private static void writeVarInt(ByteArrayOutputStream out, int value) {
+			writeVarLong(out, value & 0xffffffffL);
+		}
+
+		private static void writeVarLong(ByteArrayOutputStream out, long value) {
+			while ((value & ~0x7fL) != 0) {
+				out.write((int) ((value & 0x7f) | 0x80));
+				value >>>= 7;
+			}
+			out.write((int) value);
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			body.write(ASSIGN);
+			writeToken(expr.name);
+			writeExpr(expr.value);
+			writeToken(expr.equalSign);
+			writeDepth(expr);
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			body.write(BINARY);
+			writeExpr(expr.left);
+			writeToken(expr.operator);
+			writeExpr(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			body.write(CALL);
+			writeExpr(expr.callee);
+			writeToken(expr.paren);
+			writeExpressions(expr.arguments);
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			body.write(GET);
+			writeExpr(expr.object);
+			writeToken(expr.name);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			body.write(SET);
+			writeExpr(expr.object);
+			writeToken(expr.name);
+			writeExpr(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			body.write(THIS);
+			writeToken(expr.keyword);
+			writeDepth(expr);
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			body.write(SUPER);
+			writeToken(expr.keyword);
+			writeToken(expr.method);
+			writeDepth(expr);
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			body.write(GROUPING);
+			writeExpr(expr.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitListAccessorExpr(Expr.ListAccessor expr) {
+			body.write(LIST_ACCESSOR);
+			writeExpr(expr.object);
+			writeToken(expr.name);
+			writeExpr(expr.index);
+			return null;
+		}
+
+		@Override
+		public Void visitListMutatorExpr(Expr.ListMutator expr) {
+			body.write(LIST_MUTATOR);
+			writeExpr(expr.object);
+			writeToken(expr.name);
+			writeExpr(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			body.write(LITERAL);
+			writeLiteral(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitQanunListExpr(Expr.QanunList expr) {
+			body.write(QANUN_LIST);
+			writeExpressions(expr.list);
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			body.write(LOGICAL);
+			writeExpr(expr.left);
+			writeToken(expr.operator);
+			writeExpr(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitAnonymousFunExpr(Expr.AnonymousFun expr) {
+			body.write(ANONYMOUS_FUN);
+			// getter style methods have no parameter list at all
+			if (expr.params == null) {
+				writeVarInt(body, 0);
+			} else {
+				writeVarInt(body, expr.params.size() + 1);
+				for (Token param : expr.params) {
+					writeToken(param);
+				}
+			}
+			writeStatements(expr.body);
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			body.write(UNARY);
+			writeToken(expr.operator);
+			writeExpr(expr.right);
+			body.write(expr.isPostFix ? 1 : 0);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			body.write(VARIABLE);
+			writeToken(expr.name);
+			writeDepth(expr);
+			return null;
+		}
+
+		@Override
+		public Void visitConditionalTernaryExpr(Expr.ConditionalTernary expr) {
+			body.write(CONDITIONAL_TERNARY);
+			writeExpr(expr.condition);
+			writeExpr(expr.trueCondition);
+			writeExpr(expr.falseCondition);
+			return null;
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			body.write(BLOCK);
+			writeStatements(stmt.statements);
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			body.write(EXPRESSION);
+			writeExpr(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			body.write(FUNCTION);
+			writeToken(stmt.name);
+			writeExpr(stmt.anonFun);
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			body.write(CLASS);
+			writeToken(stmt.name);
+			writeExpr(stmt.superClass);
+			writeStatements(stmt.methods);
+			writeStatements(stmt.staticMethods);
+			return null;
+		}
+
+		@Override
+		public Void visitModuleStmt(Stmt.Module stmt) {
+			// modules are built by the interpreter, the parser never produces them
+			throw new IllegalStateException("Can't cache a module statement");
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			body.write(IF);
+			writeExpr(stmt.condition);
+			writeStmt(stmt.thenBranch);
+			writeStmt(stmt.elseBranch);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			body.write(RETURN);
+			writeToken(stmt.keyword);
+			writeExpr(stmt.value);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			body.write(VAR);
+			writeToken(stmt.name);
+			writeExpr(stmt.initializer);
+			return null;
+		}
+
+		@Override
+		public Void visitValStmt(Stmt.Val stmt) {
+			body.write(VAL);
+			writeToken(stmt.name);
+			writeExpr(stmt.initializer);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			body.write(WHILE);
+			writeExpr(stmt.condition);
+			writeStmt(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitForStmt(Stmt.For stmt) {
+			body.write(FOR);
+			writeStmt(stmt.init);
+			writeExpr(stmt.condition);
+			writeExpr(stmt.increment);
+			writeStmt(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitForEachStmt(Stmt.ForEach stmt) {
+			body.write(FOR_EACH);
+			writeStmt(stmt.init);
+			writeExpr(stmt.iterable);
+			writeStmt(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitParallelForEachStmt(Stmt.ParallelForEach stmt) {
+			body.write(PARALLEL_FOR_EACH);
+			writeToken(stmt.keyword);
+			writeStmt(stmt.loop);
+			writeVarInt(body, stmt.reductions.size());
+			for (int i = 0; i < stmt.reductions.size(); i++) {
+				writeExpr(stmt.reductions.get(i));
+				writeToken(stmt.operators.get(i));
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitBreakStmt(Stmt.Break stmt) {
+			body.write(BREAK);
+			writeToken(stmt.name);
+			return null;
+		}
+
+		@Override
+		public Void visitContinueStmt(Stmt.Continue stmt) {
+			body.write(CONTINUE);
+			writeToken(stmt.name);
+			return null;
+		}
+
+		@Override
+		public Void visitSwitchStmt(Stmt.Switch stmt) {
+			body.write(SWITCH);
+			writeExpr(stmt.expression);
+			writeVarInt(body, stmt.values.size());
+			for (Object value : stmt.values) {
+				writeLiteral(value);
+			}
+			writeVarInt(body, stmt.actions.size());
+			for (List<Stmt> action : stmt.actions) {
+				writeStatements(action);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitImportStmt(Stmt.Import stmt) {
+			body.write(IMPORT);
+			writeToken(stmt.keyword);
+			writeExpr(stmt.path);
+			return null;
+		}
+	}
+
+	static final class Reader {
+
+		private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+		private final ByteBuffer buffer;
+		private final Map<Expr, Integer> locals = new LinkedHashMap<>();
+		private String[] strings;
+
+		Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		boolean readHeader(int magic, byte[] hash) {
+			if (buffer.getInt() != magic || buffer.getInt() != FORMAT_VERSION) {
+				return false;
+			}
+			byte[] version = new byte[buffer.getShort() & 0xffff];
+			buffer.get(version);
+			// writeUTF only differs from UTF-8 for characters a version string won't have
+			if (!Qanun.VERSION.equals(new String(version, StandardCharsets.UTF_8))) {
+				return false;
+			}
+			byte[] cached = new byte[hash.length];
+			buffer.get(cached);
+			if (!Arrays.equals(cached, hash)) {
+				return false;
+			}
+			strings = new String[readVarInt()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] utf8 = new byte[readVarInt()];
+				buffer.get(utf8);
+				strings[i] = new String(utf8, StandardCharsets.UTF_8);
+			}
+			return true;
+		}
+
+		// the scope distances of everything read so far
+		Map<Expr, Integer> getLocals() {
+			return locals;
+		}
+
+		int readInt() {
+			return readVarInt();
+		}
+
+		String readString() {
+			return strings[readVarInt()];
+		}
+
+		List<Stmt> readStatements() {
+			int size = readVarInt();
+			if (size == 0) {
+				return null;
+			}
+			List<Stmt> statements = new ArrayList<>(size - 1);
+			for (int i = 1; i < size; i++) {
+				statements.add(readStmt());
+			}
+			return statements;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T extends Stmt> List<T> readStatements(Class<T> type) {
+			return (List<T>) readStatements();
+		}
+
+		private List<Expr> readExpressions() {
+			int size = readVarInt();
+			List<Expr> expressions = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				expressions.add(readExpr());
+			}
+			return expressions;
+		}
+
+		private <T extends Expr> T readDepth(T expression) {
+			int depth = readVarInt();
+			if (depth != 0) {
+				locals.put(expression, depth - 1);
+			}
+			return expression;
+		}
+
+		private Expr readExpr() {
+			int tag = buffer.get();
+			switch (tag) {
+				case NULL:
+					return null;
+				case ASSIGN: {
+					Token name = readToken();
+					Expr value = readExpr();
+					return readDepth(new Expr.Assign(name, value, readToken()));
+				}
+				case BINARY: {
+					Expr left = readExpr();
+					Token operator = readToken();
+					return new Expr.Binary(left, operator, readExpr());
+				}
+				case CALL: {
+					Expr callee = readExpr();
+					Token paren = readToken();
+					return new Expr.Call(callee, paren, readExpressions());
+				}
+				case GET: {
+					Expr object = readExpr();
+					return new Expr.Get(object, readToken());
+				}
+				case SET: {
+					Expr object = readExpr();
+					Token name = readToken();
+					return new Expr.Set(object, name, readExpr());
+				}
+				case THIS:
+					return readDepth(new Expr.This(readToken()));
+				case SUPER: {
+					Token keyword = readToken();
+					return readDepth(new Expr.Super(keyword, readToken()));
+				}
+				case GROUPING:
+					return new Expr.Grouping(readExpr());
+				case LIST_ACCESSOR: {
+					Expr object = readExpr();
+					Token name = readToken();
+					return new Expr.ListAccessor(object, name, readExpr());
+				}
+				case LIST_MUTATOR: {
+					Expr object = readExpr();
+					Token name = readToken();
+					return new Expr.ListMutator(object, name, readExpr());
+				}
+				case LITERAL:
+					return new Expr.Literal(readLiteral());
+				case QANUN_LIST:
+					return new Expr.QanunList(readExpressions());
+				case LOGICAL: {
+					Expr left = readExpr();
+					Token operator = readToken();
+					return new Expr.Logical(left, operator, readExpr());
+				}
+				case ANONYMOUS_FUN: {
+					int size = readVarInt();
+					List<Token> params = null;
+					if (size != 0) {
+						params = new ArrayList<>(size - 1);
+						for (int i = 1; i < size; i++) {
+							params.add(readToken());
+						}
+					}
+					return new Expr.AnonymousFun(params, readStatements());
+				}
+				case UNARY: {
+					Token operator = readToken();
+					Expr right = readExpr();
+					return new Expr.Unary(operator, right, buffer.get() != 0);
+				}
+				case VARIABLE:
+					return readDepth(new Expr.Variable(readToken()));
+				case CONDITIONAL_TERNARY: {
+					Expr condition = readExpr();
+					Expr trueCondition = readExpr();
+					return new Expr.ConditionalTernary(condition, trueCondition, readExpr());
+				}
+				default:
+					throw new IllegalStateException("Unknown expression tag " + tag);
+			}
+		}
+
+		private Stmt readStmt() {
+			int tag = buffer.get();
+			switch (tag) {
+				case NULL:
+					return null;
+				case BLOCK:
+					return new Stmt.Block(readStatements());
+				case EXPRESSION:
+					return new Stmt.Expression(readExpr());
+				case FUNCTION: {
+					Token name = readToken();
+					return new Stmt.Function(name, (Expr.AnonymousFun) readExpr());
+				}
+				case CLASS: {
+					Token name = readToken();
+					Expr.Variable superClass = (Expr.Variable) readExpr();
+					List<Stmt.Function> methods = readStatements(Stmt.Function.class);
+					return new Stmt.Class(name, superClass, methods, readStatements(Stmt.Function.class));
+				}
+				case IF: {
+					Expr condition = readExpr();
+					Stmt thenBranch = readStmt();
+					return new Stmt.If(condition, thenBranch, readStmt());
+				}
+				case RETURN: {
+					Token keyword = readToken();
+					return new Stmt.Return(keyword, readExpr());
+				}
+				case VAR: {
+					Token name = readToken();
+					return new Stmt.Var(name, readExpr());
+				}
+				case VAL: {
+					Token name = readToken();
+					return new Stmt.Val(name, readExpr());
+				}
+				case WHILE: {
+					Expr condition = readExpr();
+					return new Stmt.While(condition, readStmt());
+				}
+				case FOR: {
+					Stmt init = readStmt();
+					Expr condition = readExpr();
+					Expr increment = readExpr();
+					return new Stmt.For(init, condition, increment, readStmt());
+				}
+				case FOR_EACH: {
+					Stmt init = readStmt();
+					Expr iterable = readExpr();
+					return new Stmt.ForEach(init, iterable, readStmt());
+				}
+				case PARALLEL_FOR_EACH: {
+					Token keyword = readToken();
+					Stmt.ForEach loop = (Stmt.ForEach) readStmt();
+					int size = readVarInt();
+					List<Expr.Variable> reductions = new ArrayList<>(size);
+					List<Token> operators = new ArrayList<>(size);
+					for (int i = 0; i < size; i++) {
+						reductions.add((Expr.Variable) readExpr());
+						operators.add(readToken());
+					}
+					return new Stmt.ParallelForEach(keyword, loop, reductions, operators);
+				}
+				case BREAK:
+					return new Stmt.Break(readToken());
+				case CONTINUE:
+					return new Stmt.Continue(readToken());
+				case SWITCH: {
+					Expr expression = readExpr();
+					int size = readVarInt();
+					List<Object> values = new ArrayList<>(size);
+					for (int i = 0; i < size; i++) {
+						values.add(readLiteral());
+					}
+					size = readVarInt();
+					List<List<Stmt>> actions = new ArrayList<>(size);
+					for (int i = 0; i < size; i++) {
+						actions.add(readStatements());
+					}
+					return new Stmt.Switch(expression, values, actions);
+				}
+				case IMPORT: {
+					Token keyword = readToken();
+					return new Stmt.Import(keyword, readExpr());
+				}
+				default:
+					throw new IllegalStateException("Unknown statement tag " + tag);
+			}
+		}
+
+		private Token readToken() {
+			int type = readVarInt();
+			if (type == 0) {
+				return null;
+			}
+			String lexeme = strings[readVarInt()];
+			Object literal = readLiteral();
+			int line = readVarInt() - 1;
+			return new Token(type == 1 ? null : TOKEN_TYPES[type - 2], lexeme, literal, line);
+		}
+
+		Expr readExpression() {
+			return readExpr();
+		}
+
+		Object readLiteral() {
+			int tag = buffer.get();
+			switch (tag) {
+				case NIL:
+					return null;
+				case TRUE:
+					return true;
+				case FALSE:
+					return false;
+				case LONG: {
+					long encoded = readVarLong();
+					return QanunNumber.valueOf((encoded >>> 1) ^ -(encoded & 1));
+				}
+				case DOUBLE:
+					return Double.longBitsToDouble(readVarLong());
+				case STRING:
+					return strings[readVarInt()];
+				default:
+					throw new IllegalStateException("Unknown literal tag " + tag);
+			}
+		}
+
+		private int readVarInt() {
+			return (int) readVarLong();
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				value |= (long) (b & 0x7f) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+	}
+}
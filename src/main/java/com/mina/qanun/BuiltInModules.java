@@ -13,10 +13,13 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -24,167 +27,277 @@ import java.util.List;
  */
 class BuiltInModules {
 
-	static final QanunNativeInstance File = new QanunNativeInstance("File", new HashMap<String, QanunCallable>() {
-		{
-			put("readFile", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 1;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> arguments) {
-					String contents;
-					try {
-						BufferedReader bufferedReader = new BufferedReader(new FileReader(interpreter.stringify(arguments.get(0))));
-						String line;
-						contents = "";
-						while ((line = bufferedReader.readLine()) != null) {
-							contents += line + "\n";
-						}
-					} catch (IOException exception) {
-						return null;
-					}
-					if (contents.length() > 0 && contents.charAt(contents.length() - 1) == '\n') {
-						contents = contents.substring(0, contents.length() - 1);
-					}
-					return contents;
-				}
-			});
-
-			put("writeFile", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 2;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> arguments) {
-					try {
-						try ( // File path is 1st argument
-								 BufferedWriter bw = new BufferedWriter(new FileWriter(interpreter.stringify(arguments.get(0))))) {
-							// Data is 2nd argument
-							bw.write(interpreter.stringify(arguments.get(1)));
-						}
-						return true;
-					} catch (IOException exception) {
-						return false;
-					}
-				}
-			});
-
-			put("appenFile", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 2;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> arguments) {
-					try {
-						try ( // File path is 1st argument
-								 BufferedWriter bw = new BufferedWriter(new FileWriter(interpreter.stringify(arguments.get(0)), true))) {
-							// Data is 2nd argument
-							bw.append(interpreter.stringify(arguments.get(1)));
-						}
-						return true;
-					} catch (IOException exception) {
-						return false;
-					}
-				}
-			});
+	// the modules a 'std:' import accepts
+	static final List<String> NAMES = Arrays.asList("File", "Time", "Crypto", "Isolate", "Task", "Concurrent", "Future");
+	// what '*' imports, modules added since have to be imported by name so
+	// scripts that declare globals with their names keep working
+	static final List<String> STAR = Arrays.asList("File", "Time", "Crypto");
+	private static final Map<String, QanunNativeInstance> MODULES = new ConcurrentHashMap<>();
 
+	// formatters are immutable and can be shared, digests keep state so
+	// each thread reuses its own instance
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+	private static final DateTimeFormatter DATE_AND_TIME_FORMAT = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
+	private static final ThreadLocal<MessageDigest> SHA3_256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA3-256");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
 		}
 	});
-	static final QanunNativeInstance Time = new QanunNativeInstance("Time", new HashMap<String, QanunCallable>() {
-		{
-			put("time", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 0;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> args) {
-					Date date = new Date();
-					SimpleDateFormat formatter = new SimpleDateFormat("HH:mm:ss");
-					return formatter.format(date);
-				}
-			});
-
-			put("date", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 0;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> args) {
-					Date date = new Date();
-					SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy");
-					return formatter.format(date);
-				}
-			});
-
-			put("dateAndTime", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 0;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> args) {
-					Date date = new Date();
-					SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
-					return formatter.format(date);
-				}
-			});
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	@QanunNative(value = "readFile", module = "File")
+	static String readFile(Interpreter interpreter, Object path) {
+		String contents;
+		try {
+			BufferedReader bufferedReader = new BufferedReader(new FileReader(interpreter.getContext().resolve(interpreter.stringify(path)).toFile()));
+			String line;
+			contents = "";
+			while ((line = bufferedReader.readLine()) != null) {
+				contents += line + "\n";
+			}
+		} catch (IOException exception) {
+			return null;
 		}
-	});
-	static final QanunNativeInstance Crypto = new QanunNativeInstance("Crypto", new HashMap<String, QanunCallable>() {
-		{
-			put("sha", new QanunCallable() {
-				@Override
-				public int arity() {
-					return 1;
-				}
-
-				@Override
-				public Object call(Interpreter interpreter, List<Object> args) {
-					String originalString = (String) args.get(0);
-					MessageDigest digest;
-					try {
-						digest = MessageDigest.getInstance("SHA3-256");
-						byte[] hash = digest.digest(originalString.getBytes(StandardCharsets.UTF_8));
-						return bytesToHex(hash);
-					} catch (NoSuchAlgorithmException e) {
-						System.err.println("Oops, couldn't hash your string.");
-					}
-
-					return null;
-				}
-			});
+		if (contents.length() > 0 && contents.charAt(contents.length() - 1) == '\n') {
+			contents = contents.substring(0, contents.length() - 1);
 		}
-	});
+		return contents;
+	}
+
+	@QanunNative(value = "writeFile", module = "File")
+	static boolean writeFile(Interpreter interpreter, Object path, Object data) {
+		try {
+			try ( // File path is 1st argument
+					 BufferedWriter bw = new BufferedWriter(new FileWriter(interpreter.getContext().resolve(interpreter.stringify(path)).toFile()))) {
+				// Data is 2nd argument
+				bw.write(interpreter.stringify(data));
+			}
+			return true;
+		} catch (IOException exception) {
+			return false;
+		}
+	}
+
+	@QanunNative(value = "appenFile", module = "File")
+	static boolean appendFile(Interpreter interpreter, Object path, Object data) {
+		try {
+			try ( // File path is 1st argument
+					 BufferedWriter bw = new BufferedWriter(new FileWriter(interpreter.getContext().resolve(interpreter.stringify(path)).toFile(), true))) {
+				// Data is 2nd argument
+				bw.append(interpreter.stringify(data));
+			}
+			return true;
+		} catch (IOException exception) {
+			return false;
+		}
+	}
+
+	@QanunNative(value = "time", module = "Time")
+	static String time() {
+		return TIME_FORMAT.format(LocalDateTime.now());
+	}
 
-	static void importAll(Environment environment) {
-		environment.define(new Token(null, BuiltInModules.File.getName(), null, -1), File);
-		environment.define(new Token(null, BuiltInModules.Time.getName(), null, -1), Time);
-		environment.define(new Token(null, BuiltInModules.Crypto.getName(), null, -1), Crypto);
+	@QanunNative(value = "date", module = "Time")
+	static String date() {
+		return DATE_FORMAT.format(LocalDateTime.now());
+	}
 
+	@QanunNative(value = "dateAndTime", module = "Time")
+	static String dateAndTime() {
+		return DATE_AND_TIME_FORMAT.format(LocalDateTime.now());
+	}
+
+	@QanunNative(value = "sha", module = "Crypto")
+	static String sha(String originalString) {
+		MessageDigest digest = SHA3_256.get();
+		if (digest == null) {
+			System.err.println("Oops, couldn't hash your string.");
+			return null;
+		}
+		byte[] hash = digest.digest(originalString.getBytes(StandardCharsets.UTF_8));
+		return bytesToHex(hash);
+	}
+
+	// spawns a program file
+	@QanunNative(value = "spawn", module = "Isolate")
+	static Isolate spawn(Interpreter interpreter, String path) {
+		return Isolate.spawn(interpreter, path);
+	}
+
+	// spawns a top level function, the argument is copied like a message
+	@QanunNative(value = "spawnFunction", module = "Isolate")
+	static Isolate spawnFunction(Interpreter interpreter, Object function, Object argument) {
+		Token token = token("spawnFunction");
+		if (!(function instanceof QanunFunction)) {
+			throw new RuntimeError(token, "Only functions can run in an isolate.");
+		}
+		return Isolate.spawn(interpreter, token, (QanunFunction) function, argument);
+	}
+
+	@QanunNative(value = "send", module = "Isolate")
+	static void send(Object isolate, Object message) {
+		isolate("send", isolate).send(token("send"), message);
+	}
+
+	@QanunNative(value = "receive", module = "Isolate")
+	static Object receive(Object isolate) {
+		return isolate("receive", isolate).receive(token("receive"));
+	}
+
+	@QanunNative(value = "join", module = "Isolate")
+	static Object join(Object isolate) {
+		return isolate("join", isolate).join(token("join"));
+	}
+
+	// inside an isolate, the next message of the spawner
+	@QanunNative(value = "take", module = "Isolate")
+	static Object take(Interpreter interpreter) {
+		return current(interpreter, "take").take(token("take"));
+	}
+
+	// inside an isolate, a message for the spawner
+	@QanunNative(value = "post", module = "Isolate")
+	static void post(Interpreter interpreter, Object message) {
+		current(interpreter, "post").post(token("post"), message);
+	}
+
+	@QanunNative(value = "spawn", module = "Task")
+	static Task spawnTask(Interpreter interpreter, Object function) {
+		return Task.spawn(interpreter, token("spawn"), function);
+	}
+
+	@QanunNative(value = "await", module = "Task")
+	static Object await(Object task) {
+		return task("await", task).await(token("await"));
+	}
+
+	@QanunNative(value = "join", module = "Task")
+	static boolean joinTask(Object task) {
+		return task("join", task).join(token("join"));
+	}
+
+	@QanunNative(value = "cancel", module = "Task")
+	static boolean cancel(Object task) {
+		return task("cancel", task).cancel();
+	}
+
+	@QanunNative(value = "isDone", module = "Task")
+	static boolean isDone(Object task) {
+		return task("isDone", task).isDone();
+	}
+
+	// long computations call it to stop once their task was cancelled
+	@QanunNative(value = "cancelled", module = "Task")
+	static boolean cancelled() {
+		return Thread.currentThread().isInterrupted();
+	}
+
+	@QanunNative(value = "scope", module = "Task")
+	static Object scope(Interpreter interpreter, Object function) {
+		return Task.scope(interpreter, token("scope"), function);
+	}
+
+	@QanunNative(value = "atomic", module = "Concurrent")
+	static QanunAtomic atomic(Object initial) {
+		return new QanunAtomic(initial);
+	}
+
+	@QanunNative(value = "counter", module = "Concurrent")
+	static QanunCounter counter() {
+		return new QanunCounter();
+	}
+
+	@QanunNative(value = "map", module = "Concurrent")
+	static QanunConcurrentMap map() {
+		return new QanunConcurrentMap();
+	}
+
+	@QanunNative(value = "queue", module = "Concurrent")
+	static QanunConcurrentQueue queue() {
+		return new QanunConcurrentQueue(Integer.MAX_VALUE);
+	}
+
+	@QanunNative(value = "boundedQueue", module = "Concurrent")
+	static QanunConcurrentQueue boundedQueue(long capacity) {
+		if (capacity < 1 || capacity > Integer.MAX_VALUE) {
+			throw new RuntimeError(token("boundedQueue"), "A queue's capacity must be a positive integer.");
+		}
+		return new QanunConcurrentQueue((int) capacity);
+	}
+
+	@QanunNative(value = "readWriteLock", module = "Concurrent")
+	static QanunReadWriteLock readWriteLock() {
+		return new QanunReadWriteLock();
+	}
+
+	// runs a function without parameters, the future has what it returns
+	@QanunNative(value = "run", module = "Future")
+	static QanunFuture run(Interpreter interpreter, Object function) {
+		return QanunFuture.run(interpreter, function);
+	}
+
+	@QanunNative(value = "completed", module = "Future")
+	static QanunFuture completed(Object value) {
+		return new QanunFuture(CompletableFuture.completedFuture(value));
+	}
+
+	// a future of the list of their values, in the same order
+	@QanunNative(value = "all", module = "Future")
+	static QanunFuture all(List<?> futures) {
+		return QanunFuture.all(futures);
+	}
+
+	@QanunNative(value = "any", module = "Future")
+	static QanunFuture any(List<?> futures) {
+		return QanunFuture.any(futures);
+	}
+
+	private static Task task(String function, Object value) {
+		if (!(value instanceof Task)) {
+			throw new RuntimeError(token(function), "Expect a task made by spawn.");
+		}
+		return (Task) value;
+	}
+
+	private static Isolate isolate(String function, Object value) {
+		if (!(value instanceof Isolate)) {
+			throw new RuntimeError(token(function), "Expect an isolate made by Isolate.spawn.");
+		}
+		return (Isolate) value;
+	}
+
+	private static Isolate current(Interpreter interpreter, String function) {
+		Isolate isolate = interpreter.getContext().isolate;
+		if (isolate == null) {
+			throw new RuntimeError(token(function), "Only a script running in an isolate can use Isolate." + function + ".");
+		}
+		return isolate;
+	}
+
+	private static Token token(String function) {
+		return new Token(TokenType.IDENTIFIER, function, null, 0);
+	}
+
+	static boolean exists(String name) {
+		return name.equals("*") || NAMES.contains(name);
+	}
+
+	// the instance of a module, created the first time a script uses it
+	static QanunNativeInstance get(String name) {
+		return MODULES.computeIfAbsent(name, module -> new QanunNativeInstance(module, NativeFunction.table(BuiltInModules.class, module)));
 	}
 
 	private static String bytesToHex(byte[] hash) {
-		StringBuilder hexString = new StringBuilder();
-		for (byte b : hash) {
-			String hex = Integer.toHexString(0xff & b);
-			if (hex.length() == 1) {
-				hexString.append("0");
-			}
-			hexString.append(hex);
+		char[] hexString = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hexString[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+			hexString[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
 		}
 
-		return hexString.toString();
+		return new String(hexString);
 	}
 
 }
@@ -0,0 +1,514 @@
+package com.mina.qanun;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A program linked together with every module it imports into one '.qanb'
+ * file of parsed and resolved statements. Module declarations nothing can
+ * reach are left out. Running a bundle needs a single file read, imports are
+ * looked up in the bundle instead of on disk.
+ *
+ * @author mina
+ */
+final class Bundle {
+
+	static final String EXTENSION = ".qanb";
+	private static final int MAGIC = 0x51414E42;
+	private static final byte[] NO_HASH = new byte[0];
+
+	private static final class Module {
+
+		final int index;
+		final String key;
+		final List<Stmt> statements;
+		// the top level declarations by name and the ones that are reachable
+		final Map<String, Stmt> declarations = new LinkedHashMap<>();
+		final Set<String> used = new HashSet<>();
+
+		Module(int index, String key, List<Stmt> statements) {
+			this.index = index;
+			this.key = key;
+			this.statements = statements;
+		}
+	}
+
+	private final QanunContext context;
+	private final Map<Expr, Integer> locals = new HashMap<>();
+	private final Map<String, Module> modules = new LinkedHashMap<>();
+	// module of every import path and the modules each name is bound to
+	private final Map<String, Module> paths = new LinkedHashMap<>();
+	private final Map<String, List<Module>> bindings = new HashMap<>();
+
+	private Bundle(QanunContext context) {
+		this.context = context;
+	}
+
+	// links the program at source into output, returns false if there were
+	// errors, which have been reported then
+	static boolean build(QanunContext context, Path source, Path output) throws IOException {
+		Bundle bundle = new Bundle(context);
+		List<Stmt> program = context.load(source, Files.readAllBytes(source), false, bundle.locals);
+		if (program == null) {
+			return false;
+		}
+		try {
+			bundle.link(program);
+		} catch (RuntimeError error) {
+			context.error(error.token, error.getMessage());
+			return false;
+		}
+		if (context.hadError) {
+			return false;
+		}
+		bundle.shake(program);
+		Files.write(output, bundle.write(program));
+		return true;
+	}
+
+	// reads the bundle and hands its modules to the interpreter, returns the
+	// statements of the program or null if the file isn't a valid bundle
+	static List<Stmt> load(Path path, Interpreter interpreter) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			AstCache.Reader reader = new AstCache.Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			if (!reader.readHeader(MAGIC, NO_HASH)) {
+				return null;
+			}
+			int count = reader.readInt();
+			List<String> keys = new ArrayList<>(count);
+			Map<String, ModuleGraph.Prepared> prepared = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				String key = reader.readString();
+				keys.add(key);
+				// distances of all modules go to the interpreter at once below
+				prepared.put(key, new ModuleGraph.Prepared(reader.readStatements(), new HashMap<>(), 0));
+			}
+			count = reader.readInt();
+			Map<String, String> imports = new HashMap<>();
+			for (int i = 0; i < count; i++) {
+				String importPath = reader.readString();
+				imports.put(importPath, keys.get(reader.readInt()));
+			}
+			List<Stmt> program = reader.readStatements();
+			interpreter.getLocals().putAll(reader.getLocals());
+			interpreter.useBundle(imports, prepared);
+			return program;
+		} catch (RuntimeException exception) {
+			return null;
+		}
+	}
+
+	// loads every module the statements import, directly or not
+	private void link(List<Stmt> statements) throws IOException {
+		for (Stmt.Import imp : uses(statements).imports) {
+			String modulePath = (String) ((Expr.Literal) imp.path).value;
+			if (modulePath.startsWith("std:")) {
+				// built in modules are part of every runtime
+				if (!BuiltInModules.exists(modulePath.substring("std:".length()))) {
+					throw new RuntimeError(imp.keyword, "No built in module with name '" + modulePath + "'");
+				}
+				continue;
+			}
+			File file = context.findModule(modulePath, imp.keyword);
+			Module module = modules.get(file.getPath());
+			if (module != null) {
+				paths.put(modulePath, module);
+				continue;
+			}
+			context.fileName = file.getPath();
+			List<Stmt> moduleStatements = context.load(file.toPath(), Files.readAllBytes(file.toPath()), true, locals);
+			if (moduleStatements == null) {
+				return;
+			}
+			module = new Module(modules.size(), file.getPath(), moduleStatements);
+			modules.put(module.key, module);
+			paths.put(modulePath, module);
+			bindings.computeIfAbsent(ModuleRegistry.moduleName(modulePath), name -> new ArrayList<>()).add(module);
+			for (Stmt statement : moduleStatements) {
+				String name = declaredName(statement);
+				if (name != null) {
+					module.declarations.put(name, statement);
+				}
+			}
+			link(moduleStatements);
+		}
+	}
+
+	// marks what the program can reach, initializers a module runs when it's
+	// imported are always reachable
+	private void shake(List<Stmt> program) {
+		mark(uses(program), null);
+		for (Module module : modules.values()) {
+			for (Map.Entry<String, Stmt> declaration : module.declarations.entrySet()) {
+				if (isEager(declaration.getValue())) {
+					use(module, declaration.getKey());
+				}
+			}
+		}
+	}
+
+	private void mark(Uses uses, Module owner) {
+		for (Map.Entry<String, Set<String>> members : uses.members.entrySet()) {
+			for (Module module : bindings.getOrDefault(members.getKey(), new ArrayList<>())) {
+				for (String member : members.getValue()) {
+					use(module, member);
+				}
+			}
+		}
+		for (String name : uses.names) {
+			// a module used as a value can have any of its members read
+			for (Module module : bindings.getOrDefault(name, new ArrayList<>())) {
+				for (String member : new ArrayList<>(module.declarations.keySet())) {
+					use(module, member);
+				}
+			}
+			if (owner != null) {
+				use(owner, name);
+			}
+		}
+	}
+
+	private void use(Module module, String name) {
+		Stmt declaration = module.declarations.get(name);
+		if (declaration != null && module.used.add(name)) {
+			List<Stmt> statements = new ArrayList<>();
+			statements.add(declaration);
+			mark(uses(statements), module);
+		}
+	}
+
+	private byte[] write(List<Stmt> program) throws IOException {
+		AstCache.Writer writer = new AstCache.Writer(locals);
+		writer.writeInt(modules.size());
+		for (Module module : modules.values()) {
+			writer.writeString(module.key);
+			List<Stmt> statements = new ArrayList<>();
+			for (Stmt statement : module.statements) {
+				String name = declaredName(statement);
+				if (statement instanceof Stmt.Import || (name != null && module.used.contains(name))) {
+					statements.add(statement);
+				}
+			}
+			writer.writeStatements(statements);
+		}
+		writer.writeInt(paths.size());
+		for (Map.Entry<String, Module> path : paths.entrySet()) {
+			writer.writeString(path.getKey());
+			writer.writeInt(path.getValue().index);
+		}
+		writer.writeStatements(program);
+		return writer.write(MAGIC, NO_HASH);
+	}
+
+	private static String declaredName(Stmt statement) {
+		if (statement instanceof Stmt.Class) {
+			return ((Stmt.Class) statement).name.getLexeme();
+		} else if (statement instanceof Stmt.Function) {
+			return ((Stmt.Function) statement).name.getLexeme();
+		} else if (statement instanceof Stmt.Var) {
+			return ((Stmt.Var) statement).name.getLexeme();
+		} else if (statement instanceof Stmt.Val) {
+			return ((Stmt.Val) statement).name.getLexeme();
+		}
+		return null;
+	}
+
+	// the same split the interpreter makes between lazy and eager declarations
+	private static boolean isEager(Stmt statement) {
+		if (statement instanceof Stmt.Var) {
+			return !ModuleEnvironment.isConstant(((Stmt.Var) statement).initializer);
+		} else if (statement instanceof Stmt.Val) {
+			Expr initializer = ((Stmt.Val) statement).initializer;
+			return initializer == null || !ModuleEnvironment.isConstant(initializer);
+		}
+		return false;
+	}
+
+	private static Uses uses(List<Stmt> statements) {
+		Uses uses = new Uses();
+		for (Stmt statement : statements) {
+			uses.visit(statement);
+		}
+		return uses;
+	}
+
+	/**
+	 * Collects the imports of some statements and the names they read, a
+	 * member read from a variable is recorded apart so a module used only
+	 * through 'module.member' keeps just those members.
+	 */
+	private static final class Uses implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+		final List<Stmt.Import> imports = new ArrayList<>();
+		final Map<String, Set<String>> members = new HashMap<>();
+		final Set<String> names = new HashSet<>();
+
+		private void visit(Stmt statement) {
+			if (statement != null) {
+				statement.accept(this);
+			}
+		}
+
+		private void visit(List<? extends Stmt> statements) {
+			if (statements != null) {
+				for (Stmt statement : statements) {
+					visit(statement);
+				}
+			}
+		}
+
+		private void visit(Expr expr) {
+			if (expr != null) {
+				expr.accept(this);
+			}
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			names.add(expr.name.getLexeme());
+			visit(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			visit(expr.left);
+			visit(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			visit(expr.callee);
+			for (Expr argument : expr.arguments) {
+				visit(argument);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			if (expr.object instanceof Expr.Variable) {
+				String object = ((Expr.Variable) expr.object).name.getLexeme();
+				members.computeIfAbsent(object, name -> new HashSet<>()).add(expr.name.getLexeme());
+			} else {
+				visit(expr.object);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			visit(expr.object);
+			visit(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			visit(expr.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitListAccessorExpr(Expr.ListAccessor expr) {
+			visit(expr.object);
+			visit(expr.index);
+			return null;
+		}
+
+		@Override
+		public Void visitListMutatorExpr(Expr.ListMutator expr) {
+			visit(expr.object);
+			visit(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			return null;
+		}
+
+		@Override
+		public Void visitQanunListExpr(Expr.QanunList expr) {
+			for (Expr element : expr.list) {
+				visit(element);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			visit(expr.left);
+			visit(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitAnonymousFunExpr(Expr.AnonymousFun expr) {
+			visit(expr.body);
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			visit(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			names.add(expr.name.getLexeme());
+			return null;
+		}
+
+		@Override
+		public Void visitConditionalTernaryExpr(Expr.ConditionalTernary expr) {
+			visit(expr.condition);
+			visit(expr.trueCondition);
+			visit(expr.falseCondition);
+			return null;
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			visit(stmt.statements);
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			visit(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			visit(stmt.anonFun);
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			visit(stmt.superClass);
+			visit(stmt.methods);
+			visit(stmt.staticMethods);
+			return null;
+		}
+
+		@Override
+		public Void visitModuleStmt(Stmt.Module stmt) {
+			return null;
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			visit(stmt.condition);
+			visit(stmt.thenBranch);
+			visit(stmt.elseBranch);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			visit(stmt.value);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			visit(stmt.initializer);
+			return null;
+		}
+
+		@Override
+		public Void visitValStmt(Stmt.Val stmt) {
+			visit(stmt.initializer);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			visit(stmt.condition);
+			visit(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitForStmt(Stmt.For stmt) {
+			visit(stmt.init);
+			visit(stmt.condition);
+			visit(stmt.increment);
+			visit(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitForEachStmt(Stmt.ForEach stmt) {
+			visit(stmt.init);
+			visit(stmt.iterable);
+			visit(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitParallelForEachStmt(Stmt.ParallelForEach stmt) {
+			visit(stmt.loop);
+			for (Expr.Variable reduction : stmt.reductions) {
+				visit(reduction);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitBreakStmt(Stmt.Break stmt) {
+			return null;
+		}
+
+		@Override
+		public Void visitContinueStmt(Stmt.Continue stmt) {
+			return null;
+		}
+
+		@Override
+		public Void visitSwitchStmt(Stmt.Switch stmt) {
+			visit(stmt.expression);
+			for (List<Stmt> action : stmt.actions) {
+				visit(action);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitImportStmt(Stmt.Import stmt) {
+			if (stmt.path instanceof Expr.Literal && ((Expr.Literal) stmt.path).value instanceof String) {
+				imports.add(stmt);
+			} else {
+				// there is no telling which module this is until it runs
+				throw new RuntimeError(stmt.keyword, "Only imports with a literal path can be bundled.");
+			}
+			return null;
+		}
+	}
+}
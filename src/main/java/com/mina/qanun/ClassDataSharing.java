@@ -0,0 +1,129 @@
+package com.mina.qanun;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Builds an AppCDS archive for the interpreter jar. A training program runs
+ * through the whole pipeline in a child JVM that writes every class it loaded
+ * to the archive when it exits, 'bin/qanun' then starts the JVM with that
+ * archive mapped so those classes don't have to be loaded and verified again.
+ *
+ * @author mina
+ */
+final class ClassDataSharing {
+
+	// the built in training program and the module it imports
+	private static final String[] TRAINING = {"training.qan", "library.qan"};
+
+	private ClassDataSharing() {
+	}
+
+	// the archive lives next to the jar, named after it
+	static Path archive(Path jar) {
+		String name = jar.getFileName().toString();
+		return jar.resolveSibling(name.substring(0, name.length() - ".jar".length()) + ".jsa");
+	}
+
+	// runs the training script, or the built in one when it's null, and
+	// returns the exit code of the training run
+	static int build(String training) throws IOException, InterruptedException {
+		int version = specificationVersion();
+		if (version < 13) {
+			System.err.println("Error: --build-cds needs Java 13 or later, this is Java " + version);
+			return Qanun.Error.EX_GENERAL.getCode();
+		}
+		Path jar = jar();
+		if (jar == null) {
+			System.err.println("Error: --build-cds only works when qanun runs from its jar");
+			return Qanun.Error.EX_GENERAL.getCode();
+		}
+		// holds the built in training program and the programs cached while
+		// training, a script of the caller runs where it was started
+		Path directory = Files.createTempDirectory("qanun-cds");
+		try {
+			Path script;
+			Path workingDirectory;
+			if (training == null) {
+				for (String name : TRAINING) {
+					try (InputStream resource = ClassDataSharing.class.getResourceAsStream(name)) {
+						Files.copy(resource, directory.resolve(name));
+					}
+				}
+				script = directory.resolve(TRAINING[0]);
+				workingDirectory = directory;
+			} else {
+				script = Paths.get(training).toAbsolutePath();
+				workingDirectory = Paths.get("").toAbsolutePath();
+			}
+			Path archive = archive(jar);
+			int code = train(jar, archive, script, workingDirectory, directory.resolve("cache"));
+			if (code == 0) {
+				System.out.println("Wrote " + archive);
+			}
+			return code;
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	// runs the script in a child JVM started in the given directory, so its
+	// relative imports resolve the way they do in a real run. a failed run
+	// can leave a partial archive, it is deleted
+	static int train(Path jar, Path archive, Path script, Path directory, Path cache)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-XX:ArchiveClassesAtExit=" + archive);
+		// classes the JDK can't archive are skipped, the warnings are noise
+		command.add("-Xlog:cds=off");
+		// cached programs are written the way a real run does it, but not next
+		// to the training script
+		command.add("-Dqanun.cache.dir=" + cache);
+		command.add("-cp");
+		command.add(jar.toString());
+		command.add(Qanun.class.getName());
+		command.add(script.toString());
+		Process process = new ProcessBuilder(command)
+				.directory(directory.toFile())
+				.inheritIO()
+				.start();
+		int code = process.waitFor();
+		if (code != 0) {
+			Files.deleteIfExists(archive);
+		}
+		return code;
+	}
+
+	// the jar the interpreter was loaded from, null when it runs from classes
+	private static Path jar() {
+		try {
+			Path location = Paths.get(Qanun.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			if (Files.isRegularFile(location) && location.toString().endsWith(".jar")) {
+				return location;
+			}
+		} catch (URISyntaxException | SecurityException exception) {
+		}
+		return null;
+	}
+
+	private static int specificationVersion() {
+		String version = System.getProperty("java.specification.version");
+		// 1.8 and before, 9 and later
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		return Integer.parseInt(version);
+	}
+}
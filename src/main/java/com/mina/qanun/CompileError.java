@@ -0,0 +1,15 @@
+package com.mina.qanun;
+
+/**
+ *
+ * @author mina
+ */
+public class CompileError extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	// the message holds every error that was found, one per line
+	public CompileError(String message) {
+		super(message);
+	}
+}
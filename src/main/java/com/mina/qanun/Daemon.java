@@ -0,0 +1,198 @@
+package com.mina.qanun;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a warmed up JVM running scripts for {@link DaemonClient}. The daemon
+ * listens on a loopback port and writes the port and a random token to
+ * '~/.qanun/daemon', a client has to send the token before anything else.
+ * Every client is served on a thread of its own with a context of its own,
+ * so scripts of different clients run at the same time.
+ *
+ * @author mina
+ */
+final class Daemon {
+
+	private Daemon() {
+	}
+
+	static void serve() throws IOException {
+		int port = Integer.getInteger("qanun.daemon.port", 0);
+		ExecutorService clients = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "qanun-client");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			String token = token();
+			Path file = DaemonClient.file();
+			publish(file, server.getLocalPort() + " " + token);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException exception) {
+				}
+			}));
+			for (;;) {
+				Socket socket = server.accept();
+				clients.execute(() -> {
+					try (Socket client = socket) {
+						run(client, token);
+					} catch (IOException exception) {
+						// a client that went away doesn't stop the daemon
+					}
+				});
+			}
+		}
+	}
+
+	private static void run(Socket socket, String token) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+				input.readUTF().getBytes(StandardCharsets.UTF_8))) {
+			return;
+		}
+		Path directory = Paths.get(input.readUTF());
+		String[] args = new String[input.readInt()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = input.readUTF();
+		}
+		PrintStream stdout = new PrintStream(new BufferedOutputStream(new Frames(output, DaemonClient.STDOUT)), true);
+		PrintStream stderr = new PrintStream(new BufferedOutputStream(new Frames(output, DaemonClient.STDERR)), true);
+		QanunContext context = new QanunContext(directory, new Input(input), stdout, stderr);
+		int code;
+		if (!DaemonClient.isScript(args)) {
+			// the client runs anything else in a JVM of its own
+			code = Qanun.Error.EX_TEMPFAIL.getCode();
+		} else {
+			try {
+				code = context.runFile(args[0]);
+			} catch (RuntimeException | StackOverflowError exception) {
+				stderr.println("Error: " + exception);
+				code = Qanun.Error.EX_SOFTWARE.getCode();
+			}
+		}
+		stdout.flush();
+		stderr.flush();
+		synchronized (output) {
+			output.writeByte(DaemonClient.EXIT);
+			output.writeInt(code);
+			output.flush();
+		}
+	}
+
+	private static String token() {
+		byte[] bytes = new byte[16];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder token = new StringBuilder();
+		for (byte b : bytes) {
+			token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return token.toString();
+	}
+
+	// only the owner may read the token where permissions are supported
+	private static void publish(Path file, String contents) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.deleteIfExists(file);
+		try {
+			Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} catch (UnsupportedOperationException exception) {
+			Files.createFile(file);
+		}
+		Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// writes everything as frames of one stream
+	private static final class Frames extends OutputStream {
+
+		private final DataOutputStream output;
+		private final int tag;
+
+		Frames(DataOutputStream output, int tag) {
+			this.output = output;
+			this.tag = tag;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			synchronized (output) {
+				output.writeByte(tag);
+				output.writeInt(length);
+				output.write(bytes, offset, length);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized (output) {
+				output.flush();
+			}
+		}
+	}
+
+	// the stdin of the client, read from its frames
+	private static final class Input extends InputStream {
+
+		private final DataInputStream input;
+		private int remaining;
+		private boolean ended;
+
+		Input(DataInputStream input) {
+			this.input = input;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (remaining == 0) {
+				if (ended) {
+					return -1;
+				}
+				remaining = input.readInt();
+				if (remaining == 0) {
+					ended = true;
+					return -1;
+				}
+			}
+			int read = input.read(bytes, offset, Math.min(length, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.mina.qanun;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The thin client of the daemon. It sends the arguments and the working
+ * directory, forwards stdin and writes what the script prints to stdout and
+ * stderr, then exits with the script's exit code. It only loads a handful of
+ * JDK classes so starting it is cheap. It exits with EX_TEMPFAIL when the
+ * daemon can't run the command, the launcher then runs it itself.
+ *
+ * @author mina
+ */
+public final class DaemonClient {
+
+	// frames from the daemon, each is a tag, a length and the bytes
+	static final int STDOUT = 1;
+	static final int STDERR = 2;
+	// followed by the exit code instead of bytes
+	static final int EXIT = 3;
+
+	private DaemonClient() {
+	}
+
+	// holds the port and the token of the running daemon
+	static Path file() {
+		return Paths.get(System.getProperty("user.home"), ".qanun", "daemon");
+	}
+
+	// only a single script is run by the daemon, options, commands and the
+	// REPL need the whole command line of a JVM
+	static boolean isScript(String[] args) {
+		return args.length == 1 && !args[0].startsWith("--");
+	}
+
+	public static void main(String[] args) {
+		if (!isScript(args)) {
+			System.exit(Qanun.Error.EX_TEMPFAIL.getCode());
+			return;
+		}
+		String[] daemon;
+		try {
+			daemon = new String(Files.readAllBytes(file()), StandardCharsets.UTF_8).trim().split(" ");
+		} catch (IOException exception) {
+			System.exit(Qanun.Error.EX_TEMPFAIL.getCode());
+			return;
+		}
+		Socket socket;
+		try {
+			socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(daemon[0]));
+		} catch (IOException | RuntimeException exception) {
+			// nobody answered, the caller can run the script itself
+			System.exit(Qanun.Error.EX_TEMPFAIL.getCode());
+			return;
+		}
+		try {
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			output.writeUTF(daemon[1]);
+			output.writeUTF(Paths.get("").toAbsolutePath().toString());
+			output.writeInt(args.length);
+			for (String arg : args) {
+				output.writeUTF(arg);
+			}
+			output.flush();
+			Thread stdin = new Thread(() -> forward(System.in, output), "qanun-stdin");
+			stdin.setDaemon(true);
+			stdin.start();
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			for (;;) {
+				int tag = input.readByte();
+				int length = input.readInt();
+				if (tag == EXIT) {
+					System.out.flush();
+					System.err.flush();
+					System.exit(length);
+				}
+				byte[] bytes = new byte[length];
+				input.readFully(bytes);
+				PrintStream stream = tag == STDERR ? System.err : System.out;
+				stream.write(bytes, 0, length);
+				stream.flush();
+			}
+		} catch (IOException exception) {
+			System.err.println("Error: Lost the connection to the qanun daemon");
+			System.exit(Qanun.Error.EX_GENERAL.getCode());
+		}
+	}
+
+	// stdin goes to the daemon in frames of a length and the bytes, an empty
+	// frame is the end of the input
+	private static void forward(InputStream in, DataOutputStream output) {
+		byte[] buffer = new byte[8192];
+		try {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				output.writeInt(read);
+				output.write(buffer, 0, read);
+				output.flush();
+			}
+			output.writeInt(0);
+			output.flush();
+		} catch (IOException exception) {
+			// the script is done and the connection closed
+		}
+	}
+}
@@ -17,13 +17,43 @@ public class Environment {
 		this.enclosing = null;
 	}
 
+	// a global scope whose variables live in the given map
+	Environment(Map<String, Object> variables) {
+		this.variblesValues = variables;
+		this.enclosing = null;
+	}
+
 	public Environment(Environment enclosing) {
 		this.enclosing = enclosing;
 	}
 
+	// a scope that keeps its names in the given maps
+	Environment(Environment enclosing, Map<String, Object> variables, Map<String, Object> constants) {
+		this.variblesValues = variables;
+		this.constantValues = constants;
+		this.enclosing = enclosing;
+	}
+
 	void define(Token name, Object value) {
 		checkIfAlreadyDefined(name);
 		variblesValues.put(name.getLexeme(), value);
+		changed(name.getLexeme(), value);
+	}
+
+	// parameters start in a fresh environment and the Resolver already
+	// reports duplicate parameter names, so there is nothing to check
+	void defineParameter(Token name, Object value) {
+		variblesValues.put(name.getLexeme(), value);
+	}
+
+	// an import can run more than once, binding the same name to a module
+	// again is not a redeclaration
+	void defineModule(Token name, QanunModule module) {
+		if (!(variblesValues.get(name.getLexeme()) instanceof QanunModule)) {
+			checkIfAlreadyDefined(name);
+		}
+		variblesValues.put(name.getLexeme(), module);
+		changed(name.getLexeme(), module);
 	}
 
 	Object get(Token name) {
@@ -33,6 +63,9 @@ public class Environment {
 		if (constantValues.containsKey(name.getLexeme())) {
 			return constantValues.get(name.getLexeme());
 		}
+		if (materialize(name.getLexeme())) {
+			return get(name);
+		}
 		// if variable isn't found in current environement we make a
 		// recursive call to the outer scope if there one if not it throws RuntiemeError
 		if (enclosing != null) {
@@ -51,6 +84,9 @@ public class Environment {
 		if (environment.constantValues.containsKey(name.getLexeme())) {
 			return environment.constantValues.get(name.getLexeme());
 		}
+		if (environment.materialize(name.getLexeme())) {
+			return environment.get(name);
+		}
 		throw new RuntimeError(name,
 				"Error: Undefined variable or undefined constant '" + name.getLexeme() + "'.");
 	}
@@ -59,10 +95,15 @@ public class Environment {
 		Environment environment = ancestor(distance);
 		if (environment.variblesValues.containsKey(name.getLexeme())) {
 			environment.variblesValues.put(name.getLexeme(), value);
+			environment.changed(name.getLexeme(), value);
+			return;
 		}
 		if (environment.constantValues.containsKey(name.getLexeme())) {
 			throw new RuntimeError(name, "Assignment of constant variable '" + name.getLexeme() + "'");
 		}
+		if (environment.materialize(name.getLexeme())) {
+			environment.assign(name, value);
+		}
 	}
 
 	Environment ancestor(int distance) {
@@ -80,6 +121,11 @@ public class Environment {
 		}
 		if (variblesValues.containsKey(name.getLexeme())) {
 			variblesValues.put(name.getLexeme(), value);
+			changed(name.getLexeme(), value);
+			return;
+		}
+		if (materialize(name.getLexeme())) {
+			assign(name, value);
 			return;
 		}
 		if (enclosing != null) {
@@ -92,13 +138,34 @@ public class Environment {
 	void defineConstant(Token name, Object value) {
 		checkIfAlreadyDefined(name);
 		constantValues.put(name.getLexeme(), value);
+		changed(name.getLexeme(), value);
+	}
+
+	// called whenever a name of this scope is given a value
+	void changed(String name, Object value) {
+	}
+
+	// lets an environment define a name the first time it is used, returns
+	// true if the name is defined now
+	boolean materialize(String name) {
+		return false;
 	}
 
 	public Environment getEnclosing() {
 		return enclosing;
 	}
 
-	private void checkIfAlreadyDefined(Token name) {
+	Map<String, Object> getVariables() {
+		return variblesValues;
+	}
+
+	Map<String, Object> getConstants() {
+		return constantValues;
+	}
+
+	void checkIfAlreadyDefined(Token name) {
+		// names that are defined lazily are taken as well
+		materialize(name.getLexeme());
 		if (constantValues.containsKey(name.getLexeme())) {
 			throw new RuntimeError(name, "Error : redeclaration of [ " + name.getLexeme() + " ]");
 		}
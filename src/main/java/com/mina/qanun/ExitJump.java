@@ -0,0 +1,23 @@
+package com.mina.qanun;
+
+/**
+ *
+ * @author mina
+ */
+public class ExitJump extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int code;
+
+	// ends the current run with the exit code, the errors have been
+	// reported already
+	ExitJump(int code) {
+		super(null, null, false, false);
+		this.code = code;
+	}
+
+	int getCode() {
+		return this.code;
+	}
+}
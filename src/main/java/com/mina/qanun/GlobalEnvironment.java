@@ -0,0 +1,146 @@
+package com.mina.qanun;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The global scope. Natives and imported 'std:' modules are only bound the
+ * first time a script refers to them, a script that never calls 'split' never
+ * pays for it.
+ *
+ * Tasks and parallel natives can bind a name while other threads look names
+ * up, so what is bound lazily is kept in a table of its own that is safe to
+ * read without a lock, the maps of the scope are only written by the thread
+ * running the script.
+ *
+ * @author mina
+ */
+final class GlobalEnvironment extends Environment {
+
+	// imported 'std:' modules that haven't been used yet
+	private final Set<String> modules = ConcurrentHashMap.newKeySet();
+	// the natives and modules bound so far, none of them is null
+	private final Map<String, Object> bound = new ConcurrentHashMap<>();
+	// names given a value since the last reset, only recorded for pooled
+	// interpreters
+	private Set<String> changes;
+	// set for the globals of an engine session, a script evaluated again
+	// declares its variables, constants, functions and classes again
+	boolean isRedeclarable;
+
+	// the variables can be a map the embedder reads and writes
+	GlobalEnvironment(Map<String, Object> variables) {
+		super(variables);
+	}
+
+	void importModule(Token name) {
+		checkIfAlreadyDefined(name);
+		modules.add(name.getLexeme());
+	}
+
+	Set<String> getImports() {
+		return modules;
+	}
+
+	// the 'std:' modules imported so far, whether they were used or not
+	List<String> importedModules() {
+		List<String> names = new ArrayList<>(modules);
+		bound.forEach((name, value) -> {
+			if (value instanceof QanunNativeInstance) {
+				names.add(name);
+			}
+		});
+		return names;
+	}
+
+	// binds every native up front and starts recording what runs change
+	void warm() {
+		for (String name : StandardLibrary.names()) {
+			materialize(name);
+		}
+		changes = new HashSet<>();
+	}
+
+	void bind(String name, Object value) {
+		bound.remove(name);
+		getVariables().put(name, value);
+		changed(name, value);
+	}
+
+	@Override
+	Object get(Token name) {
+		Object value = bound.get(name.getLexeme());
+		if (value != null) {
+			return value;
+		}
+		return super.get(name);
+	}
+
+	@Override
+	void assign(Token name, Object value) {
+		if (bound.containsKey(name.getLexeme())) {
+			throw new RuntimeError(name, "Assignment of constant variable '" + name.getLexeme() + "'");
+		}
+		super.assign(name, value);
+	}
+
+	@Override
+	void changed(String name, Object value) {
+		if (changes != null) {
+			changes.add(name);
+		}
+	}
+
+	// a name declared again starts over, whichever map held it before
+	@Override
+	void checkIfAlreadyDefined(Token name) {
+		if (!isRedeclarable) {
+			if (materialize(name.getLexeme()) && bound.containsKey(name.getLexeme())) {
+				throw new RuntimeError(name, "Error : redeclaration of [ " + name.getLexeme() + " ]");
+			}
+			super.checkIfAlreadyDefined(name);
+			return;
+		}
+		bound.remove(name.getLexeme());
+		getVariables().remove(name.getLexeme());
+		getConstants().remove(name.getLexeme());
+	}
+
+	// forgets what the runs since warm defined, the natives stay bound
+	void reset() {
+		for (String name : changes) {
+			bound.remove(name);
+			getVariables().remove(name);
+			getConstants().remove(name);
+		}
+		changes.clear();
+		modules.clear();
+	}
+
+	// the name is known to be free here, defining it the usual way would
+	// look it up lazily again. natives are kept apart so they stay out of
+	// the variables an embedder passed in. tasks and parallel natives can
+	// get here from several threads at once
+	@Override
+	synchronized boolean materialize(String name) {
+		if (bound.containsKey(name)) {
+			return true;
+		}
+		if (modules.remove(name)) {
+			QanunNativeInstance module = BuiltInModules.get(name);
+			bound.put(name, module);
+			changed(name, module);
+			return true;
+		}
+		QanunCallable function = StandardLibrary.find(name);
+		if (function == null) {
+			return false;
+		}
+		bound.put(name, function);
+		return true;
+	}
+}
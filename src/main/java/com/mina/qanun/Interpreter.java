@@ -2,9 +2,12 @@ package com.mina.qanun;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -12,12 +15,53 @@ import java.util.Map;
  */
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
-	final Environment globals = new Environment();
-	private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
+	// how many pieces a parallel loop is split into at most
+	private static final int PARALLEL_PIECES = 64;
+
+	final GlobalEnvironment globals;
+	private Environment environment;
+	// the distances of a compiled program are shared by all of its runs,
+	// they are copied the first time something has to be added to them
+	private Map<Expr, Integer> locals;
+	private final Map<Expr, Integer> initialLocals;
+	private boolean sharedLocals = true;
+	private final Set<Map<Expr, Integer>> programs = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final QanunContext context;
+	private final ModuleRegistry modules;
+	// the tasks spawned inside the innermost Task.scope, null outside one
+	Task.Scope scope;
+
+	Interpreter(QanunContext context, Map<Expr, Integer> locals, Map<String, Object> variables) {
+		this.context = context;
+		this.locals = locals;
+		this.initialLocals = locals;
+		this.globals = new GlobalEnvironment(variables);
+		this.environment = globals;
+		this.modules = new ModuleRegistry(context);
+	}
+
+	// an interpreter for a task, it shares the globals of the one that
+	// spawned it and starts from its distances as they are now. it loads the
+	// modules it imports itself, so neither adds to a map the other reads.
+	// has to be made on the spawner's thread or while the spawner waits
+	Interpreter(Interpreter spawner) {
+		this(spawner, spawner.shareLocals());
+	}
 
-	public Interpreter() {
-		defineGlobals();
+	// an interpreter that runs code of the spawner with the given distances,
+	// tasks it spawns belong to the scope the spawner is in
+	Interpreter(Interpreter spawner, Map<Expr, Integer> locals) {
+		this.context = spawner.context;
+		this.scope = spawner.scope;
+		this.globals = spawner.globals;
+		this.environment = globals;
+		this.locals = locals;
+		this.initialLocals = locals;
+		this.modules = new ModuleRegistry(spawner.modules);
+	}
+
+	QanunContext getContext() {
+		return context;
 	}
 
 	void interpret(List<Stmt> statements) {
@@ -26,85 +70,293 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				execute(statement);
 			}
 		} catch (RuntimeError error) {
-			Qanun.runtimeError(error);
+			context.runtimeError(error);
+		}
+	}
+
+	// like interpret but leaves runtime errors to the caller, returns the
+	// value of the last statement if it's an expression
+	Object executeAll(List<Stmt> statements) {
+		int last = statements.size() - 1;
+		for (int i = 0; i < last; i++) {
+			execute(statements.get(i));
+		}
+		if (last < 0) {
+			return null;
+		}
+		if (statements.get(last) instanceof Stmt.Expression) {
+			return evaluate(((Stmt.Expression) statements.get(last)).expression);
 		}
+		execute(statements.get(last));
+		return null;
+	}
+
+	// lets the interpreter run a compiled program that wasn't resolved into
+	// its own distances, each program is only added once
+	void include(Map<Expr, Integer> program) {
+		if (program == locals || !programs.add(program)) {
+			return;
+		}
+		// nothing to add to, the program's own distances will do
+		if (sharedLocals && locals.isEmpty()) {
+			locals = program;
+			return;
+		}
+		getLocals().putAll(program);
+	}
+
+	// the distances as they are now, whatever is added later goes to a copy
+	// so the map can be read from other threads
+	Map<Expr, Integer> shareLocals() {
+		sharedLocals = true;
+		return locals;
+	}
+
+	Map<Expr, Integer> copyLocals() {
+		return new HashMap<>(locals);
+	}
+
+	// back to the globals and distances it was warmed with, what runs
+	// defined and the modules they imported are forgotten
+	void reset() {
+		globals.reset();
+		environment = globals;
+		locals = initialLocals;
+		sharedLocals = true;
+		programs.clear();
+		modules.clear();
 	}
 
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
-		Object left = evaluate(expr.left);
-		Object right = evaluate(expr.right);
 		switch (expr.operator.getType()) {
 			case BANG_EQUAL:
-				return !isEqual(left, right);
+				return !isEqual(evaluate(expr.left), evaluate(expr.right));
 			case EQUAL_EQUAL:
-				return isEqual(left, right);
+				return isEqual(evaluate(expr.left), evaluate(expr.right));
 			case GREATER:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left > (double) right;
+				return evaluateNumber(expr.left, expr.operator, expr.right) > evaluateNumber(expr.right, expr.operator);
 			case GREATER_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left >= (double) right;
+				return evaluateNumber(expr.left, expr.operator, expr.right) >= evaluateNumber(expr.right, expr.operator);
 			case LESS:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left < (double) right;
+				return evaluateNumber(expr.left, expr.operator, expr.right) < evaluateNumber(expr.right, expr.operator);
 			case LESS_EQUAL:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left <= (double) right;
-			case MINUS:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left - (double) right;
+				return evaluateNumber(expr.left, expr.operator, expr.right) <= evaluateNumber(expr.right, expr.operator);
 			case PLUS:
-				if (left instanceof Double && right instanceof Double) {
-					return (double) left + (double) right;
+				if (isNumeric(expr)) {
+					return number(expr);
 				}
+				return plus(expr.operator, evaluate(expr.left), evaluate(expr.right));
+			case MINUS:
+			case SLASH:
+			case STAR:
+			case PERCENTAGE:
+			case STAR_STAR:
+				return number(expr);
+		}
 
-				if (left instanceof String && right instanceof String) {
-					return (String) left + (String) right;
-				}
-				if (left instanceof List && right instanceof List) {
-					List leftCasted = (List) left;
-					leftCasted.addAll((List)right);
-					return leftCasted;
-				}
-				throw new RuntimeError(expr.operator,
-						"Operands must be two numbers or two strings or two lists.");
+		return null;
+	}
+
+	private Object plus(Token operator, Object left, Object right) {
+		if (QanunNumber.isNumber(left) && QanunNumber.isNumber(right)) {
+			return arithmetic(operator, TokenType.PLUS, left, right);
+		}
+
+		if (left instanceof String && right instanceof String) {
+			return (String) left + (String) right;
+		}
+		if (left instanceof List && right instanceof List) {
+			List leftCasted = (List) left;
+			leftCasted.addAll((List) right);
+			return leftCasted;
+		}
+		throw new RuntimeError(operator,
+				"Operands must be two numbers or two strings or two lists.");
+	}
+
+	private Object number(Expr.Binary expr) {
+		// nested arithmetic is evaluated on primitive doubles so only the final
+		// result gets boxed, plain operands keep the integer fast path
+		if (isNestedArithmetic(expr.left) || isNestedArithmetic(expr.right)) {
+			return QanunNumber.valueOf(arithmetic(expr));
+		}
+		return arithmetic(expr.operator, expr.operator.getType(), evaluate(expr.left), evaluate(expr.right));
+	}
+
+	private Object arithmetic(Token operator, TokenType type, Object left, Object right) {
+		if (left instanceof Long && right instanceof Long) {
+			long l = (Long) left;
+			long r = (Long) right;
+			switch (type) {
+				case PLUS:
+					return QanunNumber.add(l, r);
+				case MINUS:
+					return QanunNumber.subtract(l, r);
+				case SLASH:
+					checkDivisionByZero(operator, r);
+					return QanunNumber.divide(l, r);
+				case STAR:
+					return QanunNumber.multiply(l, r);
+				case PERCENTAGE:
+					return QanunNumber.remainder(l, r);
+			}
+		}
+		checkNumberOperands(operator, left, right);
+		return QanunNumber.valueOf(arithmetic(operator, type,
+				QanunNumber.toDouble(left), QanunNumber.toDouble(right)));
+	}
+
+	private double arithmetic(Expr.Binary expr) {
+		double left = evaluateNumber(expr.left, expr.operator, expr.right);
+		double right = evaluateNumber(expr.right, expr.operator);
+		return arithmetic(expr.operator, expr.operator.getType(), left, right);
+	}
+
+	private double arithmetic(Token operator, TokenType type, double left, double right) {
+		switch (type) {
+			case PLUS:
+				return left + right;
+			case MINUS:
+				return left - right;
 			case SLASH:
-				checkNumberOperands(expr.operator, left, right);
-				checkDivisionByZero(expr.operator, right);
-				return (double) left / (double) right;
+				checkDivisionByZero(operator, right);
+				return left / right;
 			case STAR:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left * (double) right;
+				return left * right;
 			case PERCENTAGE:
-				checkNumberOperands(expr.operator, left, right);
-				return (double) left % (double) right;
+				return left % right;
 			case STAR_STAR:
-				checkNumberOperands(expr.operator, left, right);
-				return Math.pow((double) left, (double) right);
+				return Math.pow(left, right);
+			default:
+				throw new RuntimeError(operator, "Operands must be a number");
+		}
+	}
 
+	private double evaluateNumber(Expr expression, Token operator) {
+		return evaluateNumber(expression, operator, null);
+	}
+
+	// a left operand that isn't a number is only reported once the right
+	// operand has been evaluated too, like the boxed operators do
+	private double evaluateNumber(Expr expression, Token operator, Expr right) {
+		if (expression instanceof Expr.Literal && QanunNumber.isNumber(((Expr.Literal) expression).value)) {
+			return QanunNumber.toDouble(((Expr.Literal) expression).value);
+		}
+		if (expression instanceof Expr.Grouping) {
+			return evaluateNumber(((Expr.Grouping) expression).expression, operator, right);
+		}
+		Object value;
+		if (expression instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expression;
+			if (binary.operator.getType() != TokenType.PLUS || isNumeric(binary)) {
+				if (isArithmetic(binary.operator.getType())) {
+					return arithmetic(binary);
+				}
+				value = evaluate(binary);
+			} else {
+				Object left = evaluate(binary.left);
+				Object other = evaluate(binary.right);
+				if (QanunNumber.isNumber(left) && QanunNumber.isNumber(other)) {
+					return QanunNumber.toDouble(left) + QanunNumber.toDouble(other);
+				}
+				value = plus(binary.operator, left, other);
+			}
+		} else {
+			value = evaluate(expression);
 		}
+		if (!QanunNumber.isNumber(value)) {
+			if (right != null) {
+				evaluate(right);
+			}
+			throw new RuntimeError(operator, "Operands must be a number");
+		}
+		return QanunNumber.toDouble(value);
+	}
 
-		return null;
+	// an expression is known to be numeric when evaluating it can only
+	// produce a number or fail, '+' qualifies only when both sides do
+	private static boolean isNumeric(Expr expression) {
+		if (expression instanceof Expr.Literal) {
+			return QanunNumber.isNumber(((Expr.Literal) expression).value);
+		}
+		if (expression instanceof Expr.Grouping) {
+			return isNumeric(((Expr.Grouping) expression).expression);
+		}
+		if (expression instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expression;
+			if (binary.operator.getType() == TokenType.PLUS) {
+				return isNumeric(binary.left) && isNumeric(binary.right);
+			}
+			return isArithmetic(binary.operator.getType());
+		}
+		return false;
+	}
+
+	private static boolean isNestedArithmetic(Expr expression) {
+		if (expression instanceof Expr.Grouping) {
+			return isNestedArithmetic(((Expr.Grouping) expression).expression);
+		}
+		return expression instanceof Expr.Binary && isNumeric(expression);
+	}
+
+	private static boolean isArithmetic(TokenType type) {
+		switch (type) {
+			case PLUS:
+			case MINUS:
+			case SLASH:
+			case STAR:
+			case PERCENTAGE:
+			case STAR_STAR:
+				return true;
+			default:
+				return false;
+		}
 	}
 
 	@Override
 	public Object visitCallExpr(Expr.Call expr) {
 		Object callee = evaluate(expr.callee);
-		List<Object> arguments = new ArrayList<>();
-		for (Expr argument : expr.arguments) {
-			arguments.add(evaluate(argument));
+		List<Expr> arguments = expr.arguments;
+		switch (arguments.size()) {
+			case 0:
+				return callable(expr, callee, 0).call0(this);
+			case 1: {
+				Object argument = evaluate(arguments.get(0));
+				return callable(expr, callee, 1).call1(this, argument);
+			}
+			case 2: {
+				Object first = evaluate(arguments.get(0));
+				Object second = evaluate(arguments.get(1));
+				return callable(expr, callee, 2).call2(this, first, second);
+			}
+			case 3: {
+				Object first = evaluate(arguments.get(0));
+				Object second = evaluate(arguments.get(1));
+				Object third = evaluate(arguments.get(2));
+				return callable(expr, callee, 3).call3(this, first, second, third);
+			}
+			default: {
+				Object[] values = new Object[arguments.size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = evaluate(arguments.get(i));
+				}
+				return callable(expr, callee, values.length).call(this, values);
+			}
 		}
+	}
+
+	private QanunCallable callable(Expr.Call expr, Object callee, int argumentCount) {
 		if (!(callee instanceof QanunCallable)) {
 			throw new RuntimeError(expr.paren, "Can only call functions and classes.");
 		}
 		QanunCallable function = (QanunCallable) callee;
-		if (arguments.size() != function.arity()) {
+		if (argumentCount != function.arity()) {
 			throw new RuntimeError(expr.paren, "Expected "
 					+ function.arity() + " arguments but got "
-					+ arguments.size() + ".");
+					+ argumentCount + ".");
 		}
-		return function.call(this, arguments);
+		return function;
 	}
 
 	@Override
@@ -121,6 +373,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			Object result = ((QanunNativeInstance) object).findMethod(expr.name.getLexeme());
 			return result;
 		}
+		if (object instanceof QanunNativeObject) {
+			return ((QanunNativeObject) object).get(expr.name);
+		}
 
 		throw new RuntimeError(expr.name,
 				"Only instances have properties.");
@@ -132,41 +387,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		if (listObject instanceof List) {
 			List list = (List) listObject;
 
-			Object indexObject = evaluate(expr.index);
-			if (!(indexObject instanceof Double)) {
-				throw new RuntimeError(expr.name,
-						"Only numbers can be used as a list index.");
-			}
-			int indexInt = ((Double) indexObject).intValue();
-			double diff = (Double) indexObject - indexInt;
-			if (diff != 0) {
-				throw new RuntimeError(expr.name,
-						"Indecies can only be integer values, not double");
-			}
-			if (indexInt >= list.size() || indexInt < 0) {
-				throw new RuntimeError(expr.name,
-						"List index out of range.");
-			}
-			return list.get(indexInt);
+			int index = index(expr.name, evaluate(expr.index), list.size());
+			return list.get(index);
 
 		} else if (listObject instanceof String) {
 			String string = (String) listObject;
-			Object indexObject = evaluate(expr.index);
-			if (!(indexObject instanceof Double)) {
-				throw new RuntimeError(expr.name,
-						"Only numbers can be used as a list index.");
-			}
-			int indexInt = ((Double) indexObject).intValue();
-			double diff = (Double) indexObject - indexInt;
-			if (diff != 0) {
-				throw new RuntimeError(expr.name,
-						"Indecies can only be integer values, not double");
-			}
-			if (indexInt >= string.length() || indexInt < 0) {
-				throw new RuntimeError(expr.name,
-						"List index out of range.");
-			}
-			return Character.toString(string.charAt(indexInt));
+			int index = index(expr.name, evaluate(expr.index), string.length());
+			return Character.toString(string.charAt(index));
 
 		} else {
 			throw new RuntimeError(expr.name,
@@ -189,23 +416,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 			List list = (List) listObject;
 
-			Object indexObject = evaluate(accessor.index);
-			if (!(indexObject instanceof Double)) {
-				throw new RuntimeError(expr.name,
-						"Only numbers can be used as a list index.");
-			}
-			int indexInt = ((Double) indexObject).intValue();
-			double diff = (Double) indexObject - indexInt;
-			if (diff != 0) {
-				throw new RuntimeError(expr.name,
-						"Indecies can only be integer values, not double");
-			}
-			if (indexInt >= list.size() || indexInt < 0) {
-				throw new RuntimeError(expr.name,
-						"List index out of range.");
-			}
+			int index = index(expr.name, evaluate(accessor.index), list.size());
 			Object value = evaluate(expr.value);
-			list.set(indexInt, value);
+			list.set(index, value);
 			return value;
 		} else {
 			throw new RuntimeError(expr.name,
@@ -213,6 +426,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 	}
 
+	private int index(Token name, Object indexObject, int size) {
+		if (!QanunNumber.isNumber(indexObject)) {
+			throw new RuntimeError(name,
+					"Only numbers can be used as a list index.");
+		}
+		// integral numbers are always Long, a Double index has a fraction
+		if (!(indexObject instanceof Long)) {
+			throw new RuntimeError(name,
+					"Indecies can only be integer values, not double");
+		}
+		long index = (Long) indexObject;
+		if (index >= size || index < 0) {
+			throw new RuntimeError(name,
+					"List index out of range.");
+		}
+		return (int) index;
+	}
+
 	@Override
 	public Object visitGroupingExpr(Expr.Grouping expr) {
 		return evaluate(expr.expression);
@@ -261,15 +492,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	@Override
 	public Object visitSuperExpr(Expr.Super expr) {
 		int distance = locals.get(expr);
-		Token fakeSuperToken = new Token(TokenType.SUPER, "super", null, -1);
-		QanunClass superClass = (QanunClass) this.environment.getAt(distance, fakeSuperToken);
-		Token fakeThisToken = new Token(TokenType.THIS, "this", null, -1);
-		QanunInstance qanunInstance = (QanunInstance) this.environment.getAt(distance - 1, fakeThisToken);
+		QanunClass superClass = (QanunClass) this.environment.getAt(distance, Token.SUPER);
+		QanunInstance qanunInstance = (QanunInstance) this.environment.getAt(distance - 1, Token.THIS);
 		QanunFunction method = superClass.findMethod(qanunInstance, expr.method.getLexeme());
 		if (method == null) {
 			throw new RuntimeError(expr.method, "Undefined property '" + expr.method.getLexeme() + "'.");
 		}
-		return method.bind(qanunInstance);
+		// findMethod already bound the method to the instance
+		return method;
 	}
 
 	@Override
@@ -285,11 +515,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				return !isTruthy(right);
 			case MINUS:
 				checkNumberOperand(expr.operator, right);
-				double r = (double) right;
-				if (r == 0) {
-					return 0.0;
+				if (right instanceof Long) {
+					return QanunNumber.negate((long) right);
 				}
-				return -r;
+				return QanunNumber.valueOf(-(double) right);
 			case PLUS_PLUS: {
 				if (!(expr.right instanceof Expr.Variable)) {
 					throw new RuntimeError(expr.operator,
@@ -297,14 +526,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				}
 
 				checkNumberOperand(expr.operator, right);
-				double value = (double) right;
+				Object value = right instanceof Long
+						? QanunNumber.add((long) right, 1)
+						: QanunNumber.valueOf((double) right + 1);
 				Expr.Variable variable = (Expr.Variable) expr.right;
-				environment.assign(variable.name, value + 1);
+				environment.assign(variable.name, value);
 
 				if (expr.isPostFix) {
-					return value;
+					return right;
 				} else {
-					return value + 1;
+					return value;
 				}
 			}
 			case MINUS_MINUS: {
@@ -314,14 +545,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				}
 
 				checkNumberOperand(expr.operator, right);
-				double value = (double) right;
+				Object value = right instanceof Long
+						? QanunNumber.subtract((long) right, 1)
+						: QanunNumber.valueOf((double) right - 1);
 				Expr.Variable variable = (Expr.Variable) expr.right;
-				environment.assign(variable.name, value - 1);
+				environment.assign(variable.name, value);
 
 				if (expr.isPostFix) {
-					return value;
+					return right;
 				} else {
-					return value - 1;
+					return value;
 				}
 			}
 		}
@@ -342,16 +575,33 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		statement.accept(this);
 	}
 
-	void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
+	// parses the modules the statements import ahead of executing them
+	void prepareModules(List<Stmt> statements) {
+		modules.prepare(ModuleGraph.prepare(context, statements));
+	}
+
+	// runs imports from a bundle instead of the file system
+	void useBundle(Map<String, String> paths, Map<String, ModuleGraph.Prepared> prepared) {
+		modules.bundle(paths, prepared);
+	}
+
+	// the distances to add to, the ones that are read are in locals
+	Map<Expr, Integer> getLocals() {
+		if (sharedLocals) {
+			locals = new HashMap<>(locals);
+			sharedLocals = false;
+		}
+		return locals;
 	}
 
 	void executeBlock(List<Stmt> statements, Environment environment) {
 		Environment previous = this.environment;
 		try {
 			this.environment = environment;
-			for (Stmt stmt : statements) {
-				execute(stmt);
+			// by index, every call runs a block and an iterator is only
+			// optimized away while the JIT inlines this loop into its caller
+			for (int i = 0, size = statements.size(); i < size; i++) {
+				execute(statements.get(i));
 			}
 		} finally {
 			// returning to the outer environement again after exiting inner block scope
@@ -378,8 +628,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		this.environment.define(stmt.name, null);
 		if (stmt.superClass != null) {
 			this.environment = new Environment(environment);
-			Token fakeSuperToken = new Token(TokenType.SUPER, "super", null, -1);
-			this.environment.define(fakeSuperToken, superClass);
+			this.environment.define(Token.SUPER, superClass);
 		}
 
 		Map<String, QanunFunction> staticMethods = new HashMap<>();
@@ -407,45 +656,74 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitModuleStmt(Stmt.Module stmt) {
-		this.environment = new Environment(this.environment);
-		Map<String, Stmt.Class> classes = new HashMap<>();
+		this.environment.defineModule(stmt.name, module(stmt));
+		return null;
+	}
+
+	// modules are resolved in a scope of their own right below the globals,
+	// so they don't depend on where they are first imported
+	private QanunModule module(Stmt.Module stmt) {
+		ModuleEnvironment moduleEnvironment = new ModuleEnvironment(globals, this);
+		Environment previous = this.environment;
+		this.environment = moduleEnvironment;
+		try {
+			for (Stmt.Import imp : stmt.imports) {
+				execute(imp);
+			}
+			return defineModule(stmt, moduleEnvironment);
+		} finally {
+			this.environment = previous;
+		}
+	}
+
+	// classes, functions and constant initializers are only executed once
+	// they are looked up, the other initializers run now in order
+	private QanunModule defineModule(Stmt.Module stmt, ModuleEnvironment moduleEnvironment) {
 		for (Stmt.Class cls : stmt.classes) {
-			execute(cls);
-			classes.put(cls.name.getLexeme(), cls);
+			moduleEnvironment.declare(cls.name, cls);
+			moduleEnvironment.export(cls.name);
 		}
-		Map<String, Stmt.Function> functions = new HashMap<>();
 		for (Stmt.Function fun : stmt.functions) {
-			execute(fun);
-			functions.put(fun.name.getLexeme(), fun);
+			moduleEnvironment.declare(fun.name, fun);
+			moduleEnvironment.export(fun.name);
 		}
-		Map<String, Stmt.Var> vars = new HashMap<>();
 		for (Stmt.Var var : stmt.variables) {
-			execute(var);
-			vars.put(var.name.getLexeme(), var);
+			if (ModuleEnvironment.isConstant(var.initializer)) {
+				moduleEnvironment.declare(var.name, var);
+			}
+			moduleEnvironment.export(var.name);
 		}
-		Map<String, Stmt.Val> vals = new HashMap<>();
 		for (Stmt.Val val : stmt.constants) {
-			execute(val);
-			vals.put(val.name.getLexeme(), val);
+			if (val.initializer != null && ModuleEnvironment.isConstant(val.initializer)) {
+				moduleEnvironment.declare(val.name, val);
+			}
+			moduleEnvironment.export(val.name);
 		}
-		QanunModule qanunModule = new QanunModule(stmt.name, classes, functions, vars, vals, this.environment);
-		this.environment = this.environment.getEnclosing();
-		this.environment.define(stmt.name, qanunModule);
-		return null;
+		for (Stmt.Var var : stmt.variables) {
+			if (!ModuleEnvironment.isConstant(var.initializer)) {
+				execute(var);
+			}
+		}
+		for (Stmt.Val val : stmt.constants) {
+			if (val.initializer == null || !ModuleEnvironment.isConstant(val.initializer)) {
+				execute(val);
+			}
+		}
+		return new QanunModule(stmt.name, moduleEnvironment);
 	}
 
 	@Override
 	public Void visitExpressionStmt(Stmt.Expression stmt) {
 		Object value = evaluate(stmt.expression);
-		if (Qanun.isInRepl) {
+		if (context.isInRepl) {
 			if (stmt.expression instanceof Expr.Call) {
 				if (value == null) {
 					return null;
 				} else {
-					System.out.println(stringify(value));
+					context.getOut().println(stringify(value));
 				}
 			} else {
-				System.out.println(stringify(value));
+				context.getOut().println(stringify(value));
 			}
 		}
 		return null;
@@ -547,6 +825,87 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	// the pieces only depend on the length of the list, so the reductions are
+	// merged the same way whatever the number of cores
+	@Override
+	public Void visitParallelForEachStmt(Stmt.ParallelForEach stmt) {
+		Token name = ((Stmt.Var) stmt.loop.init).name;
+		Object iterable = evaluate(stmt.loop.iterable);
+		List<Object> items = new ArrayList<>();
+		if (iterable instanceof List) {
+			items.addAll((List<?>) iterable);
+		} else if (iterable instanceof String) {
+			String string = (String) iterable;
+			for (int c = 0; c < string.length(); c++) {
+				items.add(Character.toString(string.charAt(c)));
+			}
+		}
+		int reductions = stmt.reductions.size();
+		Object[] initial = new Object[reductions];
+		for (int r = 0; r < reductions; r++) {
+			initial[r] = evaluate(stmt.reductions.get(r));
+		}
+		int size = items.size();
+		int count = Math.min(size, PARALLEL_PIECES);
+		Object[][] partials = new Object[count][];
+		// the loop's scope is replaced by one for every piece
+		Environment enclosing = environment.getEnclosing();
+		List<Stmt> body = Collections.singletonList(stmt.loop.body);
+		ParallelLists.pieces(size, count, piece -> {
+			Interpreter worker = new Interpreter(this);
+			Environment local = new Environment(enclosing);
+			local.define(name, null);
+			for (int r = 0; r < reductions; r++) {
+				local.define(stmt.reductions.get(r).name, identity(stmt.operators.get(r), initial[r]));
+			}
+			int to = (int) ((long) size * (piece + 1) / count);
+			for (int i = (int) ((long) size * piece / count); i < to; i++) {
+				local.assign(name, items.get(i));
+				try {
+					worker.executeBlock(body, local);
+				} catch (ContinueJump continueJump) {
+					// the rest of the iteration is skipped
+				}
+			}
+			Object[] values = new Object[reductions];
+			for (int r = 0; r < reductions; r++) {
+				values[r] = local.get(stmt.reductions.get(r).name);
+			}
+			partials[piece] = values;
+		});
+		for (int r = 0; r < reductions; r++) {
+			Token operator = stmt.operators.get(r);
+			// '+' adds to the list on its left, the initial list stays as it is
+			Object value = initial[r] instanceof List ? new ArrayList<>((List<?>) initial[r]) : initial[r];
+			for (Object[] partial : partials) {
+				value = operator.getType() == TokenType.PLUS
+						? plus(operator, value, partial[r])
+						: arithmetic(operator, TokenType.STAR, value, partial[r]);
+			}
+			Integer distance = locals.get(stmt.reductions.get(r));
+			if (distance != null) {
+				environment.assignAt(distance, stmt.reductions.get(r).name, value);
+			} else {
+				globals.assign(stmt.reductions.get(r).name, value);
+			}
+		}
+		return null;
+	}
+
+	// what every piece of a parallel loop starts a reduction with
+	private static Object identity(Token operator, Object initial) {
+		if (QanunNumber.isNumber(initial)) {
+			return QanunNumber.valueOf(operator.getType() == TokenType.PLUS ? 0 : 1);
+		}
+		if (operator.getType() == TokenType.PLUS && initial instanceof String) {
+			return "";
+		}
+		if (operator.getType() == TokenType.PLUS && initial instanceof List) {
+			return new ArrayList<>();
+		}
+		throw new RuntimeError(operator, "A '+' reduction needs a number, string or list, a '*' reduction a number.");
+	}
+
 	@Override
 	public Void visitWhileStmt(Stmt.While stmt) {
 		while (isTruthy(evaluate(stmt.condition))) {
@@ -590,8 +949,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			case PLUS_EQUAL: {
 				Object currentValue = environment.get(expr.name);
 				//checkNumberOperands(expr.equalSign, currentValue, value);
-				if (value instanceof Double && currentValue instanceof Double) {
-					value = (double) currentValue + (double) value;
+				if (QanunNumber.isNumber(value) && QanunNumber.isNumber(currentValue)) {
+					value = arithmetic(expr.equalSign, TokenType.PLUS, currentValue, value);
 					break;
 				} else if (value instanceof List && currentValue instanceof List) {
 					((List) currentValue).addAll((List) value);
@@ -601,41 +960,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					throw new RuntimeError(expr.equalSign, "Operands must be numbers or lists");
 				}
 			}
-			case MINUS_EQUAL: {
-				Object currentValue = environment.get(expr.name);
-				checkNumberOperands(expr.equalSign, currentValue, value);
-				value = (double) currentValue - (double) value;
+			case MINUS_EQUAL:
+				value = arithmetic(expr.equalSign, TokenType.MINUS, environment.get(expr.name), value);
 				break;
-			}
-			case STAR_EQUAL: {
-				Object currentValue = environment.get(expr.name);
-				checkNumberOperands(expr.equalSign, currentValue, value);
-				value = (double) currentValue * (double) value;
+			case STAR_EQUAL:
+				value = arithmetic(expr.equalSign, TokenType.STAR, environment.get(expr.name), value);
 				break;
-			}
-			case SLASH_EQUAL: {
-				Object currentValue = environment.get(expr.name);
-				checkNumberOperands(expr.equalSign, currentValue, value);
-				checkDivisionByZero(expr.equalSign, value);
-				value = (double) currentValue / (double) value;
+			case SLASH_EQUAL:
+				value = arithmetic(expr.equalSign, TokenType.SLASH, environment.get(expr.name), value);
 				break;
-			}
-			case STAR_STAR_EQUAL: {
-				Object currentValue = environment.get(expr.name);
-				checkNumberOperands(expr.equalSign, currentValue, value);
-				value = Math.pow((double) currentValue, (double) value);
+			case STAR_STAR_EQUAL:
+				value = arithmetic(expr.equalSign, TokenType.STAR_STAR, environment.get(expr.name), value);
 				break;
-			}
-			case PERCENTAGE_EQUAL: {
-				Object currentValue = environment.get(expr.name);
-				checkNumberOperands(expr.equalSign, currentValue, value);
-				value = (double) currentValue % (double) value;
+			case PERCENTAGE_EQUAL:
+				value = arithmetic(expr.equalSign, TokenType.PERCENTAGE, environment.get(expr.name), value);
 				break;
-			}
 		}
-		//Integer distance = locals.get(expr);
-		if (locals.containsKey(expr)) {
-			int distance = locals.get(expr);
+		Integer distance = locals.get(expr);
+		if (distance != null) {
 			environment.assignAt(distance, expr.name, value);
 		} else {
 			globals.assign(expr.name, value);
@@ -660,9 +1002,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	private Object lookUpVariable(Token name, Expr expr) {
-		//Integer distance = locals.get(expr);
-		if (locals.containsKey(expr)) {
-			int distance = locals.get(expr);
+		Integer distance = locals.get(expr);
+		if (distance != null) {
 			return environment.getAt(distance, name);
 		} else {
 			return globals.get(name);
@@ -702,12 +1043,51 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			processBuiltInModule(stmt, fullModulePath.split("std:")[1]);
 			return null;
 		}
-		List<Stmt> stmts = Qanun.processModule(fullModulePath, stmt.keyword, module);
+		File file = modules.find(fullModulePath, stmt.keyword);
+		QanunModule qanunModule = modules.get(file);
+		if (qanunModule == null) {
+			qanunModule = loadModule(file, stmt, fullModulePath);
+		}
+		this.environment.defineModule(qanunModule.getName(), qanunModule);
+		return null;
+	}
+
+	private QanunModule loadModule(File file, Stmt.Import stmt, String path) {
+		if (!modules.beginLoading(file)) {
+			throw new RuntimeError(stmt.keyword, "Circular import of module '" + path + "'.");
+		}
+		try {
+			ModuleGraph.Prepared prepared = modules.takePrepared(file);
+			long lastModified;
+			List<Stmt> stmts;
+			if (prepared != null) {
+				context.fileName = file.getAbsolutePath();
+				lastModified = prepared.lastModified;
+				getLocals().putAll(prepared.locals);
+				stmts = prepared.statements;
+			} else {
+				lastModified = file.lastModified();
+				stmts = context.processModule(file, stmt.keyword, path, getLocals());
+			}
+			QanunModule qanunModule = module(moduleStmt(path, stmts));
+			modules.put(file, lastModified, qanunModule);
+			return qanunModule;
+		} finally {
+			modules.endLoading(file);
+		}
+	}
+
+	private Stmt.Module moduleStmt(String path, List<Stmt> stmts) {
+		List<Stmt.Import> imports = new ArrayList<>();
 		List<Stmt.Class> classes = new ArrayList<>();
 		List<Stmt.Function> functions = new ArrayList<>();
 		List<Stmt.Var> variables = new ArrayList<>();
 		List<Stmt.Val> constants = new ArrayList<>();
 		for (Stmt item : stmts) {
+			if (item instanceof Stmt.Import) {
+				imports.add((Stmt.Import) item);
+				continue;
+			}
 			if (item instanceof Stmt.Class) {
 				Stmt.Class i = (Stmt.Class) item;
 				classes.add(i);
@@ -728,13 +1108,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				constants.add(i);
 			}
 		}
-		Token name = new Token(null, new File(fullModulePath).getName(), null, -1);
-		Stmt.Module mod = new Stmt.Module(name, classes, functions, variables, constants);
-		execute(mod);
-		return null;
+		Token name = new Token(null, ModuleRegistry.moduleName(path), null, -1);
+		return new Stmt.Module(name, imports, classes, functions, variables, constants);
 	}
 
-	private boolean isTruthy(Object right) {
+	boolean isTruthy(Object right) {
 		if (right == null) {
 			return false;
 		}
@@ -756,14 +1134,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	private void checkNumberOperand(Token operator, Object operand) {
-		if (operand instanceof Double) {
+		if (QanunNumber.isNumber(operand)) {
 			return;
 		}
 		throw new RuntimeError(operator, "Opernad must be a number");
 	}
 
 	private void checkNumberOperands(Token operator, Object left, Object right) {
-		if (left instanceof Double && right instanceof Double) {
+		if (QanunNumber.isNumber(left) && QanunNumber.isNumber(right)) {
 			return;
 		}
 		throw new RuntimeError(operator, "Operands must be a number");
@@ -774,46 +1152,61 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			return "nil";
 		}
 
-		if (object instanceof Double) {
-			String text = object.toString();
+		if (object instanceof Long && Math.abs((Long) object) < 10000000L) {
+			return object.toString();
+		}
+		if (QanunNumber.isNumber(object)) {
+			// large integral values keep the exponent notation they always had
+			String text = Double.toString(QanunNumber.toDouble(object));
 			if (text.endsWith(".0")) {
 				text = text.substring(0, text.length() - 2);
 			}
 			return text;
 		}
 		if (object instanceof List) {
-			return object.toString().replaceAll("null", "nil");
+			return listToString((List<?>) object).replaceAll("null", "nil");
 		}
 
 		return object.toString();
 	}
 
-	private void checkDivisionByZero(Token operator, Object right) {
-		if ((double) right == 0.0) {
-			throw new RuntimeError(operator, "/ by zero is illegal");
+	// renders a list the way List.toString does, numbers inside lists have
+	// always been printed as doubles so integral values keep their '.0'
+	private String listToString(List<?> list) {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < list.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			Object item = list.get(i);
+			if (item == list) {
+				builder.append("(this Collection)");
+			} else if (item instanceof List) {
+				builder.append(listToString((List<?>) item));
+			} else if (item instanceof Long) {
+				builder.append(Double.toString((Long) item));
+			} else {
+				builder.append(item);
+			}
 		}
+		return builder.append("]").toString();
 	}
 
-	private void defineGlobals() {
-		StandardLibrary.defineGlobals(globals);
+	private void checkDivisionByZero(Token operator, double right) {
+		if (right == 0.0) {
+			throw new RuntimeError(operator, "/ by zero is illegal");
+		}
 	}
 
 	private void processBuiltInModule(Stmt.Import stmt, String string) {
-		switch (string) {
-			case "File":
-				globals.define(new Token(null, BuiltInModules.File.getName(), null, -1), BuiltInModules.File);
-				break;
-			case "Time":
-				globals.define(new Token(null, BuiltInModules.Time.getName(), null, -1), BuiltInModules.Time);
-				break;
-			case "Crypto":
-				globals.define(new Token(null, BuiltInModules.Crypto.getName(), null, -1), BuiltInModules.Crypto);
-				break;
-			case "*":
-				BuiltInModules.importAll(globals);
-				break;
-			default:
-				throw new RuntimeError(stmt.keyword, "No built in module with name '" + string + "'");
+		if (string.equals("*")) {
+			for (String name : BuiltInModules.STAR) {
+				globals.importModule(new Token(null, name, null, stmt.keyword.getLine()));
+			}
+		} else if (BuiltInModules.exists(string)) {
+			globals.importModule(new Token(null, string, null, stmt.keyword.getLine()));
+		} else {
+			throw new RuntimeError(stmt.keyword, "No built in module with name '" + string + "'");
 		}
 	}
 }
@@ -0,0 +1,88 @@
+package com.mina.qanun;
+
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A fixed number of interpreters, each with the natives already bound, that
+ * run compiled scripts for any number of threads. A thread waits while all
+ * of them are busy, so at most that many scripts run at once. After a run an
+ * interpreter forgets only the globals the run gave a value to, it isn't
+ * built again.
+ *
+ * @author mina
+ */
+public final class InterpreterPool {
+
+	private final BlockingQueue<QanunContext> idle;
+	// every interpreter reads from the standard input
+	private final Reader in = new InputStreamReader(System.in);
+	private final PrintStream out;
+	private final PrintStream err;
+
+	public InterpreterPool(int size) {
+		this(size, Paths.get(""), System.out, System.err);
+	}
+
+	public InterpreterPool(int size, Path directory, PrintStream out, PrintStream err) {
+		if (size < 1) {
+			throw new IllegalArgumentException("A pool needs at least one interpreter");
+		}
+		this.out = out;
+		this.err = err;
+		idle = new ArrayBlockingQueue<>(size);
+		for (int i = 0; i < size; i++) {
+			QanunContext context = new QanunContext(directory, in, out, err,
+					Collections.emptyMap(), new HashMap<>());
+			context.getInterpreter().globals.warm();
+			idle.add(context);
+		}
+	}
+
+	public Object execute(QanunScript script) throws InterruptedException {
+		return execute(script, Collections.emptyMap(), out, err);
+	}
+
+	public Object execute(QanunScript script, Map<String, Object> bindings) throws InterruptedException {
+		return execute(script, bindings, out, err);
+	}
+
+	/**
+	 * Runs the script on the next free interpreter with the bindings as
+	 * global variables. What the script assigns to them is put back into the
+	 * map, like {@link QanunScript#run(Map)} does.
+	 *
+	 * @return the value of the last statement if it's an expression
+	 * @throws RuntimeError if the script fails
+	 * @throws CompileError if a module it imports doesn't compile
+	 * @throws InterruptedException if the thread is interrupted while it
+	 * waits for an interpreter
+	 */
+	public Object execute(QanunScript script, Map<String, Object> bindings, PrintStream out, PrintStream err)
+			throws InterruptedException {
+		QanunContext context = idle.take();
+		try {
+			GlobalEnvironment globals = context.getInterpreter().globals;
+			for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+				globals.bind(binding.getKey(), binding.getValue());
+			}
+			context.redirect(in, out, err);
+			Object value = script.execute(context);
+			for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+				binding.setValue(globals.getVariables().get(binding.getKey()));
+			}
+			return value;
+		} finally {
+			context.reset();
+			idle.add(context);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package com.mina.qanun;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A program or function running in an interpreter of its own on its own
+ * thread. Isolates share no Qanun objects with the script that spawned them,
+ * the only way in or out is a message, and a message is copied when it's
+ * sent so neither side ever sees the other's lists. That's what lets them
+ * run at the same time even though environments, instances and lists aren't
+ * synchronized.
+ *
+ * Each direction is a bounded mailbox, a sender waits while the other side is
+ * that many messages behind. Once the spawner joins an isolate, what the
+ * isolate posts is kept for receive without waiting, so joining never waits
+ * on messages nobody reads. Messages sent to an isolate that finished are
+ * dropped. Isolate threads are daemons, a script has to join the isolates it
+ * wants to see finish.
+ *
+ * @author mina
+ */
+final class Isolate {
+
+	private static final int CAPACITY = Integer.getInteger("qanun.isolate.capacity", 64);
+	private static final AtomicInteger COUNT = new AtomicInteger();
+	// queues can't hold null
+	private static final Object NIL = new Object();
+
+	private final String name;
+	// the spawner sends to the inbox, the isolate posts to the outbox
+	private final Mailbox inbox = new Mailbox();
+	private final Mailbox outbox = new Mailbox();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile Object result;
+	private volatile String failure;
+
+	private Isolate(String name) {
+		this.name = name;
+	}
+
+	// runs a program file
+	static Isolate spawn(Interpreter interpreter, String path) {
+		Isolate isolate = new Isolate(path);
+		QanunContext context = interpreter.getContext().isolate(isolate, new HashMap<>());
+		isolate.start(() -> {
+			int code;
+			try {
+				code = context.runFile(path);
+			} catch (IOException exception) {
+				isolate.failure = "Couldn't read '" + path + "'.";
+				return;
+			}
+			if (code != 0) {
+				isolate.failure = "'" + path + "' exited with " + code + ".";
+			}
+		});
+		return isolate;
+	}
+
+	// runs a function declared at the top level of the spawning script, the
+	// function sees the natives and its argument but none of the other
+	// globals of that script
+	static Isolate spawn(Interpreter interpreter, Token name, QanunFunction function, Object argument) {
+		if (function.getClosure() != interpreter.globals || function.arity() > 1) {
+			throw new RuntimeError(name, "Only functions declared at the top level with at most one parameter can run in an isolate.");
+		}
+		Object message = copy(name, argument);
+		Isolate isolate = new Isolate(function.getName());
+		// the distances are copied here, the spawner keeps adding to its own
+		Map<Expr, Integer> locals = interpreter.copyLocals();
+		QanunContext context = interpreter.getContext().isolate(isolate, locals);
+		isolate.start(() -> {
+			Interpreter child = context.getInterpreter();
+			QanunFunction copy = new QanunFunction(function.getName(), function.getDeclaration(), child.globals, false);
+			try {
+				Object value = copy.arity() == 0 ? copy.call0(child) : copy.call1(child, message);
+				isolate.result = copy(name, value);
+			} catch (RuntimeError error) {
+				context.runtimeError(error);
+				isolate.failure = error.getMessage();
+			} catch (ExitJump exit) {
+				isolate.failure = "An imported module has errors.";
+			}
+		});
+		return isolate;
+	}
+
+	private void start(Runnable body) {
+		Thread thread = new Thread(() -> {
+			try {
+				body.run();
+			} finally {
+				inbox.close();
+				outbox.close();
+				finished.countDown();
+			}
+		}, "qanun-isolate-" + COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// from the spawner to the isolate
+	void send(Token token, Object message) {
+		put(token, inbox, copy(token, message));
+	}
+
+	// from the isolate to the spawner
+	void post(Token token, Object message) {
+		put(token, outbox, copy(token, message));
+	}
+
+	// what the isolate posted, nil once it finished and posted nothing more
+	Object receive(Token token) {
+		try {
+			return outbox.take();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while waiting for isolate '" + name + "'.");
+		}
+	}
+
+	// what the spawner sent, waits for it
+	Object take(Token token) {
+		try {
+			return inbox.take();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while waiting for a message.");
+		}
+	}
+
+	// waits for the isolate to finish and returns what its function returned
+	Object join(Token token) {
+		outbox.unbound();
+		try {
+			finished.await();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while waiting for isolate '" + name + "'.");
+		}
+		if (failure != null) {
+			throw new RuntimeError(token, "Isolate '" + name + "' failed: " + failure);
+		}
+		return result;
+	}
+
+	private void put(Token token, Mailbox mailbox, Object message) {
+		try {
+			mailbox.put(message);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while sending to isolate '" + name + "'.");
+		}
+	}
+
+	// strings, numbers and booleans are immutable, lists are copied all the
+	// way down
+	static Object copy(Token token, Object value) {
+		if (value == null || value instanceof String || value instanceof Boolean || QanunNumber.isNumber(value)) {
+			return value;
+		}
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			List<Object> copy = new ArrayList<>(list.size());
+			for (Object element : list) {
+				copy.add(copy(token, element));
+			}
+			return copy;
+		}
+		throw new RuntimeError(token, "Only nil, booleans, numbers, strings and lists can be sent between isolates.");
+	}
+
+	@Override
+	public String toString() {
+		return "<isolate " + name + ">";
+	}
+
+	// the messages one side sends to the other, a thread waits on it until
+	// there is room or a message, or until the mailbox stops being waited on
+	private static final class Mailbox {
+
+		private final ArrayDeque<Object> messages = new ArrayDeque<>();
+		// set once the reader joined, it takes any number of messages
+		private boolean unbounded;
+		// set once the isolate finished, the mailbox hands out what is left
+		// and then nil, and drops what is still sent
+		private boolean closed;
+
+		synchronized void put(Object message) throws InterruptedException {
+			while (messages.size() >= CAPACITY && !unbounded && !closed) {
+				wait();
+			}
+			if (!closed) {
+				messages.add(message == null ? NIL : message);
+				notifyAll();
+			}
+		}
+
+		synchronized Object take() throws InterruptedException {
+			while (messages.isEmpty() && !closed) {
+				wait();
+			}
+			Object message = messages.poll();
+			notifyAll();
+			return message == NIL ? null : message;
+		}
+
+		synchronized void unbound() {
+			unbounded = true;
+			notifyAll();
+		}
+
+		synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+	}
+}
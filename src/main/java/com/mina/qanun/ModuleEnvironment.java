@@ -0,0 +1,135 @@
+package com.mina.qanun;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Top level scope of a module. Declarations that can't have side effects are
+ * only executed the first time one of their names is looked up, so importing
+ * a large module costs little more than the parts a script uses. The names a
+ * module exports each have a slot that is kept up to date with their value.
+ *
+ * An error in a deferred declaration, like a superclass that isn't a class,
+ * is reported the first time its name is used rather than at import.
+ *
+ * A declaration can first be reached from a task, so it runs on the thread
+ * that looks it up, in an interpreter of its own with the distances the
+ * module was resolved into, and one thread at a time. Its name is only
+ * exported once it has run, a class is defined as nil before it is built.
+ *
+ * @author mina
+ */
+final class ModuleEnvironment extends Environment {
+
+	private final Interpreter interpreter;
+	// the distances as they were when the module was loaded, the importing
+	// interpreter copies them before it adds to them again
+	private final Map<Expr, Integer> locals;
+	private final Map<String, Stmt> declarations = new HashMap<>();
+	private final Map<String, Export> exports = new HashMap<>();
+
+	static final class Export {
+
+		volatile Object value;
+		// false until the declaration has been executed
+		volatile boolean defined;
+		// true while the declaration waits to be executed or runs
+		volatile boolean pending;
+	}
+
+	// other threads read the scope while a declaration defines its name
+	ModuleEnvironment(Environment enclosing, Interpreter interpreter) {
+		super(enclosing, Collections.synchronizedMap(new HashMap<>()),
+				Collections.synchronizedMap(new HashMap<>()));
+		this.interpreter = interpreter;
+		this.locals = interpreter.shareLocals();
+	}
+
+	void declare(Token name, Stmt declaration) {
+		declarations.put(name.getLexeme(), declaration);
+	}
+
+	// declarations are recorded before their names are exported
+	void export(Token name) {
+		Export export = new Export();
+		export.pending = declarations.containsKey(name.getLexeme());
+		exports.put(name.getLexeme(), export);
+	}
+
+	Map<String, Export> getExports() {
+		return exports;
+	}
+
+	// runs every declaration that is still pending
+	synchronized void materializeAll() {
+		for (String name : new ArrayList<>(declarations.keySet())) {
+			materialize(name);
+		}
+	}
+
+	@Override
+	void changed(String name, Object value) {
+		Export export = exports.get(name);
+		if (export != null) {
+			export.value = value;
+			if (!export.pending) {
+				export.defined = true;
+			}
+		}
+	}
+
+	// another thread may have run the declaration while this one waited
+	@Override
+	synchronized boolean materialize(String name) {
+		Stmt declaration = declarations.remove(name);
+		if (declaration == null) {
+			return getVariables().containsKey(name) || getConstants().containsKey(name);
+		}
+		new Interpreter(interpreter, locals).executeBlock(Collections.singletonList(declaration), this);
+		Export export = exports.get(name);
+		if (export != null) {
+			export.pending = false;
+			export.defined = true;
+		}
+		return true;
+	}
+
+	// true for initializers whose value doesn't depend on when they are run,
+	// anything that reads a variable or calls a function runs at import
+	static boolean isConstant(Expr expr) {
+		if (expr == null || expr instanceof Expr.Literal || expr instanceof Expr.AnonymousFun) {
+			return true;
+		}
+		if (expr instanceof Expr.Grouping) {
+			return isConstant(((Expr.Grouping) expr).expression);
+		}
+		if (expr instanceof Expr.Unary) {
+			Expr.Unary unary = (Expr.Unary) expr;
+			return unary.operator.getType() != TokenType.PLUS_PLUS
+					&& unary.operator.getType() != TokenType.MINUS_MINUS
+					&& isConstant(unary.right);
+		}
+		if (expr instanceof Expr.Binary) {
+			return isConstant(((Expr.Binary) expr).left) && isConstant(((Expr.Binary) expr).right);
+		}
+		if (expr instanceof Expr.Logical) {
+			return isConstant(((Expr.Logical) expr).left) && isConstant(((Expr.Logical) expr).right);
+		}
+		if (expr instanceof Expr.ConditionalTernary) {
+			Expr.ConditionalTernary ternary = (Expr.ConditionalTernary) expr;
+			return isConstant(ternary.condition) && isConstant(ternary.trueCondition)
+					&& isConstant(ternary.falseCondition);
+		}
+		if (expr instanceof Expr.QanunList) {
+			for (Expr element : ((Expr.QanunList) expr).list) {
+				if (!isConstant(element)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,121 @@
+package com.mina.qanun;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Front-end pre-pass over the import graph. Starting from a program it
+ * follows every top level 'import' with a literal path and scans, parses and
+ * resolves the modules it reaches in parallel. Nothing is executed here, the
+ * interpreter still runs imports in program order and picks up the prepared
+ * modules as it reaches them. Modules that can't be prepared, because they
+ * are missing or have errors, are left to the usual import path which
+ * reports the problem where the import is.
+ *
+ * @author mina
+ */
+final class ModuleGraph {
+
+	static final class Prepared {
+
+		final List<Stmt> statements;
+		final Map<Expr, Integer> locals;
+		final long lastModified;
+
+		Prepared(List<Stmt> statements, Map<Expr, Integer> locals, long lastModified) {
+			this.statements = statements;
+			this.locals = locals;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private final Map<String, Boolean> seen = new ConcurrentHashMap<>();
+	private final Map<String, Prepared> prepared = new ConcurrentHashMap<>();
+
+	private final QanunContext context;
+
+	private ModuleGraph(QanunContext context) {
+		this.context = context;
+	}
+
+	// returns the modules reachable from the statements keyed by canonical path
+	static Map<String, Prepared> prepare(QanunContext context, List<Stmt> statements) {
+		ModuleGraph graph = new ModuleGraph(context);
+		List<Load> loads = graph.imports(statements);
+		if (loads.isEmpty()) {
+			return new HashMap<>();
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				ForkJoinTask.invokeAll(loads);
+			}
+		});
+		return graph.prepared;
+	}
+
+	// a task for every module imported by the statements that isn't already
+	// being loaded
+	private List<Load> imports(List<Stmt> statements) {
+		List<Load> loads = new ArrayList<>();
+		for (Stmt statement : statements) {
+			if (!(statement instanceof Stmt.Import)) {
+				continue;
+			}
+			Expr path = ((Stmt.Import) statement).path;
+			if (!(path instanceof Expr.Literal) || !(((Expr.Literal) path).value instanceof String)) {
+				continue;
+			}
+			String modulePath = (String) ((Expr.Literal) path).value;
+			if (modulePath.startsWith("std:")) {
+				continue;
+			}
+			File file;
+			try {
+				file = context.findModule(modulePath, ((Stmt.Import) statement).keyword);
+			} catch (RuntimeError error) {
+				continue;
+			}
+			if (seen.putIfAbsent(file.getPath(), Boolean.TRUE) == null) {
+				loads.add(new Load(file));
+			}
+		}
+		return loads;
+	}
+
+	private final class Load extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final File file;
+
+		Load(File file) {
+			this.file = file;
+		}
+
+		@Override
+		protected void compute() {
+			long lastModified = file.lastModified();
+			Map<Expr, Integer> locals = new HashMap<>();
+			List<Stmt> statements;
+			try {
+				statements = context.loadDetached(file, locals);
+			} catch (IOException | RuntimeException exception) {
+				return;
+			}
+			if (statements == null) {
+				return;
+			}
+			prepared.put(file.getPath(), new Prepared(statements, locals, lastModified));
+			ForkJoinTask.invokeAll(imports(statements));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.mina.qanun;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Modules an interpreter has already executed, keyed by the canonical path of
+ * their source file so every import of the same file shares one module. An
+ * entry is dropped once its file was modified after it had been loaded. A
+ * registry belongs to one interpreter and isn't synchronized, tasks have
+ * registries of their own.
+ *
+ * @author mina
+ */
+final class ModuleRegistry {
+
+	private static final class Entry {
+
+		final QanunModule module;
+		final long lastModified;
+
+		Entry(QanunModule module, long lastModified) {
+			this.module = module;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private final QanunContext context;
+	private final Map<String, Entry> modules = new HashMap<>();
+	private final Set<String> loading = new HashSet<>();
+	private Map<String, ModuleGraph.Prepared> prepared = new HashMap<>();
+	// set when running a bundle, imports are then looked up in it instead
+	// of on disk and its modules never change
+	private Map<String, String> bundled;
+
+	ModuleRegistry(QanunContext context) {
+		this.context = context;
+	}
+
+	// the registry of a task starts empty, only the bundle is shared
+	ModuleRegistry(ModuleRegistry spawner) {
+		this.context = spawner.context;
+		if (spawner.bundled != null) {
+			bundle(spawner.bundled, spawner.prepared);
+		}
+	}
+
+	// the name a module is bound to, 'import "lib/util"' binds 'util'
+	static String moduleName(String path) {
+		return new File(path).getName();
+	}
+
+	void bundle(Map<String, String> paths, Map<String, ModuleGraph.Prepared> modules) {
+		bundled = paths;
+		prepared = modules;
+	}
+
+	// returns the file a module is identified by
+	File find(String path, Token keyword) {
+		if (bundled == null) {
+			return context.findModule(path, keyword);
+		}
+		String key = bundled.get(path);
+		if (key == null) {
+			throw new RuntimeError(keyword, "Module '" + path + "' isn't part of the bundle.");
+		}
+		return new File(key);
+	}
+
+	// returns the loaded module or null if it has to be (re)loaded
+	QanunModule get(File file) {
+		Entry entry = modules.get(file.getPath());
+		if (entry == null) {
+			return null;
+		}
+		if (bundled == null && entry.lastModified != file.lastModified()) {
+			modules.remove(file.getPath());
+			return null;
+		}
+		return entry.module;
+	}
+
+	void prepare(Map<String, ModuleGraph.Prepared> modules) {
+		prepared = modules;
+	}
+
+	// returns the module parsed ahead of time by the front-end, unless its
+	// file changed since. the modules of a bundle are kept, every registry
+	// running it reads them
+	ModuleGraph.Prepared takePrepared(File file) {
+		ModuleGraph.Prepared module = bundled != null ? prepared.get(file.getPath()) : prepared.remove(file.getPath());
+		if (module == null || (bundled == null && module.lastModified != file.lastModified())) {
+			return null;
+		}
+		return module;
+	}
+
+	void put(File file, long lastModified, QanunModule module) {
+		modules.put(file.getPath(), new Entry(module, lastModified));
+	}
+
+	// returns false if the module is already being loaded, which means its
+	// imports lead back to it
+	boolean beginLoading(File file) {
+		return loading.add(file.getPath());
+	}
+
+	void endLoading(File file) {
+		loading.remove(file.getPath());
+	}
+
+	void clear() {
+		modules.clear();
+		loading.clear();
+		if (bundled == null) {
+			prepared = new HashMap<>();
+		}
+	}
+}
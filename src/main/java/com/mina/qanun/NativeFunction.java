@@ -0,0 +1,284 @@
+package com.mina.qanun;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A native function bound to a static {@link QanunNative} method through a
+ * method handle. The method may take the Interpreter as its first parameter,
+ * String, List, Boolean, double and long parameters are checked and
+ * converted by adapters and number results are boxed through QanunNumber.
+ *
+ * @author mina
+ */
+final class NativeFunction implements QanunCallable {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle CHECK_ARGUMENT;
+	private static final MethodHandle TO_DOUBLE;
+	private static final MethodHandle TO_LONG;
+	private static final MethodHandle FROM_DOUBLE;
+	private static final MethodHandle FROM_LONG;
+
+	static {
+		try {
+			CHECK_ARGUMENT = LOOKUP.findStatic(NativeFunction.class, "checkArgument",
+					MethodType.methodType(Object.class, Token.class, int.class, Class.class, Object.class));
+			TO_DOUBLE = LOOKUP.findStatic(NativeFunction.class, "toDouble",
+					MethodType.methodType(double.class, Token.class, int.class, Object.class));
+			TO_LONG = LOOKUP.findStatic(NativeFunction.class, "toLong",
+					MethodType.methodType(long.class, Token.class, int.class, Object.class));
+			FROM_DOUBLE = LOOKUP.findStatic(QanunNumber.class, "valueOf",
+					MethodType.methodType(Object.class, double.class));
+			FROM_LONG = LOOKUP.findStatic(QanunNumber.class, "valueOf",
+					MethodType.methodType(Object.class, long.class));
+		} catch (NoSuchMethodException | IllegalAccessException exception) {
+			throw new ExceptionInInitializerError(exception);
+		}
+	}
+
+	private final Token name;
+	private final int arity;
+	// (Interpreter, Object...) -> Object, one Object per script argument
+	private final MethodHandle handle;
+	// (Interpreter, Object[]) -> Object
+	private final MethodHandle spreader;
+
+	private NativeFunction(Token name, int arity, MethodHandle handle) {
+		this.name = name;
+		this.arity = arity;
+		this.handle = handle;
+		this.spreader = handle.asSpreader(Object[].class, arity);
+	}
+
+	/**
+	 * The natives of one owner and module. Building the method handles is
+	 * what makes binding expensive, so each native is only bound the first
+	 * time it's looked up.
+	 */
+	static final class Table {
+
+		private final Map<String, Method> methods;
+		private final Map<String, QanunCallable> bound = new ConcurrentHashMap<>();
+
+		private Table(Map<String, Method> methods) {
+			this.methods = methods;
+		}
+
+		// returns null if there is no native with that name
+		QanunCallable get(String name) {
+			QanunCallable function = bound.get(name);
+			if (function == null) {
+				Method method = methods.get(name);
+				if (method == null) {
+					return null;
+				}
+				function = bound.computeIfAbsent(name, functionName -> bind(functionName, method));
+			}
+			return function;
+		}
+
+		Set<String> names() {
+			return methods.keySet();
+		}
+	}
+
+	// finds every @QanunNative method of the owner that belongs to the given
+	// module, pass an empty module name for global natives
+	static Table table(Class<?> owner, String module) {
+		return scan(owner, module, true);
+	}
+
+	// the @QanunNative instance methods of a QanunNativeObject class, what
+	// the table returns has to be bound to an object before it's called
+	static Table methods(Class<? extends QanunNativeObject> owner) {
+		return scan(owner, "", false);
+	}
+
+	private static Table scan(Class<?> owner, String module, boolean isStatic) {
+		Map<String, Method> methods = new HashMap<>();
+		for (Method method : owner.getDeclaredMethods()) {
+			QanunNative annotation = method.getAnnotation(QanunNative.class);
+			if (annotation == null || !annotation.module().equals(module)) {
+				continue;
+			}
+			if (Modifier.isStatic(method.getModifiers()) != isStatic) {
+				throw new IllegalStateException("Native '" + annotation.value() + "' must"
+						+ (isStatic ? "" : "n't") + " be static");
+			}
+			methods.put(annotation.value(), method);
+		}
+		return new Table(methods);
+	}
+
+	private static NativeFunction bind(String functionName, Method method) {
+		Token name = new Token(TokenType.IDENTIFIER, functionName, null, 0);
+		MethodHandle target;
+		try {
+			target = LOOKUP.unreflect(method);
+		} catch (IllegalAccessException exception) {
+			throw new IllegalStateException("Native '" + functionName + "' is not accessible", exception);
+		}
+		Class<?>[] parameters = method.getParameterTypes();
+		// an instance method's handle takes the object first
+		int receiver = Modifier.isStatic(method.getModifiers()) ? 0 : 1;
+		boolean takesInterpreter = parameters.length > 0 && parameters[0] == Interpreter.class;
+		if (!takesInterpreter) {
+			target = MethodHandles.dropArguments(target, receiver, Interpreter.class);
+		}
+		int offset = takesInterpreter ? 1 : 0;
+		int arity = parameters.length - offset;
+		for (int i = 0; i < arity; i++) {
+			MethodHandle adapter = argumentAdapter(name, i + 1, parameters[i + offset]);
+			if (adapter != null) {
+				target = MethodHandles.filterArguments(target, receiver + i + 1, adapter);
+			}
+		}
+		Class<?> returnType = method.getReturnType();
+		if (returnType == double.class) {
+			target = MethodHandles.filterReturnValue(target,
+					FROM_DOUBLE.asType(MethodType.methodType(Object.class, returnType)));
+		} else if (returnType == long.class || returnType == int.class) {
+			target = MethodHandles.filterReturnValue(target,
+					FROM_LONG.asType(MethodType.methodType(Object.class, returnType)));
+		}
+		MethodType generic = MethodType.genericMethodType(arity).insertParameterTypes(0, Interpreter.class);
+		if (receiver == 1) {
+			generic = generic.insertParameterTypes(0, method.getDeclaringClass());
+		}
+		return new NativeFunction(name, arity, target.asType(generic));
+	}
+
+	// returns a (Object) -> type handle, or null when no conversion is needed
+	private static MethodHandle argumentAdapter(Token name, int position, Class<?> type) {
+		if (type == Object.class) {
+			return null;
+		}
+		if (type == double.class) {
+			return MethodHandles.insertArguments(TO_DOUBLE, 0, name, position);
+		}
+		if (type == long.class) {
+			return MethodHandles.insertArguments(TO_LONG, 0, name, position);
+		}
+		if (type == String.class || type == List.class || type == Boolean.class) {
+			return MethodHandles.insertArguments(CHECK_ARGUMENT, 0, name, position, type)
+					.asType(MethodType.methodType(type, Object.class));
+		}
+		throw new IllegalStateException("Native '" + name.getLexeme()
+				+ "' has an unsupported parameter type " + type.getSimpleName());
+	}
+
+	private static Object checkArgument(Token name, int position, Class<?> type, Object value) {
+		if (!type.isInstance(value)) {
+			throw argumentError(name, position, type == String.class ? "a string"
+					: type == List.class ? "a list" : "a boolean");
+		}
+		return value;
+	}
+
+	private static double toDouble(Token name, int position, Object value) {
+		if (!QanunNumber.isNumber(value)) {
+			throw argumentError(name, position, "a number");
+		}
+		return QanunNumber.toDouble(value);
+	}
+
+	private static long toLong(Token name, int position, Object value) {
+		if (!(value instanceof Long)) {
+			throw argumentError(name, position, "an integer");
+		}
+		return (Long) value;
+	}
+
+	private static RuntimeError argumentError(Token name, int position, String expected) {
+		return new RuntimeError(name, "Argument " + position + " of '" + name.getLexeme()
+				+ "' must be " + expected + ".");
+	}
+
+	String getName() {
+		return name.getLexeme();
+	}
+
+	// an instance method bound to the object it's called on
+	NativeFunction bindTo(Object receiver) {
+		return new NativeFunction(name, arity, handle.bindTo(receiver));
+	}
+
+	@Override
+	public int arity() {
+		return arity;
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, List<Object> arguments) {
+		return call(interpreter, arguments.toArray());
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Object[] arguments) {
+		try {
+			return (Object) spreader.invokeExact(interpreter, arguments);
+		} catch (RuntimeException | Error exception) {
+			throw exception;
+		} catch (Throwable throwable) {
+			throw new IllegalStateException(throwable);
+		}
+	}
+
+	@Override
+	public Object call0(Interpreter interpreter) {
+		try {
+			return (Object) handle.invokeExact(interpreter);
+		} catch (RuntimeException | Error exception) {
+			throw exception;
+		} catch (Throwable throwable) {
+			throw new IllegalStateException(throwable);
+		}
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object argument) {
+		try {
+			return (Object) handle.invokeExact(interpreter, argument);
+		} catch (RuntimeException | Error exception) {
+			throw exception;
+		} catch (Throwable throwable) {
+			throw new IllegalStateException(throwable);
+		}
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object first, Object second) {
+		try {
+			return (Object) handle.invokeExact(interpreter, first, second);
+		} catch (RuntimeException | Error exception) {
+			throw exception;
+		} catch (Throwable throwable) {
+			throw new IllegalStateException(throwable);
+		}
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+		try {
+			return (Object) handle.invokeExact(interpreter, first, second, third);
+		} catch (RuntimeException | Error exception) {
+			throw exception;
+		} catch (Throwable throwable) {
+			throw new IllegalStateException(throwable);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "<native function '" + name.getLexeme() + "'>";
+	}
+}
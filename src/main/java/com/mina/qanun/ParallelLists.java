@@ -0,0 +1,193 @@
+package com.mina.qanun;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The parallelMap, parallelFilter, parallelReduce and parallelForEach
+ * natives. A list is split in halves on the common fork/join pool until the
+ * pieces are small enough to be worth a thread, every piece is then run by
+ * an interpreter of its own that shares the globals like a task does. Lists
+ * shorter than the cutoff are done on the calling thread.
+ *
+ * The function is called from many threads at once, it mustn't change
+ * variables or lists the other calls use.
+ *
+ * @author mina
+ */
+final class ParallelLists {
+
+	static final int CUTOFF = Integer.getInteger("qanun.parallel.cutoff", 1000);
+
+	private ParallelLists() {
+	}
+
+	// what every element of a range is put through
+	private interface Body {
+
+		void run(Interpreter interpreter, int index);
+	}
+
+	private static final class Range extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Interpreter spawner;
+		private final Body body;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		Range(Interpreter spawner, Body body, int from, int to, int grain) {
+			this.spawner = spawner;
+			this.body = body;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				Interpreter worker = new Interpreter(spawner);
+				for (int i = from; i < to; i++) {
+					body.run(worker, i);
+				}
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new Range(spawner, body, from, middle, grain), new Range(spawner, body, middle, to, grain));
+		}
+	}
+
+	// folds a range without an initial value, ranges are never empty
+	private static final class Fold extends RecursiveTask<Object> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Interpreter spawner;
+		private final QanunCallable function;
+		private final List<?> list;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		Fold(Interpreter spawner, QanunCallable function, List<?> list, int from, int to, int grain) {
+			this.spawner = spawner;
+			this.function = function;
+			this.list = list;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected Object compute() {
+			if (to - from <= grain) {
+				return fold(new Interpreter(spawner), function, null, list, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			Fold left = new Fold(spawner, function, list, from, middle, grain);
+			left.fork();
+			Object right = new Fold(spawner, function, list, middle, to, grain).compute();
+			return function.call2(new Interpreter(spawner), left.join(), right);
+		}
+	}
+
+	static List<Object> map(Interpreter interpreter, String name, List<?> list, Object function) {
+		QanunCallable callable = callable(name, function, 1);
+		Object[] results = new Object[list.size()];
+		each(interpreter, list.size(), (worker, i) -> results[i] = callable.call1(worker, list.get(i)));
+		return new ArrayList<>(Arrays.asList(results));
+	}
+
+	static List<Object> filter(Interpreter interpreter, String name, List<?> list, Object function) {
+		QanunCallable callable = callable(name, function, 1);
+		boolean[] kept = new boolean[list.size()];
+		each(interpreter, list.size(), (worker, i) -> kept[i] = worker.isTruthy(callable.call1(worker, list.get(i))));
+		List<Object> results = new ArrayList<>();
+		for (int i = 0; i < kept.length; i++) {
+			if (kept[i]) {
+				results.add(list.get(i));
+			}
+		}
+		return results;
+	}
+
+	static void forEach(Interpreter interpreter, String name, List<?> list, Object function) {
+		QanunCallable callable = callable(name, function, 1);
+		each(interpreter, list.size(), (worker, i) -> callable.call1(worker, list.get(i)));
+	}
+
+	// the pieces are folded separately and then combined, so the function
+	// has to be associative. the initial value comes first, nil means the
+	// first element is the initial value
+	static Object reduce(Interpreter interpreter, String name, List<?> list, Object function, Object initial) {
+		QanunCallable callable = callable(name, function, 2);
+		if (list.size() < CUTOFF) {
+			return fold(interpreter, callable, initial, list, 0, list.size());
+		}
+		Object folded = ForkJoinPool.commonPool().invoke(new Fold(interpreter, callable, list, 0, list.size(), grain(list.size())));
+		return initial == null ? folded : callable.call2(interpreter, initial, folded);
+	}
+
+	private static Object fold(Interpreter interpreter, QanunCallable function, Object initial, List<?> list, int from, int to) {
+		// without an initial value the first element is where the fold starts
+		Object value = initial;
+		int start = from;
+		if (initial == null && from < to) {
+			value = list.get(from);
+			start++;
+		}
+		for (int i = start; i < to; i++) {
+			value = function.call2(interpreter, value, list.get(i));
+		}
+		return value;
+	}
+
+	private static void each(Interpreter interpreter, int size, Body body) {
+		if (size < CUTOFF) {
+			for (int i = 0; i < size; i++) {
+				body.run(interpreter, i);
+			}
+			return;
+		}
+		ForkJoinPool.commonPool().invoke(new Range(interpreter, body, 0, size, grain(size)));
+	}
+
+	// runs the pieces on the pool, or one after the other on the calling
+	// thread when there are fewer elements than the cutoff
+	static void pieces(int size, int count, IntConsumer piece) {
+		if (size < CUTOFF) {
+			for (int i = 0; i < count; i++) {
+				piece.accept(i);
+			}
+			return;
+		}
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int index = i;
+			tasks.add(ForkJoinTask.adapt(() -> piece.accept(index)));
+		}
+		ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+	}
+
+	// a few pieces for every thread so a slow piece doesn't hold up the rest
+	private static int grain(int size) {
+		return Math.max(size / (ForkJoinPool.getCommonPoolParallelism() * 4), 1);
+	}
+
+	private static QanunCallable callable(String name, Object function, int arity) {
+		if (!(function instanceof QanunCallable) || ((QanunCallable) function).arity() != arity) {
+			throw new RuntimeError(new Token(TokenType.IDENTIFIER, name, null, 0),
+					"Expect a function with " + (arity == 1 ? "one parameter." : "two parameters."));
+		}
+		return (QanunCallable) function;
+	}
+}
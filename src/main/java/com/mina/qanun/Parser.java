@@ -13,11 +13,13 @@ public class Parser {
 	}
 
 	private final List<Token> tokens;
+	private final QanunContext context;
 	private int current;
 	private boolean maybeNamedArrowFun;
 
-	public Parser(List<Token> tokens) {
+	public Parser(List<Token> tokens, QanunContext context) {
 		this.tokens = tokens;
+		this.context = context;
 	}
 
 	List<Stmt> parse() {
@@ -134,7 +136,7 @@ public class Parser {
 		if (match(TokenType.EQUAL)) {
 			initializer = expression();
 		} else {
-			Qanun.error(name, "constant varaibles must be initialized");
+			context.error(name, "constant varaibles must be initialized");
 		}
 		consume(TokenType.SEMICOLON, "Expect ';' after constant declaration.");
 		return new Stmt.Val(name, initializer);
@@ -147,6 +149,10 @@ public class Parser {
 		if (match(TokenType.FOR)) {
 			return forStatement();
 		}
+		// 'parallel' is only a keyword in front of 'for', it can still be a name
+		if (checkWord("parallel") && checkNext(TokenType.FOR)) {
+			return parallelForStatement();
+		}
 		if (match(TokenType.IF)) {
 			return ifStatement();
 		}
@@ -226,6 +232,37 @@ public class Parser {
 		return new Stmt.Block(List.of(new Stmt.ForEach(init, iterable, body)));
 	}
 
+	private Stmt parallelForStatement() {
+		Token keyword = advance();
+		advance();
+		consume(TokenType.LEFT_PAREN, "Expect '(' after for.");
+		consume(TokenType.VAR, "Expect 'var' after 'parallel for ('.");
+		Stmt init = forEachVarDeclaration();
+		Expr iterable = expression();
+		consume(TokenType.RIGHT_PAREN, "Expect ')' after for expression.");
+		List<Expr.Variable> reductions = new ArrayList<>();
+		List<Token> operators = new ArrayList<>();
+		// reduce (total: +, product: *), a body calling a function named
+		// reduce doesn't have the ':'
+		if (checkWord("reduce") && checkNext(TokenType.LEFT_PAREN) && checkAhead(3, TokenType.COLON)) {
+			advance();
+			advance();
+			do {
+				Token name = consume(TokenType.IDENTIFIER, "Expect reduction variable name.");
+				consume(TokenType.COLON, "Expect ':' after reduction variable name.");
+				if (!match(TokenType.PLUS, TokenType.STAR)) {
+					throw error(peek(), "Expect '+' or '*' as reduction operator.");
+				}
+				reductions.add(new Expr.Variable(name));
+				operators.add(previous());
+			} while (match(TokenType.COMMA));
+			consume(TokenType.RIGHT_PAREN, "Expect ')' after reductions.");
+		}
+		Stmt body = statement();
+		// wrapping it in Block to prevent scope leaks
+		return new Stmt.Block(List.of(new Stmt.ParallelForEach(keyword, new Stmt.ForEach(init, iterable, body), reductions, operators)));
+	}
+
 	private Stmt forEachVarDeclaration() {
 		Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
 		Expr initializer = null;
@@ -272,7 +309,7 @@ public class Parser {
 		List<Object> values = new ArrayList();
 		while (!match(TokenType.RIGHT_BRACE)) {
 			if (isAtEnd()) {
-				Qanun.error(peek(), "Unexpected End of File.");
+				context.error(peek(), "Unexpected End of File.");
 			} else if (match(TokenType.CASE)) {
 				if (!match(TokenType.STRING, TokenType.NUMBER, TokenType.TRUE, TokenType.FALSE, TokenType.NIL)) {
 					error(peek(), "Case expressions must be constants.");
@@ -592,6 +629,14 @@ public class Parser {
 		return tokens.get(current + 1).getType() == tokenType;
 	}
 
+	private boolean checkWord(String word) {
+		return check(TokenType.IDENTIFIER) && peek().getLexeme().equals(word);
+	}
+
+	private boolean checkAhead(int distance, TokenType tokenType) {
+		return current + distance < tokens.size() && tokens.get(current + distance).getType() == tokenType;
+	}
+
 	private Token advance() {
 		if (!isAtEnd()) {
 			current++;
@@ -612,7 +657,7 @@ public class Parser {
 	}
 
 	private ParseError error(Token token, String message) {
-		Qanun.error(token, message);
+		context.error(token, message);
 		return new ParseError();
 	}
 
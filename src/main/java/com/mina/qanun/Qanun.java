@@ -1,14 +1,15 @@
 package com.mina.qanun;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -17,7 +18,7 @@ import java.util.List;
 public class Qanun {
 
 	public enum Error {
-		EX_USAGE(64), EX_DATAERR(65), EX_SOFTWARE(70), EX_GENERAL(1);
+		EX_USAGE(64), EX_DATAERR(65), EX_SOFTWARE(70), EX_TEMPFAIL(75), EX_GENERAL(1);
 
 		private final int code;
 
@@ -29,131 +30,127 @@ public class Qanun {
 			return this.code;
 		}
 	}
-	private static final Interpreter interpreter = new Interpreter();
-	static boolean hadError = false;
-	static boolean hadRuntimeError = false;
-	static boolean isInRepl;
-	static String fileName;
+	// part of the key of cached programs, bump it whenever parsing or
+	// resolving changes
+	static final String VERSION = "1.2";
+	// scans, parses and resolves a program once so it can be run many times
+	public static QanunScript compile(String source) {
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		QanunContext context = new QanunContext(Paths.get(""), System.in, System.out, new PrintStream(errors, true));
+		Map<Expr, Integer> locals = new HashMap<>();
+		List<Stmt> statements = context.parse(source, false, locals);
+		if (statements == null) {
+			throw new CompileError(errors.toString().trim());
+		}
+		return new QanunScript(statements, locals);
+	}
 
 	public static void main(String[] args) throws IOException {
-		if (args.length > 1) {
-			System.err.println("Usage: qanun [script.qan | script.qanun]");
+		QanunContext context = new QanunContext();
+		int flags = 0;
+		boolean buildCds = false;
+		boolean daemon = false;
+		// --image= starts from a snapshot instead of empty globals
+		String image = null;
+		while (flags < args.length && args[flags].startsWith("--")) {
+			if (args[flags].equals("--startup-stats")) {
+				context.startupStats = true;
+			} else if (args[flags].equals("--build-cds")) {
+				buildCds = true;
+			} else if (args[flags].equals("--daemon")) {
+				daemon = true;
+			} else if (args[flags].startsWith("--image=")) {
+				image = args[flags].substring("--image=".length());
+			} else {
+				System.err.println("Error: Unknown option '" + args[flags] + "'");
+				System.exit(Error.EX_USAGE.getCode());
+			}
+			flags++;
+		}
+		args = Arrays.copyOfRange(args, flags, args.length);
+		if (daemon && args.length == 0) {
+			Daemon.serve();
+		} else if (buildCds && args.length <= 1) {
+			buildCds(args.length == 1 ? args[0] : null);
+		} else if (args.length == 4 && args[0].equals("bundle") && args[2].equals("-o")) {
+			bundle(context, args[1], args[3]);
+		} else if (args.length == 4 && args[0].equals("snapshot") && args[2].equals("-o")) {
+			restoreImage(context, image);
+			snapshot(context, args[1], args[3]);
+		} else if (args.length > 1) {
+			System.err.println("Usage: qanun [--startup-stats] [--image=prelude.qani] [script.qan | script.qanun | app.qanb]");
+			System.err.println("       qanun bundle script.qan -o app.qanb");
+			System.err.println("       qanun snapshot prelude.qan -o prelude.qani");
+			System.err.println("       qanun --build-cds [training.qan]");
+			System.err.println("       qanun --daemon");
 			System.exit(Error.EX_USAGE.getCode());
 		} else if (args.length == 1) {
-			isInRepl = false;
-			runFile(args[0]);
+			restoreImage(context, image);
+			exitOnError(context.runFile(args[0]));
 		} else {
-			isInRepl = true;
-			runPrompt();
+			context.isInRepl = true;
+			restoreImage(context, image);
+			runPrompt(context);
 		}
 	}
 
-	private static void runFile(String path) throws IOException {
-		String name = Paths.get(path).getFileName().toString();
-		Qanun.fileName = name;
-		boolean isDotQanFile = name.matches("([a-zA-z1-9]+\\.)+(qanun|qan)$");
-		if (!isDotQanFile) {
-			System.err.println("Error: Qanun file should end with .qan or .qanun file extension");
-			System.exit(Error.EX_GENERAL.getCode());
-		}
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
-		run(new String(bytes, Charset.defaultCharset()));
-		if (hadError) {
-			System.exit(Error.EX_DATAERR.getCode());
-		}
-		if (hadRuntimeError) {
-			System.exit(Error.EX_SOFTWARE.getCode());
+	private static void exitOnError(int code) {
+		if (code != 0) {
+			System.exit(code);
 		}
 	}
 
-	private static void runPrompt() throws IOException {
-		try ( InputStreamReader input = new InputStreamReader(System.in);  BufferedReader reader = new BufferedReader(input)) {
-			for (;;) {
-				System.out.print("Qanun>> ");
-				String line = reader.readLine();
-				if (line == null) {
-					break;
-				}
-				run(line + "\n");
-				hadError = false;
-			}
+	private static void buildCds(String training) throws IOException {
+		try {
+			System.exit(ClassDataSharing.build(training));
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			System.exit(Error.EX_GENERAL.getCode());
 		}
 	}
 
-	private static void run(String source) {
-
-		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
-		Parser parser = new Parser(tokens);
-		List<Stmt> statements = parser.parse();
-		// Stop if there was a syntax error.
-		if (hadError) {
+	private static void restoreImage(QanunContext context, String image) throws IOException {
+		if (image == null) {
 			return;
 		}
-		Resolver resolver = new Resolver(interpreter);
-		resolver.resolve(statements);
-		if (hadError) {
-			return;
+		String name = Paths.get(image).getFileName().toString();
+		if (!Files.isRegularFile(Paths.get(image)) || !Snapshot.restore(Paths.get(image), context.getInterpreter())) {
+			System.err.println("Error: '" + name + "' isn't a snapshot made by this version of Qanun");
+			System.exit(Error.EX_DATAERR.getCode());
 		}
-		interpreter.interpret(statements);
 	}
 
-	static List<Stmt> processModule(String path, Token keyword, Object module) {
-		StringBuilder source = new StringBuilder();
+	// runs the prelude and writes the globals it leaves behind
+	private static void snapshot(QanunContext context, String path, String output) throws IOException {
+		exitOnError(context.runFile(path));
 		try {
-			path += ".qan";
-			File file = Paths.get(path).toFile();
-			Qanun.fileName = file.getAbsolutePath();
-			if (!file.exists()) {
-				file = Paths.get(path.replace(".qan", ".qanun")).toFile();
-				if (!file.exists()) {
-					throw new RuntimeError(keyword, "Module doesn't exisit or file name doesn't end with '.qan' or '.qanun' extenstion.");
-				}
-			}
-			BufferedReader br = new BufferedReader(new FileReader(file));
-			String currentLine;
-			while ((currentLine = br.readLine()) != null) {
-				source.append(currentLine).append("\n");
-			}
-			Scanner scanner = new Scanner(source.toString());
-			List<Token> tokens = scanner.scanTokens();
-			Parser parser = new Parser(tokens);
-			List<Stmt> statements = parser.parse();
-			if (hadError) {
-				System.exit(Error.EX_DATAERR.code);
-			}
-			Resolver resolver = new Resolver(interpreter);
-			resolver.resolve(statements);
-			if (hadError) {
-				System.exit(Error.EX_DATAERR.code);
-			}
-			return statements;
-		} catch (IOException e) {
-			throw new RuntimeError(keyword, "Couldn't import module '" + module + "'.");
+			Snapshot.write(context.getInterpreter(), Paths.get(output));
+		} catch (RuntimeError error) {
+			context.runtimeError(error);
+			System.exit(Error.EX_SOFTWARE.getCode());
 		}
 	}
 
-	static void error(int line, String message) {
-		report(line, "", message);
-	}
-
-	static void error(Token token, String message) {
-		if (token.getType() == TokenType.EOF) {
-			report(token.getLine(), " at end", message);
-		} else {
-			report(token.getLine(), " at '" + token.getLexeme() + "'", message);
+	private static void bundle(QanunContext context, String path, String output) throws IOException {
+		context.fileName = Paths.get(path).getFileName().toString();
+		if (!Bundle.build(context, Paths.get(path), Paths.get(output))) {
+			System.exit(Error.EX_DATAERR.getCode());
 		}
 	}
 
-	static void runtimeError(RuntimeError error) {
-		String infile = isInRepl ? "" : ("File => '" + Qanun.fileName + "'\n");
-		System.err.println(infile + "[line " + error.token.getLine() + "] " + error.getMessage());
-		hadRuntimeError = true;
-	}
-
-	private static void report(int line, String where, String message) {
-		String infile = isInRepl ? "" : ("File => '" + Qanun.fileName + "'\n");
-		System.err.println(infile + "[line " + line + "] Error" + where + ": " + message);
-		hadError = true;
+	private static void runPrompt(QanunContext context) throws IOException {
+		BufferedReader reader = context.getReader();
+		for (;;) {
+			System.out.print("Qanun>> ");
+			String line = reader.readLine();
+			if (line == null) {
+				break;
+			}
+			try {
+				context.run(line + "\n");
+			} catch (ExitJump exit) {
+				System.exit(exit.getCode());
+			}
+		}
 	}
 }
@@ -0,0 +1,70 @@
+package com.mina.qanun;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A value threads can read and update atomically, numbers can be added to
+ * it without a lock.
+ *
+ * @author mina
+ */
+final class QanunAtomic extends QanunNativeObject {
+
+	private static final NativeFunction.Table METHODS = NativeFunction.methods(QanunAtomic.class);
+
+	private final AtomicReference<Object> value;
+
+	QanunAtomic(Object initial) {
+		super("atomic", METHODS);
+		value = new AtomicReference<>(initial);
+	}
+
+	@QanunNative("get")
+	Object get() {
+		return value.get();
+	}
+
+	@QanunNative("set")
+	void set(Object update) {
+		value.set(update);
+	}
+
+	@QanunNative("getAndSet")
+	Object getAndSet(Object update) {
+		return value.getAndSet(update);
+	}
+
+	// numbers are compared by value, not by their box
+	@QanunNative("compareAndSet")
+	boolean compareAndSet(Object expected, Object update) {
+		for (;;) {
+			Object current = value.get();
+			if (current == null ? expected != null : !current.equals(expected)) {
+				return false;
+			}
+			if (value.compareAndSet(current, update)) {
+				return true;
+			}
+		}
+	}
+
+	// returns the sum
+	@QanunNative("add")
+	Object add(Object delta) {
+		if (!QanunNumber.isNumber(delta)) {
+			throw error("add", "Argument 1 of 'add' must be a number.");
+		}
+		for (;;) {
+			Object current = value.get();
+			if (!QanunNumber.isNumber(current)) {
+				throw error("add", "Only an atomic number can be added to.");
+			}
+			Object sum = current instanceof Long && delta instanceof Long
+					? QanunNumber.add((Long) current, (Long) delta)
+					: QanunNumber.valueOf(QanunNumber.toDouble(current) + QanunNumber.toDouble(delta));
+			if (value.compareAndSet(current, sum)) {
+				return sum;
+			}
+		}
+	}
+}
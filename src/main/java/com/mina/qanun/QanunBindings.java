@@ -0,0 +1,20 @@
+package com.mina.qanun;
+
+import javax.script.SimpleBindings;
+
+/**
+ * The bindings of a Qanun engine. The map is used as the global variables of
+ * the scripts the engine runs as is, so numbers are turned into the Long or
+ * Double Qanun computes with when they are put. The engine converts the
+ * numbers of other bindings once, before the first script runs against them.
+ *
+ * @author mina
+ */
+public final class QanunBindings extends SimpleBindings {
+
+	// putAll goes through put
+	@Override
+	public Object put(String name, Object value) {
+		return super.put(name, QanunNumber.fromJava(value));
+	}
+}
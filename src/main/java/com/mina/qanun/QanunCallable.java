@@ -1,5 +1,6 @@
 package com.mina.qanun;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -8,8 +9,34 @@ import java.util.List;
  */
 public interface QanunCallable {
 
+	Object[] NO_ARGUMENTS = new Object[0];
+
 	public int arity();
 
 	Object call(Interpreter interpreter, List<Object> arguments);
 
+	// the fixed arity and array forms let the interpreter call without
+	// building an argument list, callables override the ones they can serve
+	// directly and the rest fall back to the list form. None of them checks
+	// the number of arguments, callers compare it with arity() first
+	default Object call(Interpreter interpreter, Object[] arguments) {
+		return call(interpreter, Arrays.asList(arguments));
+	}
+
+	default Object call0(Interpreter interpreter) {
+		return call(interpreter, NO_ARGUMENTS);
+	}
+
+	default Object call1(Interpreter interpreter, Object argument) {
+		return call(interpreter, new Object[]{argument});
+	}
+
+	default Object call2(Interpreter interpreter, Object first, Object second) {
+		return call(interpreter, new Object[]{first, second});
+	}
+
+	default Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+		return call(interpreter, new Object[]{first, second, third});
+	}
+
 }
@@ -26,8 +26,9 @@ public class QanunClass extends QanunInstance implements QanunCallable {
 	}
 
 	QanunFunction findMethod(QanunInstance qanunInstance, String name) {
-		if (this.methods.containsKey(name)) {
-			return this.methods.get(name).bind(qanunInstance);
+		QanunFunction method = this.methods.get(name);
+		if (method != null) {
+			return method.bind(qanunInstance);
 		}
 		if (this.superClass != null) {
 			return this.superClass.findMethod(qanunInstance, name);
@@ -35,6 +36,10 @@ public class QanunClass extends QanunInstance implements QanunCallable {
 		return null;
 	}
 
+	Map<String, QanunFunction> getMethods() {
+		return methods;
+	}
+
 	@Override
 	public Object call(Interpreter interpreter, List<Object> arguments) {
 		QanunInstance qanunInstance = new QanunInstance(this);
@@ -45,6 +50,16 @@ public class QanunClass extends QanunInstance implements QanunCallable {
 		return qanunInstance;
 	}
 
+	@Override
+	public Object call(Interpreter interpreter, Object[] arguments) {
+		QanunInstance qanunInstance = new QanunInstance(this);
+		QanunFunction initializer = methods.get("init");
+		if (initializer != null) {
+			initializer.bind(qanunInstance).call(interpreter, arguments);
+		}
+		return qanunInstance;
+	}
+
 	@Override
 	public int arity() {
 		QanunFunction initializer = methods.get("init");
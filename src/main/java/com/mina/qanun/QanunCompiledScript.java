@@ -0,0 +1,33 @@
+package com.mina.qanun;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+/**
+ * A program the engine compiled, its statements and distances are reused
+ * every time it's evaluated.
+ *
+ * @author mina
+ */
+final class QanunCompiledScript extends CompiledScript {
+
+	private final QanunScriptEngine engine;
+	private final QanunScript script;
+
+	QanunCompiledScript(QanunScriptEngine engine, QanunScript script) {
+		this.engine = engine;
+		this.script = script;
+	}
+
+	@Override
+	public Object eval(ScriptContext context) throws ScriptException {
+		return engine.run(script, context);
+	}
+
+	@Override
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+}
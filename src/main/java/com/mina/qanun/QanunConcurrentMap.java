@@ -0,0 +1,81 @@
+package com.mina.qanun;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A map threads can read and change at the same time. A key is never mapped
+ * to nil, putting nil removes it.
+ *
+ * @author mina
+ */
+final class QanunConcurrentMap extends QanunNativeObject {
+
+	private static final NativeFunction.Table METHODS = NativeFunction.methods(QanunConcurrentMap.class);
+
+	private final ConcurrentHashMap<Object, Object> map = new ConcurrentHashMap<>();
+
+	QanunConcurrentMap() {
+		super("concurrent map", METHODS);
+	}
+
+	@QanunNative("get")
+	Object get(Object key) {
+		return map.get(key(key));
+	}
+
+	// returns the value the key had
+	@QanunNative("put")
+	Object put(Object key, Object value) {
+		return value == null ? map.remove(key(key)) : map.put(key(key), value);
+	}
+
+	@QanunNative("putIfAbsent")
+	Object putIfAbsent(Object key, Object value) {
+		return value == null ? map.get(key(key)) : map.putIfAbsent(key(key), value);
+	}
+
+	@QanunNative("remove")
+	Object remove(Object key) {
+		return map.remove(key(key));
+	}
+
+	@QanunNative("containsKey")
+	boolean containsKey(Object key) {
+		return map.containsKey(key(key));
+	}
+
+	// calls the function with the current value or nil and maps the key to
+	// what it returns, atomically. the function shouldn't use the map
+	@QanunNative("update")
+	Object update(Interpreter interpreter, Object key, Object function) {
+		if (!(function instanceof QanunCallable) || ((QanunCallable) function).arity() != 1) {
+			throw error("update", "Argument 2 of 'update' must be a function with one parameter.");
+		}
+		QanunCallable callable = (QanunCallable) function;
+		return map.compute(key(key), (k, value) -> callable.call1(interpreter, value));
+	}
+
+	@QanunNative("size")
+	long size() {
+		return map.size();
+	}
+
+	@QanunNative("keys")
+	List<Object> keys() {
+		return new ArrayList<>(map.keySet());
+	}
+
+	@QanunNative("values")
+	List<Object> values() {
+		return new ArrayList<>(map.values());
+	}
+
+	private static Object key(Object key) {
+		if (key == null) {
+			throw error("key", "A concurrent map can't have a nil key.");
+		}
+		return key;
+	}
+}
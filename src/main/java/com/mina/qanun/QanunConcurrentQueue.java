@@ -0,0 +1,67 @@
+package com.mina.qanun;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A first in first out queue between threads, optionally bounded. put and
+ * take wait for room or for an element, offer and poll don't.
+ *
+ * @author mina
+ */
+final class QanunConcurrentQueue extends QanunNativeObject {
+
+	private static final NativeFunction.Table METHODS = NativeFunction.methods(QanunConcurrentQueue.class);
+	// queues can't hold null
+	private static final Object NIL = new Object();
+
+	private final BlockingQueue<Object> queue;
+
+	QanunConcurrentQueue(int capacity) {
+		super("concurrent queue", METHODS);
+		queue = new LinkedBlockingQueue<>(capacity);
+	}
+
+	@QanunNative("offer")
+	boolean offer(Object value) {
+		return queue.offer(value == null ? NIL : value);
+	}
+
+	@QanunNative("put")
+	void put(Object value) {
+		try {
+			queue.put(value == null ? NIL : value);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw error("put", "Interrupted while waiting for room in the queue.");
+		}
+	}
+
+	// nil when the queue is empty
+	@QanunNative("poll")
+	Object poll() {
+		Object value = queue.poll();
+		return value == NIL ? null : value;
+	}
+
+	@QanunNative("take")
+	Object take() {
+		try {
+			Object value = queue.take();
+			return value == NIL ? null : value;
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw error("take", "Interrupted while waiting for an element.");
+		}
+	}
+
+	@QanunNative("size")
+	long size() {
+		return queue.size();
+	}
+
+	@QanunNative("isEmpty")
+	boolean isEmpty() {
+		return queue.isEmpty();
+	}
+}
@@ -0,0 +1,288 @@
+package com.mina.qanun;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of one run: its interpreter, the directory relative paths are
+ * resolved against, the streams it reads from and prints to and whether it
+ * has reported errors. Contexts share nothing, so any number of them can run
+ * scripts on different threads of one process at the same time.
+ *
+ * @author mina
+ */
+public final class QanunContext {
+
+	// errors on threads of the parallel front-end are only counted here, a
+	// module with errors is processed again when it's imported so they are
+	// reported in order
+	private static final ThreadLocal<int[]> detachedErrors = new ThreadLocal<>();
+
+	private final Interpreter interpreter;
+	private final Path directory;
+	private Reader in;
+	private PrintStream out;
+	private PrintStream err;
+	private BufferedReader reader;
+	boolean hadError = false;
+	boolean hadRuntimeError = false;
+	boolean isInRepl;
+	String fileName;
+	// --startup-stats reports how long it took to get to the first statement
+	boolean startupStats;
+	// set in the context of an isolate, it's how it talks to its spawner
+	Isolate isolate;
+
+	public QanunContext() {
+		this(Paths.get(""), System.in, System.out, System.err);
+	}
+
+	public QanunContext(Path directory, InputStream in, PrintStream out, PrintStream err) {
+		this(directory, new InputStreamReader(in), out, err, Collections.emptyMap(), new HashMap<>());
+	}
+
+	// a run of a compiled program, the distances are the program's and the
+	// global variables are kept in the given map
+	QanunContext(Path directory, Reader in, PrintStream out, PrintStream err,
+			Map<Expr, Integer> locals, Map<String, Object> variables) {
+		this.directory = directory;
+		this.in = in;
+		this.out = out;
+		this.err = err;
+		this.interpreter = new Interpreter(this, locals, variables);
+	}
+
+	Interpreter getInterpreter() {
+		return interpreter;
+	}
+
+	PrintStream getOut() {
+		return out;
+	}
+
+	PrintStream getErr() {
+		return err;
+	}
+
+	// an embedder can give every evaluation other streams
+	void redirect(Reader in, PrintStream out, PrintStream err) {
+		if (in != this.in) {
+			this.in = in;
+			reader = null;
+		}
+		this.out = out;
+		this.err = err;
+	}
+
+	// a context for an isolate, it shares nothing with this one but its
+	// directory and streams
+	QanunContext isolate(Isolate isolate, Map<Expr, Integer> locals) {
+		QanunContext context = new QanunContext(directory, in, out, err, locals, new HashMap<>());
+		context.isolate = isolate;
+		return context;
+	}
+
+	// makes a pooled context ready for the next run
+	void reset() {
+		interpreter.reset();
+		hadError = false;
+		hadRuntimeError = false;
+		fileName = null;
+	}
+
+	// one reader for the whole run, input a read buffered isn't lost
+	BufferedReader getReader() {
+		if (reader == null) {
+			reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		}
+		return reader;
+	}
+
+	Path resolve(String path) {
+		return directory.resolve(path);
+	}
+
+	// returns the exit code of the run
+	int runFile(String path) throws IOException {
+		String name = Paths.get(path).getFileName().toString();
+		fileName = name;
+		boolean isDotQanFile = name.matches("([a-zA-z1-9]+\\.)+(qanun|qan|qanb)$");
+		if (!isDotQanFile) {
+			err.println("Error: Qanun file should end with .qan or .qanun file extension");
+			return Qanun.Error.EX_GENERAL.getCode();
+		}
+		try {
+			List<Stmt> statements;
+			if (name.endsWith(Bundle.EXTENSION)) {
+				statements = Bundle.load(resolve(path), interpreter);
+				if (statements == null) {
+					err.println("Error: '" + name + "' isn't a bundle made by this version of Qanun");
+					return Qanun.Error.EX_DATAERR.getCode();
+				}
+			} else {
+				byte[] bytes = Files.readAllBytes(resolve(path));
+				statements = load(resolve(path), bytes, false, interpreter.getLocals());
+				if (statements != null) {
+					interpreter.prepareModules(statements);
+				}
+			}
+			if (statements != null) {
+				reportStartup("startup");
+				interpreter.interpret(statements);
+				reportStartup("total");
+			}
+		} catch (ExitJump exit) {
+			return exit.getCode();
+		}
+		if (hadError) {
+			return Qanun.Error.EX_DATAERR.getCode();
+		}
+		if (hadRuntimeError) {
+			return Qanun.Error.EX_SOFTWARE.getCode();
+		}
+		return 0;
+	}
+
+	// runs one line of the REPL
+	void run(String source) {
+		List<Stmt> statements = parse(source, false, interpreter.getLocals());
+		if (statements != null) {
+			interpreter.interpret(statements);
+		}
+		hadError = false;
+	}
+
+	// startup is measured from the start of the JVM, the classes include the
+	// ones of the JDK
+	private void reportStartup(String phase) {
+		if (startupStats) {
+			long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+			int classes = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+			err.println("[" + phase + "] " + uptime + " ms, " + classes + " classes loaded");
+		}
+	}
+
+	// scans, parses and resolves a program, returns null on errors
+	List<Stmt> parse(String source, boolean isModule, Map<Expr, Integer> locals) {
+		Scanner scanner = new Scanner(source, this);
+		List<Token> tokens = scanner.scanTokens();
+		Parser parser = new Parser(tokens, this);
+		List<Stmt> statements = parser.parse();
+		// Stop if there was a syntax error.
+		if (failed()) {
+			return null;
+		}
+		Resolver resolver = new Resolver(locals, this);
+		if (isModule) {
+			resolver.resolveModule(statements);
+		} else {
+			resolver.resolve(statements);
+		}
+		if (failed()) {
+			return null;
+		}
+		return statements;
+	}
+
+	// like parse but reuses the program cached for the same source if any
+	List<Stmt> load(Path path, byte[] bytes, boolean isModule, Map<Expr, Integer> locals) {
+		AstCache cache = AstCache.forSource(path, bytes, isModule);
+		List<Stmt> statements = cache == null ? null : cache.load(locals);
+		if (statements != null) {
+			return statements;
+		}
+		statements = parse(new String(bytes, Charset.defaultCharset()), isModule, locals);
+		if (statements != null && cache != null) {
+			cache.store(statements, locals);
+		}
+		return statements;
+	}
+
+	// loads a module off the main thread without reporting anything, returns
+	// null if it has errors
+	List<Stmt> loadDetached(File file, Map<Expr, Integer> locals) throws IOException {
+		detachedErrors.set(new int[1]);
+		try {
+			return load(file.toPath(), Files.readAllBytes(file.toPath()), true, locals);
+		} finally {
+			detachedErrors.remove();
+		}
+	}
+
+	private boolean failed() {
+		int[] errors = detachedErrors.get();
+		return errors == null ? hadError : errors[0] > 0;
+	}
+
+	// returns the canonical file of a module so each module has one identity
+	File findModule(String path, Token keyword) {
+		File file = resolve(path + ".qan").toFile();
+		if (!file.exists()) {
+			file = resolve(path + ".qanun").toFile();
+			if (!file.exists()) {
+				throw new RuntimeError(keyword, "Module doesn't exisit or file name doesn't end with '.qan' or '.qanun' extenstion.");
+			}
+		}
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			throw new RuntimeError(keyword, "Couldn't import module '" + path + "'.");
+		}
+	}
+
+	List<Stmt> processModule(File file, Token keyword, Object module, Map<Expr, Integer> locals) {
+		try {
+			fileName = file.getAbsolutePath();
+			List<Stmt> statements = load(file.toPath(), Files.readAllBytes(file.toPath()), true, locals);
+			if (statements == null) {
+				throw new ExitJump(Qanun.Error.EX_DATAERR.getCode());
+			}
+			return statements;
+		} catch (IOException e) {
+			throw new RuntimeError(keyword, "Couldn't import module '" + module + "'.");
+		}
+	}
+
+	void error(int line, String message) {
+		report(line, "", message);
+	}
+
+	void error(Token token, String message) {
+		if (token.getType() == TokenType.EOF) {
+			report(token.getLine(), " at end", message);
+		} else {
+			report(token.getLine(), " at '" + token.getLexeme() + "'", message);
+		}
+	}
+
+	void runtimeError(RuntimeError error) {
+		String infile = isInRepl || fileName == null ? "" : ("File => '" + fileName + "'\n");
+		err.println(infile + "[line " + error.token.getLine() + "] " + error.getMessage());
+		hadRuntimeError = true;
+	}
+
+	private void report(int line, String where, String message) {
+		int[] errors = detachedErrors.get();
+		if (errors != null) {
+			errors[0]++;
+			return;
+		}
+		String infile = isInRepl || fileName == null ? "" : ("File => '" + fileName + "'\n");
+		err.println(infile + "[line " + line + "] Error" + where + ": " + message);
+		hadError = true;
+	}
+}
@@ -24,9 +24,21 @@ public class QanunFunction implements QanunCallable {
 		return name;
 	}
 
+	Expr.AnonymousFun getDeclaration() {
+		return declaration;
+	}
+
+	Environment getClosure() {
+		return closure;
+	}
+
+	boolean isInitializer() {
+		return isInitializer;
+	}
+
 	QanunFunction bind(QanunInstance instance) {
 		Environment environment = new Environment(this.closure);
-		environment.define(new Token(TokenType.THIS, "this", null, -1), instance);
+		environment.define(Token.THIS, instance);
 		return new QanunFunction(this.name, this.declaration, environment, this.isInitializer);
 	}
 
@@ -39,18 +51,60 @@ public class QanunFunction implements QanunCallable {
 	public Object call(Interpreter interpreter, List<Object> arguments) {
 		Environment environment = new Environment(this.closure);
 		for (int i = 0; i < this.declaration.params.size(); i++) {
-			environment.define(this.declaration.params.get(i), arguments.get(i));
+			environment.defineParameter(this.declaration.params.get(i), arguments.get(i));
+		}
+		return invoke(interpreter, environment);
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, Object[] arguments) {
+		Environment environment = new Environment(this.closure);
+		for (int i = 0; i < arguments.length; i++) {
+			environment.defineParameter(this.declaration.params.get(i), arguments[i]);
 		}
+		return invoke(interpreter, environment);
+	}
+
+	@Override
+	public Object call0(Interpreter interpreter) {
+		return invoke(interpreter, new Environment(this.closure));
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object argument) {
+		Environment environment = new Environment(this.closure);
+		environment.defineParameter(this.declaration.params.get(0), argument);
+		return invoke(interpreter, environment);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object first, Object second) {
+		Environment environment = new Environment(this.closure);
+		environment.defineParameter(this.declaration.params.get(0), first);
+		environment.defineParameter(this.declaration.params.get(1), second);
+		return invoke(interpreter, environment);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+		Environment environment = new Environment(this.closure);
+		environment.defineParameter(this.declaration.params.get(0), first);
+		environment.defineParameter(this.declaration.params.get(1), second);
+		environment.defineParameter(this.declaration.params.get(2), third);
+		return invoke(interpreter, environment);
+	}
+
+	private Object invoke(Interpreter interpreter, Environment environment) {
 		try {
 			interpreter.executeBlock(this.declaration.body, environment);
 		} catch (Return returnValue) {
 			if (this.isInitializer) {
-				return closure.getAt(0, new Token(TokenType.THIS, "this", null, -1));
+				return closure.getAt(0, Token.THIS);
 			}
 			return returnValue.getValue();
 		}
 		if (this.isInitializer) {
-			return closure.getAt(0, new Token(TokenType.THIS, "this", null, -1));
+			return closure.getAt(0, Token.THIS);
 		}
 		return null;
 	}
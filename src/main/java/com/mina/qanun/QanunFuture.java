@@ -0,0 +1,171 @@
+package com.mina.qanun;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A value that is still being computed, made by std:Future. Functions run
+ * and callbacks are called on the threads tasks run on, each with an
+ * interpreter of its own that shares the globals of the script like a task
+ * does. The interpreter is made when the callback is registered, on the
+ * thread of the script that registers it.
+ *
+ * @author mina
+ */
+final class QanunFuture extends QanunNativeObject {
+
+	private static final NativeFunction.Table METHODS = NativeFunction.methods(QanunFuture.class);
+	// fails futures whose time is up, CompletableFuture.orTimeout needs Java 9.
+	// the timeout of a future that completes in time is dropped from the queue
+	static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, task -> {
+		Thread thread = new Thread(task, "qanun-future-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		TIMER.setRemoveOnCancelPolicy(true);
+	}
+
+	private final CompletableFuture<Object> future;
+
+	QanunFuture(CompletableFuture<Object> future) {
+		super("future", METHODS);
+		this.future = future;
+	}
+
+	static QanunFuture run(Interpreter interpreter, Object function) {
+		QanunCallable callable = callable("run", function, 0);
+		Interpreter worker = new Interpreter(interpreter);
+		return new QanunFuture(CompletableFuture.supplyAsync(() -> callable.call0(worker), TaskThreads.EXECUTOR));
+	}
+
+	// values that aren't futures count as completed ones
+	static QanunFuture all(List<?> values) {
+		List<CompletableFuture<Object>> futures = futures(values);
+		CompletableFuture<Void> done = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+		return new QanunFuture(done.thenApply(ignored -> {
+			List<Object> results = new ArrayList<>(futures.size());
+			for (CompletableFuture<Object> future : futures) {
+				results.add(future.join());
+			}
+			return results;
+		}));
+	}
+
+	// the value of the first one to complete
+	static QanunFuture any(List<?> values) {
+		if (values.isEmpty()) {
+			throw error("any", "Future.any needs at least one future.");
+		}
+		return new QanunFuture(CompletableFuture.anyOf(futures(values).toArray(new CompletableFuture<?>[0])));
+	}
+
+	// calls the function with the value once it's there, a function that
+	// returns a future is waited for too
+	@QanunNative("then")
+	QanunFuture then(Interpreter interpreter, Object function) {
+		QanunCallable callable = callable("then", function, 1);
+		Interpreter worker = new Interpreter(interpreter);
+		return new QanunFuture(future.thenComposeAsync(value -> {
+			Object result = callable.call1(worker, value);
+			return result instanceof QanunFuture ? ((QanunFuture) result).future : CompletableFuture.completedFuture(result);
+		}, TaskThreads.EXECUTOR));
+	}
+
+	// calls the function with the error message when this one fails, the
+	// future it returns has what the function returns instead
+	@QanunNative("recover")
+	QanunFuture recover(Interpreter interpreter, Object function) {
+		QanunCallable callable = callable("recover", function, 1);
+		Interpreter worker = new Interpreter(interpreter);
+		return new QanunFuture(future.handleAsync((value, failure) -> failure == null
+				? value : callable.call1(worker, message(failure)), TaskThreads.EXECUTOR));
+	}
+
+	// a future that fails if this one takes longer than that many seconds,
+	// this one is cancelled then
+	@QanunNative("timeout")
+	QanunFuture timeout(double seconds) {
+		CompletableFuture<Object> limited = new CompletableFuture<>();
+		ScheduledFuture<?> timer = TIMER.schedule(() -> {
+			if (limited.completeExceptionally(new TimeoutException("Future timed out after " + seconds + " seconds."))) {
+				future.cancel(true);
+			}
+		}, (long) (seconds * 1000), TimeUnit.MILLISECONDS);
+		future.whenComplete((value, failure) -> {
+			timer.cancel(false);
+			if (failure == null) {
+				limited.complete(value);
+			} else {
+				limited.completeExceptionally(failure);
+			}
+		});
+		return new QanunFuture(limited);
+	}
+
+	// waits for the value, a failed future fails the caller too
+	@QanunNative("await")
+	Object await() {
+		try {
+			return future.get();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw error("await", "Interrupted while waiting for a future.");
+		} catch (CancellationException exception) {
+			throw error("await", "Future was cancelled.");
+		} catch (ExecutionException exception) {
+			Throwable cause = exception.getCause();
+			if (cause instanceof RuntimeError) {
+				throw new RuntimeError(((RuntimeError) cause).token, cause.getMessage());
+			}
+			throw error("await", message(cause));
+		}
+	}
+
+	// callbacks that haven't started never will, one that is running
+	// finishes but its result is dropped
+	@QanunNative("cancel")
+	boolean cancel() {
+		return future.cancel(true);
+	}
+
+	@QanunNative("isDone")
+	boolean isDone() {
+		return future.isDone();
+	}
+
+	private static List<CompletableFuture<Object>> futures(List<?> values) {
+		List<CompletableFuture<Object>> futures = new ArrayList<>(values.size());
+		for (Object value : values) {
+			futures.add(value instanceof QanunFuture ? ((QanunFuture) value).future : CompletableFuture.completedFuture(value));
+		}
+		return futures;
+	}
+
+	private static String message(Throwable failure) {
+		while (failure instanceof CompletionException && failure.getCause() != null) {
+			failure = failure.getCause();
+		}
+		if (failure instanceof CancellationException) {
+			return "Future was cancelled.";
+		}
+		return failure.getMessage() != null ? failure.getMessage() : failure.toString();
+	}
+
+	private static QanunCallable callable(String method, Object function, int arity) {
+		if (!(function instanceof QanunCallable) || ((QanunCallable) function).arity() != arity) {
+			throw error(method, "Argument 1 of '" + method + "' must be a function with "
+					+ (arity == 0 ? "no parameters." : "one parameter."));
+		}
+		return (QanunCallable) function;
+	}
+}
@@ -22,18 +22,28 @@ class QanunInstance {
 	}
 
 	Object get(Token name) {
-		if (fields.containsKey(name.getLexeme())) {
-			return fields.get(name.getLexeme());
+		Object field = fields.get(name.getLexeme());
+		if (field != null || fields.containsKey(name.getLexeme())) {
+			return field;
 		}
 
+		// findMethod returns the method already bound to this instance
 		QanunFunction method = qanunClass.findMethod(this, name.getLexeme());
 		if (method != null) {
-			return method.bind(this);
+			return method;
 		}
 
 		throw new RuntimeError(name, "Undefined property '" + name.getLexeme() + "'.");
 	}
 
+	QanunClass getQanunClass() {
+		return qanunClass;
+	}
+
+	Map<String, Object> getFields() {
+		return fields;
+	}
+
 	@Override
 	public String toString() {
 		return qanunClass.name + " instance";
@@ -14,36 +14,33 @@ import java.util.Map;
 public class QanunModule {
 
 	private final Token name;
-	private final Map<String, Stmt.Class> classes;
-	private final Map<String, Stmt.Function> functions;
-	private final Map<String, Stmt.Var> variables;
-	private final Map<String, Stmt.Val> constants;
-	private final Environment environment;
-
-	public QanunModule(Token name, Map<String, Stmt.Class> classes, Map<String, Stmt.Function> functions,
-			Map<String, Stmt.Var> variables, Map<String, Stmt.Val> constants,Environment environment) {
+	private final Map<String, ModuleEnvironment.Export> exports;
+	private final ModuleEnvironment environment;
+
+	QanunModule(Token name, ModuleEnvironment environment) {
 		this.name = name;
-		this.classes = classes;
-		this.functions = functions;
-		this.variables = variables;
-		this.constants = constants;
+		this.exports = environment.getExports();
 		this.environment = environment;
 	}
 
+	Token getName() {
+		return name;
+	}
+
+	ModuleEnvironment getEnvironment() {
+		return environment;
+	}
+
+	// one probe into the export table, the slot holds the current value
 	Object get(Token name) {
-		if (classes.containsKey(name.getLexeme())) {
-			return environment.get(name);
-		}
-		if (functions.containsKey(name.getLexeme())) {
-			return environment.get(name);
-		}
-		if (variables.containsKey(name.getLexeme())) {
-			return environment.get(name);
+		ModuleEnvironment.Export export = exports.get(name.getLexeme());
+		if (export == null) {
+			return null;
 		}
-		if (constants.containsKey(name.getLexeme())) {
-			return environment.get(name);
+		if (!export.defined) {
+			environment.materialize(name.getLexeme());
 		}
-		return null;
+		return export.value;
 	}
 
 	@Override
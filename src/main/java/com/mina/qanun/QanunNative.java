@@ -0,0 +1,22 @@
+package com.mina.qanun;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static method as a native function, see {@link NativeFunction}.
+ *
+ * @author mina
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface QanunNative {
+
+	// the name scripts call the native by
+	String value();
+
+	// the built in module the native belongs to, empty for globals
+	String module() default "";
+}
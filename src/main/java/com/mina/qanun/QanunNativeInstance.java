@@ -6,7 +6,6 @@
 package com.mina.qanun;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  *
@@ -15,18 +14,17 @@ import java.util.Map;
 public class QanunNativeInstance implements QanunCallable {
 
 	private final String name;
-	private final Map<String, QanunCallable> methods;
+	private final Token token;
+	private final NativeFunction.Table methods;
 
-	public QanunNativeInstance(String name, Map<String, QanunCallable> methods) {
+	QanunNativeInstance(String name, NativeFunction.Table methods) {
 		this.name = name;
+		this.token = new Token(null, name, null, -1);
 		this.methods = methods;
 	}
 
 	QanunCallable findMethod(String name) {
-		if (methods.containsKey(name)) {
-			return methods.get(name);
-		}
-		return null;
+		return methods.get(name);
 	}
 
 	@Override
@@ -47,8 +45,22 @@ public class QanunNativeInstance implements QanunCallable {
 		return this;
 	}
 
+	@Override
+	public Object call(Interpreter interpreter, Object[] arguments) {
+		QanunCallable initializer = methods.get("init");
+		if (initializer != null) {
+			initializer.call(interpreter, arguments);
+		}
+		return this;
+	}
+
 	public String getName() {
 		return name;
 	}
+
+	// the token the instance is bound under when its module is imported
+	Token getToken() {
+		return token;
+	}
 	
 }
@@ -0,0 +1,45 @@
+package com.mina.qanun;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Java object scripts call methods on, like the objects of std:Concurrent.
+ * Its methods are the {@link QanunNative} instance methods of its class, each
+ * is bound to the object the first time it's used so later calls go straight
+ * through the bound method handle. Objects can be shared between threads.
+ *
+ * @author mina
+ */
+abstract class QanunNativeObject {
+
+	private final String name;
+	private final NativeFunction.Table methods;
+	private final Map<String, QanunCallable> bound = new ConcurrentHashMap<>();
+
+	QanunNativeObject(String name, NativeFunction.Table methods) {
+		this.name = name;
+		this.methods = methods;
+	}
+
+	QanunCallable get(Token name) {
+		QanunCallable method = bound.get(name.getLexeme());
+		if (method != null) {
+			return method;
+		}
+		QanunCallable unbound = methods.get(name.getLexeme());
+		if (unbound == null) {
+			throw new RuntimeError(name, "Undefined property '" + name.getLexeme() + "'.");
+		}
+		return bound.computeIfAbsent(name.getLexeme(), methodName -> ((NativeFunction) unbound).bindTo(this));
+	}
+
+	static RuntimeError error(String method, String message) {
+		return new RuntimeError(new Token(TokenType.IDENTIFIER, method, null, 0), message);
+	}
+
+	@Override
+	public String toString() {
+		return "<" + name + ">";
+	}
+}
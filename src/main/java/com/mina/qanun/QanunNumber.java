@@ -0,0 +1,109 @@
+package com.mina.qanun;
+
+/**
+ *
+ * @author mina
+ */
+final class QanunNumber {
+
+	// integral values are represented as Long as long as a double could hold
+	// them exactly, anything else is a Double. Every number produced by the
+	// interpreter goes through valueOf so a value has exactly one
+	// representation and equals() keeps working across both types. A long
+	// has no negative zero, -0 stays a Double
+	static final long MAX_EXACT = 1L << 53;
+
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1024;
+	private static final Long[] CACHE = new Long[CACHE_HIGH - CACHE_LOW + 1];
+
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = (long) (i + CACHE_LOW);
+		}
+	}
+
+	private QanunNumber() {
+	}
+
+	static Object valueOf(long value) {
+		if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+			return CACHE[(int) value - CACHE_LOW];
+		}
+		if (value >= -MAX_EXACT && value <= MAX_EXACT) {
+			return value;
+		}
+		return (double) value;
+	}
+
+	static Object valueOf(double value) {
+		if (value >= -MAX_EXACT && value <= MAX_EXACT) {
+			long integral = (long) value;
+			if (integral == value && (integral != 0 || Double.doubleToRawLongBits(value) == 0L)) {
+				return valueOf(integral);
+			}
+		}
+		return value;
+	}
+
+	// numbers from Java code get the one representation valueOf gives them
+	static Object fromJava(Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return valueOf(((Number) value).longValue());
+		}
+		if (value instanceof Double || value instanceof Float) {
+			return valueOf(((Number) value).doubleValue());
+		}
+		return value;
+	}
+
+	static boolean isNumber(Object value) {
+		return value instanceof Long || value instanceof Double;
+	}
+
+	static double toDouble(Object value) {
+		if (value instanceof Long) {
+			return (long) value;
+		}
+		return (double) value;
+	}
+
+	// both operands are within MAX_EXACT so sums and differences can't
+	// overflow a long, valueOf moves results past MAX_EXACT to Double
+	static Object add(long left, long right) {
+		return valueOf(left + right);
+	}
+
+	static Object subtract(long left, long right) {
+		return valueOf(left - right);
+	}
+
+	static Object multiply(long left, long right) {
+		long high = Math.abs(left) | Math.abs(right);
+		if (high >>> 31 == 0) {
+			long product = left * right;
+			return product == 0 && (left ^ right) < 0 ? -0.0 : valueOf(product);
+		}
+		return valueOf((double) left * (double) right);
+	}
+
+	static Object divide(long left, long right) {
+		if (left % right == 0) {
+			long quotient = left / right;
+			return quotient == 0 && (left ^ right) < 0 ? -0.0 : valueOf(quotient);
+		}
+		return (double) left / (double) right;
+	}
+
+	static Object remainder(long left, long right) {
+		if (right == 0) {
+			return Double.NaN;
+		}
+		long remainder = left % right;
+		return remainder == 0 && left < 0 ? -0.0 : valueOf(remainder);
+	}
+
+	static Object negate(long value) {
+		return value == 0 ? -0.0 : valueOf(-value);
+	}
+}
@@ -0,0 +1,44 @@
+package com.mina.qanun;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Any number of readers or one writer. The lock is held while a function
+ * runs, so a script can't forget to release it.
+ *
+ * @author mina
+ */
+final class QanunReadWriteLock extends QanunNativeObject {
+
+	private static final NativeFunction.Table METHODS = NativeFunction.methods(QanunReadWriteLock.class);
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	QanunReadWriteLock() {
+		super("read write lock", METHODS);
+	}
+
+	// returns what the function returns
+	@QanunNative("read")
+	Object read(Interpreter interpreter, Object function) {
+		return holding(interpreter, lock.readLock(), "read", function);
+	}
+
+	@QanunNative("write")
+	Object write(Interpreter interpreter, Object function) {
+		return holding(interpreter, lock.writeLock(), "write", function);
+	}
+
+	private static Object holding(Interpreter interpreter, Lock lock, String method, Object function) {
+		if (!(function instanceof QanunCallable) || ((QanunCallable) function).arity() != 0) {
+			throw error(method, "Argument 1 of '" + method + "' must be a function without parameters.");
+		}
+		lock.lock();
+		try {
+			return ((QanunCallable) function).call0(interpreter);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
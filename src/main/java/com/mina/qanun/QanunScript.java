@@ -0,0 +1,55 @@
+package com.mina.qanun;
+
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program compiled by {@link Qanun#compile(String)}. Its statements and the
+ * distances the Resolver computed for them never change after compiling, so
+ * one script can be run any number of times and from many threads at once.
+ * Every run gets a context and globals of its own.
+ *
+ * @author mina
+ */
+public final class QanunScript {
+
+	private final List<Stmt> statements;
+	private final Map<Expr, Integer> locals;
+
+	QanunScript(List<Stmt> statements, Map<Expr, Integer> locals) {
+		this.statements = Collections.unmodifiableList(statements);
+		this.locals = Collections.unmodifiableMap(locals);
+	}
+
+	public Object run() {
+		return run(new HashMap<>());
+	}
+
+	/**
+	 * Runs the program with the bindings as its global variables, what the
+	 * script assigns to them ends up in the map. Numbers have to be Long or
+	 * Double, the types Qanun computes with.
+	 *
+	 * @return the value of the last statement if it's an expression
+	 * @throws RuntimeError if the script fails
+	 * @throws CompileError if a module it imports doesn't compile
+	 */
+	public Object run(Map<String, Object> bindings) {
+		return execute(new QanunContext(Paths.get(""), new InputStreamReader(System.in), System.out, System.err,
+				locals, bindings));
+	}
+
+	// runs in a context that may have run other programs before
+	Object execute(QanunContext context) {
+		try {
+			context.getInterpreter().include(locals);
+			return context.getInterpreter().executeAll(statements);
+		} catch (ExitJump exit) {
+			throw new CompileError("An imported module has errors, they were printed to the error stream");
+		}
+	}
+}
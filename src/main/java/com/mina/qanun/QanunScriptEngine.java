@@ -0,0 +1,322 @@
+package com.mina.qanun;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+
+/**
+ * Qanun behind javax.script. The ENGINE_SCOPE bindings are the global
+ * variables of the scripts as they are, nothing is copied in or out, and
+ * everything evaluated against the same bindings shares one interpreter so
+ * functions and classes one script declares can be called by the next or
+ * through {@link Invocable}. A global declared again replaces the one
+ * before, so a script can be evaluated any number of times. GLOBAL_SCOPE
+ * isn't consulted.
+ *
+ * An engine isn't thread safe, threads that run scripts at the same time
+ * should each have an engine of their own.
+ *
+ * @author mina
+ */
+public final class QanunScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+
+	private final ScriptEngineFactory factory;
+	// the context of the bindings scripts last ran against
+	private QanunContext session;
+	private Bindings sessionBindings;
+
+	QanunScriptEngine(ScriptEngineFactory factory) {
+		this.factory = factory;
+		setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+	}
+
+	@Override
+	public Object eval(String script, ScriptContext context) throws ScriptException {
+		return compile(script).eval(context);
+	}
+
+	@Override
+	public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+		return compile(reader).eval(context);
+	}
+
+	@Override
+	public Bindings createBindings() {
+		return new QanunBindings();
+	}
+
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return factory;
+	}
+
+	@Override
+	public CompiledScript compile(String script) throws ScriptException {
+		try {
+			return new QanunCompiledScript(this, Qanun.compile(script));
+		} catch (CompileError error) {
+			throw new ScriptException(error.getMessage());
+		}
+	}
+
+	@Override
+	public CompiledScript compile(Reader script) throws ScriptException {
+		StringBuilder source = new StringBuilder();
+		char[] buffer = new char[8192];
+		try {
+			for (int read = script.read(buffer); read != -1; read = script.read(buffer)) {
+				source.append(buffer, 0, read);
+			}
+		} catch (IOException exception) {
+			throw new ScriptException(exception);
+		}
+		return compile(source.toString());
+	}
+
+	Object run(QanunScript script, ScriptContext context) throws ScriptException {
+		QanunContext qanun = session(context);
+		Object name = context.getAttribute(ScriptEngine.FILENAME);
+		qanun.fileName = name == null ? null : name.toString();
+		PrintStream out = printStream(context.getWriter());
+		PrintStream err = printStream(context.getErrorWriter());
+		qanun.redirect(context.getReader(), out, err);
+		try {
+			return script.execute(qanun);
+		} catch (RuntimeError error) {
+			throw scriptException(error, qanun.fileName);
+		} catch (CompileError error) {
+			throw new ScriptException(error.getMessage());
+		} finally {
+			out.flush();
+			err.flush();
+		}
+	}
+
+	@Override
+	public Object invokeFunction(String name, Object... arguments) throws ScriptException, NoSuchMethodException {
+		QanunContext qanun = session(context);
+		Object function = global(qanun, name);
+		if (!(function instanceof QanunCallable)) {
+			throw new NoSuchMethodException(name);
+		}
+		return call(qanun, (QanunCallable) function, arguments);
+	}
+
+	@Override
+	public Object invokeMethod(Object object, String name, Object... arguments) throws ScriptException, NoSuchMethodException {
+		if (!(object instanceof QanunInstance)) {
+			throw new IllegalArgumentException("Only instances of Qanun classes have methods");
+		}
+		Object method = method((QanunInstance) object, name);
+		if (!(method instanceof QanunCallable)) {
+			throw new NoSuchMethodException(name);
+		}
+		return call(session(context), (QanunCallable) method, arguments);
+	}
+
+	// null when a method of the interface isn't a global function
+	@Override
+	public <T> T getInterface(Class<T> type) {
+		QanunContext qanun = session(context);
+		for (Method method : type.getMethods()) {
+			if (Modifier.isAbstract(method.getModifiers()) && !(global(qanun, method.getName()) instanceof QanunCallable)) {
+				return null;
+			}
+		}
+		return proxy(type, null);
+	}
+
+	@Override
+	public <T> T getInterface(Object object, Class<T> type) {
+		if (!(object instanceof QanunInstance)) {
+			throw new IllegalArgumentException("Only instances of Qanun classes can implement interfaces");
+		}
+		for (Method method : type.getMethods()) {
+			if (Modifier.isAbstract(method.getModifiers()) && !(method((QanunInstance) object, method.getName()) instanceof QanunCallable)) {
+				return null;
+			}
+		}
+		return proxy(type, object);
+	}
+
+	private <T> T proxy(Class<T> type, Object object) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, arguments) -> {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+					case "equals":
+						return proxy == arguments[0];
+					case "hashCode":
+						return System.identityHashCode(proxy);
+					default:
+						return type.getName() + " implemented by Qanun";
+				}
+			}
+			Object[] values = arguments == null ? QanunCallable.NO_ARGUMENTS : arguments;
+			Object result = object == null ? invokeFunction(method.getName(), values) : invokeMethod(object, method.getName(), values);
+			return toJava(result, method.getReturnType());
+		}));
+	}
+
+	// a new set of bindings starts a new interpreter
+	private QanunContext session(ScriptContext context) {
+		Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+		if (session == null || bindings != sessionBindings) {
+			if (!(bindings instanceof QanunBindings)) {
+				normalize(bindings);
+			}
+			session = new QanunContext(Paths.get(""), context.getReader(), printStream(context.getWriter()),
+					printStream(context.getErrorWriter()), Collections.emptyMap(), bindings);
+			session.getInterpreter().globals.isRedeclarable = true;
+			sessionBindings = bindings;
+		}
+		return session;
+	}
+
+	// any Bindings can be passed in, the Java numbers in them are turned into
+	// the Long or Double Qanun computes with when a session starts. numbers
+	// put into them after that have to be Long or Double already
+	private static void normalize(Bindings bindings) {
+		Map<String, Object> numbers = null;
+		for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+			Object value = entry.getValue();
+			if (value instanceof Number && !value.equals(QanunNumber.fromJava(value))) {
+				if (numbers == null) {
+					numbers = new HashMap<>();
+				}
+				numbers.put(entry.getKey(), QanunNumber.fromJava(value));
+			}
+		}
+		if (numbers != null) {
+			bindings.putAll(numbers);
+		}
+	}
+
+	private Object call(QanunContext qanun, QanunCallable callable, Object[] arguments) throws ScriptException {
+		if (callable.arity() >= 0 && callable.arity() != arguments.length) {
+			throw new ScriptException("Expected " + callable.arity() + " arguments but got " + arguments.length + ".");
+		}
+		Object[] values = new Object[arguments.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = QanunNumber.fromJava(arguments[i]);
+		}
+		try {
+			return callable.call(qanun.getInterpreter(), values);
+		} catch (RuntimeError error) {
+			throw scriptException(error, qanun.fileName);
+		} finally {
+			qanun.getOut().flush();
+			qanun.getErr().flush();
+		}
+	}
+
+	private static Object global(QanunContext qanun, String name) {
+		try {
+			return qanun.getInterpreter().globals.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+		} catch (RuntimeError error) {
+			return null;
+		}
+	}
+
+	private static Object method(QanunInstance instance, String name) {
+		try {
+			return instance.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+		} catch (RuntimeError error) {
+			return null;
+		}
+	}
+
+	// Qanun numbers are Long or Double, interface methods may want others
+	private static Object toJava(Object value, Class<?> type) {
+		if (!(value instanceof Number)) {
+			return value;
+		}
+		Number number = (Number) value;
+		if (type == int.class || type == Integer.class) {
+			return number.intValue();
+		} else if (type == long.class || type == Long.class) {
+			return number.longValue();
+		} else if (type == double.class || type == Double.class) {
+			return number.doubleValue();
+		} else if (type == float.class || type == Float.class) {
+			return number.floatValue();
+		} else if (type == short.class || type == Short.class) {
+			return number.shortValue();
+		} else if (type == byte.class || type == Byte.class) {
+			return number.byteValue();
+		}
+		return value;
+	}
+
+	private static ScriptException scriptException(RuntimeError error, String fileName) {
+		ScriptException exception = new ScriptException(error.getMessage(), fileName, error.getLine());
+		exception.initCause(error);
+		return exception;
+	}
+
+	private static PrintStream printStream(Writer writer) {
+		try {
+			return new PrintStream(new WriterStream(writer), true, StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException exception) {
+			throw new AssertionError(exception);
+		}
+	}
+
+	// the interpreter prints to streams, the script context has writers. the
+	// print stream hands over whole strings, so the bytes buffered between
+	// flushes never end inside a character
+	private static final class WriterStream extends OutputStream {
+
+		private final Writer writer;
+		private byte[] buffer = new byte[256];
+		private int count;
+
+		WriterStream(Writer writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void write(int b) {
+			if (count == buffer.length) {
+				buffer = Arrays.copyOf(buffer, count * 2);
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			if (count + length > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(count + length, count * 2));
+			}
+			System.arraycopy(bytes, offset, buffer, count, length);
+			count += length;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writer.write(new String(buffer, 0, count, StandardCharsets.UTF_8));
+			count = 0;
+			writer.flush();
+		}
+	}
+}
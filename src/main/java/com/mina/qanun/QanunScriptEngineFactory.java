@@ -0,0 +1,100 @@
+package com.mina.qanun;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+/**
+ * Lets javax.script find Qanun by the name 'qanun', the extensions '.qan' and
+ * '.qanun' or its mime type. It's registered in
+ * META-INF/services/javax.script.ScriptEngineFactory.
+ *
+ * @author mina
+ */
+public final class QanunScriptEngineFactory implements ScriptEngineFactory {
+
+	private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("qanun", "Qanun"));
+	private static final List<String> EXTENSIONS = Collections.unmodifiableList(Arrays.asList("qan", "qanun"));
+	private static final List<String> MIME_TYPES = Collections.singletonList("application/x-qanun");
+
+	@Override
+	public String getEngineName() {
+		return "Qanun";
+	}
+
+	@Override
+	public String getEngineVersion() {
+		return Qanun.VERSION;
+	}
+
+	@Override
+	public List<String> getExtensions() {
+		return EXTENSIONS;
+	}
+
+	@Override
+	public List<String> getMimeTypes() {
+		return MIME_TYPES;
+	}
+
+	@Override
+	public List<String> getNames() {
+		return NAMES;
+	}
+
+	@Override
+	public String getLanguageName() {
+		return "Qanun";
+	}
+
+	@Override
+	public String getLanguageVersion() {
+		return Qanun.VERSION;
+	}
+
+	// THREADING is null, an engine must only be used by one thread at a time
+	@Override
+	public Object getParameter(String key) {
+		switch (key) {
+			case ScriptEngine.ENGINE:
+				return getEngineName();
+			case ScriptEngine.ENGINE_VERSION:
+				return getEngineVersion();
+			case ScriptEngine.NAME:
+				return NAMES.get(0);
+			case ScriptEngine.LANGUAGE:
+				return getLanguageName();
+			case ScriptEngine.LANGUAGE_VERSION:
+				return getLanguageVersion();
+			default:
+				return null;
+		}
+	}
+
+	@Override
+	public String getMethodCallSyntax(String object, String method, String... arguments) {
+		return object + "." + method + "(" + String.join(", ", arguments) + ")";
+	}
+
+	// strings have no escapes, text with a '"' in it can't be printed this way
+	@Override
+	public String getOutputStatement(String text) {
+		return "print(\"" + text + "\");";
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		StringBuilder program = new StringBuilder();
+		for (String statement : statements) {
+			program.append(statement).append(";\n");
+		}
+		return program.toString();
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new QanunScriptEngine(this);
+	}
+}
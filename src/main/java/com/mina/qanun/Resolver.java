@@ -1,8 +1,10 @@
 package com.mina.qanun;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 /**
@@ -11,11 +13,19 @@ import java.util.Stack;
  */
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-	private final Interpreter interpreter;
+	private final Map<Expr, Integer> locals;
+	private final QanunContext context;
 	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
 	private FunctionType currentFunction = FunctionType.NONE;
 	private ClassType currentClass = ClassType.NONE;
 	private boolean isInLoop;
+	// the scope of the innermost parallel loop or -1, its body may only
+	// assign variables declared from that scope on
+	private int parallelScope = -1;
+	// directly in the body of a parallel loop, not in a function declared there
+	private boolean isInParallel;
+	// module names known before their declaration has been resolved
+	private final Set<String> hoisted = new HashSet<>();
 
 	private enum FunctionType {
 		NONE,
@@ -31,13 +41,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	}
 
 	public Resolver(Interpreter interpreter) {
-		this.interpreter = interpreter;
+		this(interpreter.getLocals(), interpreter.getContext());
+	}
+
+	// resolves into a map of its own, the interpreter gets the distances
+	// once the program is known to be free of errors
+	Resolver(Map<Expr, Integer> locals, QanunContext context) {
+		this.locals = locals;
+		this.context = context;
 	}
 
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		resolve(expr.value);
 		resolveLocal(expr, expr.name);
+		if (parallelScope >= 0 && !isDeclaredFrom(parallelScope, expr.name)) {
+			context.error(expr.name, "A parallel loop can only assign variables declared in it or reduced by it.");
+		}
 		return null;
 	}
 
@@ -101,9 +121,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitSuperExpr(Expr.Super expr) {
 		if (currentClass == ClassType.NONE) {
-			Qanun.error(expr.keyword, "Can't use 'super' outside of a class.");
+			context.error(expr.keyword, "Can't use 'super' outside of a class.");
 		} else if (currentClass != ClassType.SUBCLASS) {
-			Qanun.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+			context.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
 		}
 		resolveLocal(expr, expr.keyword);
 		return null;
@@ -112,7 +132,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitThisExpr(Expr.This expr) {
 		if (currentClass == ClassType.NONE) {
-			Qanun.error(expr.keyword, "Can't use 'this' outside of a class.");
+			context.error(expr.keyword, "Can't use 'this' outside of a class.");
 			return null;
 		}
 		resolveLocal(expr, expr.keyword);
@@ -136,6 +156,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitUnaryExpr(Expr.Unary expr) {
 		resolve(expr.right);
+		// '++' and '--' write the variable back like an assignment does
+		boolean isStep = expr.operator.getType() == TokenType.PLUS_PLUS
+				|| expr.operator.getType() == TokenType.MINUS_MINUS;
+		if (isStep && expr.right instanceof Expr.Variable && parallelScope >= 0
+				&& !isDeclaredFrom(parallelScope, ((Expr.Variable) expr.right).name)) {
+			context.error(expr.operator, "A parallel loop can only assign variables declared in it or reduced by it.");
+		}
 		return null;
 	}
 
@@ -148,7 +175,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
 		if (!this.scopes.isEmpty() && scopes.peek().get(expr.name.getLexeme()) == Boolean.FALSE) {
-			Qanun.error(expr.name, "Can't read local variable in its own initializer.");
+			context.error(expr.name, "Can't read local variable in its own initializer.");
 		}
 		resolveLocal(expr, expr.name);
 		return null;
@@ -179,7 +206,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		define(stmt.name);
 		if (stmt.superClass != null
 				&& stmt.name.getLexeme().equals(stmt.superClass.name.getLexeme())) {
-			Qanun.error(stmt.superClass.name, "A class can't inherit from itself.");
+			context.error(stmt.superClass.name, "A class can't inherit from itself.");
 		}
 		if (stmt.superClass != null) {
 			currentClass = ClassType.SUBCLASS;
@@ -243,11 +270,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitReturnStmt(Stmt.Return stmt) {
 		if (currentFunction == FunctionType.NONE) {
-			Qanun.error(stmt.keyword, "Can't return from top-level code.");
+			context.error(stmt.keyword, "Can't return from top-level code.");
+		} else if (isInParallel) {
+			context.error(stmt.keyword, "Can't return from inside a parallel loop.");
 		}
 		if (stmt.value != null) {
 			if (currentFunction == FunctionType.INITIALIZER) {
-				Qanun.error(stmt.keyword, "Can't return a value from an initializer.");
+				context.error(stmt.keyword, "Can't return a value from an initializer.");
 			}
 			resolve(stmt.value);
 		}
@@ -321,24 +350,66 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		return null;
 	}
 
+	// the reductions are resolved to the variables outside the loop first,
+	// then declared again in the loop's scope where every piece of the loop
+	// keeps its own copies
+	@Override
+	public Void visitParallelForEachStmt(Stmt.ParallelForEach stmt) {
+		for (Expr.Variable reduction : stmt.reductions) {
+			resolve(reduction);
+		}
+		for (Expr.Variable reduction : stmt.reductions) {
+			declare(reduction.name);
+			define(reduction.name);
+		}
+		resolve(stmt.loop.init);
+		resolve(stmt.loop.iterable);
+		int enclosingParallelScope = parallelScope;
+		boolean enclosingParallel = isInParallel;
+		boolean enclosingLoop = isInLoop;
+		parallelScope = scopes.size() - 1;
+		isInParallel = true;
+		isInLoop = false;
+		resolve(stmt.loop.body);
+		parallelScope = enclosingParallelScope;
+		isInParallel = enclosingParallel;
+		isInLoop = enclosingLoop;
+		return null;
+	}
+
 	@Override
 	public Void visitBreakStmt(Stmt.Break stmt) {
-		if (!isInLoop) {
-			Qanun.error(stmt.name, "break statement is not allowed outside a loop");
+		if (!isInLoop && isInParallel) {
+			context.error(stmt.name, "break statement is not allowed in a parallel loop");
+		} else if (!isInLoop) {
+			context.error(stmt.name, "break statement is not allowed outside a loop");
 		}
 		return null;
 	}
 
 	@Override
 	public Void visitContinueStmt(Stmt.Continue stmt) {
-		if (!isInLoop) {
-			Qanun.error(stmt.name, "continue statement is not allowed outside a loop");
+		if (!isInLoop && !isInParallel) {
+			context.error(stmt.name, "continue statement is not allowed outside a loop");
 		}
 		return null;
 	}
 
 	@Override
 	public Void visitImportStmt(Stmt.Import stmt) {
+		resolve(stmt.path);
+		// file modules are bound where they are imported, 'std:' ones are globals
+		if (stmt.path instanceof Expr.Literal && ((Expr.Literal) stmt.path).value instanceof String) {
+			String path = (String) ((Expr.Literal) stmt.path).value;
+			if (!path.startsWith("std:")) {
+				Token name = new Token(TokenType.IDENTIFIER, ModuleRegistry.moduleName(path), null, stmt.keyword.getLine());
+				// importing a module twice into a scope is allowed
+				if (scopes.isEmpty() || !scopes.peek().containsKey(name.getLexeme())) {
+					declare(name);
+				}
+				define(name);
+			}
+		}
 		return null;
 	}
 
@@ -353,6 +424,32 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		}
 	}
 
+	// the top level of a module is a scope of its own so its declarations
+	// can see each other
+	void resolveModule(List<Stmt> statements) {
+		beginScope();
+		// declarations are hoisted so functions can call the ones below them
+		for (Stmt statement : statements) {
+			Token name = null;
+			if (statement instanceof Stmt.Class) {
+				name = ((Stmt.Class) statement).name;
+			} else if (statement instanceof Stmt.Function) {
+				name = ((Stmt.Function) statement).name;
+			} else if (statement instanceof Stmt.Var) {
+				name = ((Stmt.Var) statement).name;
+			} else if (statement instanceof Stmt.Val) {
+				name = ((Stmt.Val) statement).name;
+			}
+			if (name != null && !scopes.peek().containsKey(name.getLexeme())) {
+				scopes.peek().put(name.getLexeme(), true);
+				hoisted.add(name.getLexeme());
+			}
+		}
+		resolve(statements);
+		hoisted.clear();
+		endScope();
+	}
+
 	private void resolve(Stmt statement) {
 		statement.accept(this);
 	}
@@ -375,8 +472,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		}
 
 		Map<String, Boolean> scope = this.scopes.peek();
-		if (scope.containsKey(name.getLexeme())) {
-			Qanun.error(name,
+		if (scope.containsKey(name.getLexeme()) && !(scopes.size() == 1 && hoisted.remove(name.getLexeme()))) {
+			context.error(name,
 					"Already variable/constant with the same name is in this scope.");
 		}
 		scope.put(name.getLexeme(), false);
@@ -393,15 +490,26 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		int size = scopes.size() - 1;
 		for (int i = size; i >= 0; i--) {
 			if (scopes.get(i).containsKey(name.getLexeme())) {
-				interpreter.resolve(expr, scopes.size() - 1 - i);
+				locals.put(expr, scopes.size() - 1 - i);
 				return;
 			}
 		}
 	}
 
+	private boolean isDeclaredFrom(int first, Token name) {
+		for (int i = scopes.size() - 1; i >= first; i--) {
+			if (scopes.get(i).containsKey(name.getLexeme())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private void resolveFunction(Expr.AnonymousFun function, FunctionType type) {
 		FunctionType enclosingFunction = currentFunction;
+		boolean enclosingParallel = isInParallel;
 		currentFunction = type;
+		isInParallel = false;
 		beginScope();
 		for (Token param : function.params) {
 			declare(param);
@@ -410,5 +518,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		resolve(function.body);
 		endScope();
 		currentFunction = enclosingFunction;
+		isInParallel = enclosingParallel;
 	}
 }
@@ -13,4 +13,8 @@ public class RuntimeError extends RuntimeException {
 		this.token = token;
 	}
 
+	public int getLine() {
+		return token.getLine();
+	}
+
 }
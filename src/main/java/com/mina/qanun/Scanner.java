@@ -12,6 +12,7 @@ import java.util.Map;
 public class Scanner {
 
 	private final String source;
+	private final QanunContext context;
 	private final List<Token> tokens = new ArrayList<>();
 	private int start = 0;
 	private int current = 0;
@@ -46,8 +47,9 @@ public class Scanner {
 
 	}
 
-	Scanner(String source) {
+	Scanner(String source, QanunContext context) {
 		this.source = source;
+		this.context = context;
 	}
 
 	List<Token> scanTokens() {
@@ -150,7 +152,7 @@ public class Scanner {
 				} else if (isAlpha(c)) {
 					identifier();
 				} else {
-					Qanun.error(line, "Unexpected character.");
+					context.error(line, "Unexpected character.");
 				}
 				break;
 		}
@@ -174,7 +176,9 @@ public class Scanner {
 		}
 
 		// Look for a fractional part.
+		boolean isIntegral = true;
 		if (peek() == '.' && isDigit(peekNext())) {
+			isIntegral = false;
 			// Consume the "."
 			advance();
 
@@ -183,8 +187,14 @@ public class Scanner {
 			}
 		}
 
-		addToken(TokenType.NUMBER,
-				Double.parseDouble(source.substring(start, current)));
+		String text = source.substring(start, current);
+		// at most 16 digits always fits a long, valueOf turns anything past the
+		// exact integer range of a double into a Double
+		if (isIntegral && text.length() <= 16) {
+			addToken(TokenType.NUMBER, QanunNumber.valueOf(Long.parseLong(text)));
+		} else {
+			addToken(TokenType.NUMBER, QanunNumber.valueOf(Double.parseDouble(text)));
+		}
 	}
 
 	private void string() {
@@ -196,7 +206,7 @@ public class Scanner {
 		}
 
 		if (isAtEnd()) {
-			Qanun.error(line, "Unterminated string.");
+			context.error(line, "Unterminated string.");
 			return;
 		}
 
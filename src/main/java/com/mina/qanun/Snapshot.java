@@ -0,0 +1,379 @@
+package com.mina.qanun;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An image of the global scope of an interpreter that has run a prelude. The
+ * '.qani' file holds every value reachable from the globals: environments,
+ * functions with their closures, classes, instances, lists and modules, with
+ * the declarations of functions stored as resolved statements. Restoring it
+ * gives a fresh interpreter the state the prelude left behind without running
+ * the prelude again. Natives and 'std:' modules are stored by name and bound
+ * again on restore.
+ *
+ * @author mina
+ */
+final class Snapshot {
+
+	static final String EXTENSION = ".qani";
+	private static final int MAGIC = 0x51414E49;
+	private static final byte[] NO_HASH = new byte[0];
+
+	// object tags
+	private static final int ENVIRONMENT = 1;
+	private static final int MODULE_ENVIRONMENT = 2;
+	private static final int FUNCTION = 3;
+	private static final int CLASS = 4;
+	private static final int INSTANCE = 5;
+	private static final int LIST = 6;
+	private static final int MODULE = 7;
+	private static final int NATIVE_MODULE = 8;
+	private static final int NATIVE_FUNCTION = 9;
+
+	private final Interpreter interpreter;
+	// every object of the image by id, the globals are always the first
+	private final List<Object> objects = new ArrayList<>();
+	private final Map<Object, Integer> ids = new IdentityHashMap<>();
+	// closures made by the same declaration share its statements
+	private final Map<Expr.AnonymousFun, Integer> declarations = new IdentityHashMap<>();
+
+	private Snapshot(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	// writes an image of the interpreter's globals to output, fails with a
+	// RuntimeError naming the first value that can't be stored
+	static void write(Interpreter interpreter, Path output) throws IOException {
+		Snapshot snapshot = new Snapshot(interpreter);
+		snapshot.add(interpreter.globals);
+		Files.write(output, snapshot.write());
+	}
+
+	// restores the image into the globals of a fresh interpreter, returns
+	// false if the file isn't a valid image
+	static boolean restore(Path path, Interpreter interpreter) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			AstCache.Reader reader = new AstCache.Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			if (!reader.readHeader(MAGIC, NO_HASH)) {
+				return false;
+			}
+			new Snapshot(interpreter).read(reader);
+			interpreter.getLocals().putAll(reader.getLocals());
+			return true;
+		} catch (RuntimeException exception) {
+			return false;
+		}
+	}
+
+	// numbers objects so that everything an object is created from comes
+	// before it, the contents of objects can refer to anything
+	private void add(Object value) {
+		if (value == null || value instanceof Boolean || value instanceof Long || value instanceof Double
+				|| value instanceof String || ids.containsKey(value)) {
+			return;
+		}
+		if (value instanceof Environment) {
+			Environment environment = (Environment) value;
+			if (environment instanceof ModuleEnvironment) {
+				((ModuleEnvironment) environment).materializeAll();
+			}
+			add(environment.getEnclosing());
+			if (register(value)) {
+				environment.getVariables().values().forEach(this::add);
+				environment.getConstants().values().forEach(this::add);
+			}
+		} else if (value instanceof QanunFunction) {
+			add(((QanunFunction) value).getClosure());
+			register(value);
+		} else if (value instanceof QanunClass) {
+			QanunClass qanunClass = (QanunClass) value;
+			add(qanunClass.getQanunClass());
+			add(qanunClass.superClass);
+			if (register(value)) {
+				qanunClass.getMethods().values().forEach(this::add);
+				qanunClass.getFields().values().forEach(this::add);
+			}
+		} else if (value instanceof QanunInstance) {
+			QanunInstance instance = (QanunInstance) value;
+			add(instance.getQanunClass());
+			if (register(value)) {
+				instance.getFields().values().forEach(this::add);
+			}
+		} else if (value instanceof List) {
+			register(value);
+			((List<?>) value).forEach(this::add);
+		} else if (value instanceof QanunModule) {
+			QanunModule module = (QanunModule) value;
+			add(module.getEnvironment());
+			register(value);
+		} else if (value instanceof QanunNativeInstance || value instanceof NativeFunction) {
+			register(value);
+		} else {
+			throw new RuntimeError(new Token(TokenType.IDENTIFIER, interpreter.stringify(value), null, 0),
+					"Error: Can't put '" + interpreter.stringify(value) + "' in a snapshot.");
+		}
+	}
+
+	// returns false if the object already has an id, adding what it's
+	// created from can reach it again
+	private boolean register(Object value) {
+		if (ids.containsKey(value)) {
+			return false;
+		}
+		ids.put(value, objects.size());
+		objects.add(value);
+		return true;
+	}
+
+	private byte[] write() throws IOException {
+		AstCache.Writer writer = new AstCache.Writer(interpreter.getLocals());
+		writer.writeInt(objects.size());
+		// the globals exist already when the image is restored
+		for (int id = 1; id < objects.size(); id++) {
+			writeShell(writer, objects.get(id));
+		}
+		for (Object value : objects) {
+			writeContents(writer, value);
+		}
+		return writer.write(MAGIC, NO_HASH);
+	}
+
+	// what is needed to create the object
+	private void writeShell(AstCache.Writer writer, Object value) {
+		if (value instanceof Environment) {
+			writer.writeInt(value instanceof ModuleEnvironment ? MODULE_ENVIRONMENT : ENVIRONMENT);
+			writeReference(writer, ((Environment) value).getEnclosing());
+		} else if (value instanceof QanunFunction) {
+			QanunFunction function = (QanunFunction) value;
+			writer.writeInt(FUNCTION);
+			writer.writeLiteral(function.getName());
+			Integer declaration = declarations.get(function.getDeclaration());
+			if (declaration == null) {
+				writer.writeInt(declarations.size());
+				declarations.put(function.getDeclaration(), declarations.size());
+				writer.writeExpression(function.getDeclaration());
+			} else {
+				writer.writeInt(declaration);
+			}
+			writer.writeInt(ids.get(function.getClosure()));
+			writer.writeInt(function.isInitializer() ? 1 : 0);
+		} else if (value instanceof QanunClass) {
+			QanunClass qanunClass = (QanunClass) value;
+			writer.writeInt(CLASS);
+			writer.writeString(qanunClass.name);
+			writeReference(writer, qanunClass.getQanunClass());
+			writeReference(writer, qanunClass.superClass);
+		} else if (value instanceof QanunInstance) {
+			writer.writeInt(INSTANCE);
+			writer.writeInt(ids.get(((QanunInstance) value).getQanunClass()));
+		} else if (value instanceof List) {
+			writer.writeInt(LIST);
+		} else if (value instanceof QanunModule) {
+			QanunModule module = (QanunModule) value;
+			writer.writeInt(MODULE);
+			writer.writeString(module.getName().getLexeme());
+			writer.writeInt(ids.get(module.getEnvironment()));
+		} else if (value instanceof QanunNativeInstance) {
+			writer.writeInt(NATIVE_MODULE);
+			writer.writeString(((QanunNativeInstance) value).getName());
+		} else {
+			writer.writeInt(NATIVE_FUNCTION);
+			writer.writeString(nativeModule((NativeFunction) value));
+			writer.writeString(((NativeFunction) value).getName());
+		}
+	}
+
+	// what the object holds, in the order readContents expects it
+	private void writeContents(AstCache.Writer writer, Object value) {
+		if (value instanceof Environment) {
+			Environment environment = (Environment) value;
+			writeValues(writer, environment.getVariables());
+			writeValues(writer, environment.getConstants());
+			if (environment instanceof GlobalEnvironment) {
+				List<String> modules = ((GlobalEnvironment) environment).importedModules();
+				writer.writeInt(modules.size());
+				modules.forEach(writer::writeString);
+			} else if (environment instanceof ModuleEnvironment) {
+				writer.writeInt(((ModuleEnvironment) environment).getExports().size());
+				((ModuleEnvironment) environment).getExports().keySet().forEach(writer::writeString);
+			}
+		} else if (value instanceof QanunClass) {
+			QanunClass qanunClass = (QanunClass) value;
+			writer.writeInt(qanunClass.getMethods().size());
+			qanunClass.getMethods().forEach((name, method) -> {
+				writer.writeString(name);
+				writer.writeInt(ids.get(method));
+			});
+			writeValues(writer, qanunClass.getFields());
+		} else if (value instanceof QanunInstance) {
+			writeValues(writer, ((QanunInstance) value).getFields());
+		} else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			writer.writeInt(list.size());
+			list.forEach(element -> writeValue(writer, element));
+		}
+	}
+
+	private void writeValues(AstCache.Writer writer, Map<String, Object> values) {
+		writer.writeInt(values.size());
+		values.forEach((name, value) -> {
+			writer.writeString(name);
+			writeValue(writer, value);
+		});
+	}
+
+	// 0 and a literal, or the id of an object plus one
+	private void writeValue(AstCache.Writer writer, Object value) {
+		Integer id = ids.get(value);
+		if (id == null) {
+			writer.writeInt(0);
+			writer.writeLiteral(value);
+		} else {
+			writer.writeInt(id + 1);
+		}
+	}
+
+	private void writeReference(AstCache.Writer writer, Object value) {
+		writer.writeInt(value == null ? 0 : ids.get(value) + 1);
+	}
+
+	// the 'std:' module a native belongs to, empty for global natives
+	private String nativeModule(NativeFunction function) {
+		if (StandardLibrary.find(function.getName()) == function) {
+			return "";
+		}
+		for (String module : BuiltInModules.NAMES) {
+			if (BuiltInModules.get(module).findMethod(function.getName()) == function) {
+				return module;
+			}
+		}
+		throw new RuntimeError(new Token(TokenType.IDENTIFIER, function.getName(), null, 0),
+				"Error: Can't put '" + function + "' in a snapshot.");
+	}
+
+	private void read(AstCache.Reader reader) {
+		int count = reader.readInt();
+		objects.add(interpreter.globals);
+		List<Expr.AnonymousFun> functions = new ArrayList<>();
+		for (int id = 1; id < count; id++) {
+			objects.add(readShell(reader, functions));
+		}
+		for (Object value : objects) {
+			readContents(reader, value);
+		}
+	}
+
+	private Object readShell(AstCache.Reader reader, List<Expr.AnonymousFun> functions) {
+		int tag = reader.readInt();
+		switch (tag) {
+			case ENVIRONMENT:
+				return new Environment((Environment) readReference(reader));
+			case MODULE_ENVIRONMENT:
+				return new ModuleEnvironment((Environment) readReference(reader), interpreter);
+			case FUNCTION: {
+				String name = (String) reader.readLiteral();
+				int index = reader.readInt();
+				if (index == functions.size()) {
+					functions.add((Expr.AnonymousFun) reader.readExpression());
+				}
+				Environment closure = (Environment) objects.get(reader.readInt());
+				return new QanunFunction(name, functions.get(index), closure, reader.readInt() != 0);
+			}
+			case CLASS: {
+				String name = reader.readString();
+				QanunClass metaClass = (QanunClass) readReference(reader);
+				QanunClass superClass = (QanunClass) readReference(reader);
+				return new QanunClass(metaClass, name, superClass, new HashMap<>());
+			}
+			case INSTANCE:
+				return new QanunInstance((QanunClass) objects.get(reader.readInt()));
+			case LIST:
+				return new ArrayList<>();
+			case MODULE: {
+				Token name = new Token(TokenType.IDENTIFIER, reader.readString(), null, 0);
+				return new QanunModule(name, (ModuleEnvironment) objects.get(reader.readInt()));
+			}
+			case NATIVE_MODULE:
+				return BuiltInModules.get(reader.readString());
+			case NATIVE_FUNCTION: {
+				String module = reader.readString();
+				String name = reader.readString();
+				QanunCallable function = module.isEmpty() ? StandardLibrary.find(name)
+						: BuiltInModules.get(module).findMethod(name);
+				if (function == null) {
+					throw new IllegalStateException("Unknown native " + name);
+				}
+				return function;
+			}
+			default:
+				throw new IllegalStateException("Unknown object tag " + tag);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readContents(AstCache.Reader reader, Object value) {
+		if (value instanceof Environment) {
+			Environment environment = (Environment) value;
+			readValues(reader, environment.getVariables());
+			readValues(reader, environment.getConstants());
+			if (environment instanceof GlobalEnvironment) {
+				int count = reader.readInt();
+				for (int i = 0; i < count; i++) {
+					((GlobalEnvironment) environment).getImports().add(reader.readString());
+				}
+			} else if (environment instanceof ModuleEnvironment) {
+				ModuleEnvironment module = (ModuleEnvironment) environment;
+				int count = reader.readInt();
+				for (int i = 0; i < count; i++) {
+					String name = reader.readString();
+					module.export(new Token(TokenType.IDENTIFIER, name, null, 0));
+					Map<String, Object> values = module.getVariables().containsKey(name)
+							? module.getVariables() : module.getConstants();
+					module.changed(name, values.get(name));
+				}
+			}
+		} else if (value instanceof QanunClass) {
+			QanunClass qanunClass = (QanunClass) value;
+			int count = reader.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = reader.readString();
+				qanunClass.getMethods().put(name, (QanunFunction) objects.get(reader.readInt()));
+			}
+			readValues(reader, qanunClass.getFields());
+		} else if (value instanceof QanunInstance) {
+			readValues(reader, ((QanunInstance) value).getFields());
+		} else if (value instanceof List) {
+			int count = reader.readInt();
+			for (int i = 0; i < count; i++) {
+				((List<Object>) value).add(readValue(reader));
+			}
+		}
+	}
+
+	private void readValues(AstCache.Reader reader, Map<String, Object> values) {
+		int count = reader.readInt();
+		for (int i = 0; i < count; i++) {
+			String name = reader.readString();
+			values.put(name, readValue(reader));
+		}
+	}
+
+	private Object readValue(AstCache.Reader reader) {
+		int id = reader.readInt();
+		return id == 0 ? reader.readLiteral() : objects.get(id - 1);
+	}
+
+	private Object readReference(AstCache.Reader reader) {
+		int id = reader.readInt();
+		return id == 0 ? null : objects.get(id - 1);
+	}
+}
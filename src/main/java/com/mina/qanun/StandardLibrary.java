@@ -1,12 +1,9 @@
 package com.mina.qanun;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  *
@@ -14,329 +11,159 @@ import java.util.List;
  */
 public class StandardLibrary {
 
-	static void defineGlobals(Environment globals) {
-
-		nativePrint(globals, new Token(TokenType.IDENTIFIER, "print", null, 0));
-		nativePrintln(globals, new Token(TokenType.IDENTIFIER, "println", null, 0));
-		nativePrintf(globals, new Token(TokenType.IDENTIFIER, "printf", null, 0));
-		nativeClock(globals, new Token(TokenType.IDENTIFIER, "clock", null, 0));
-		nativeStr(globals, new Token(TokenType.IDENTIFIER, "str", null, 0));
-		nativeSplit(globals, new Token(TokenType.IDENTIFIER, "split", null, 0));
-		nativeLen(globals, new Token(TokenType.IDENTIFIER, "len", null, 0));
-		nativeCopyList(globals, new Token(TokenType.IDENTIFIER, "copyList", null, 0));
-		nativeNum(globals, new Token(TokenType.IDENTIFIER, "num", null, 0));
-		nativeRead(globals, new Token(TokenType.IDENTIFIER, "read", null, 0));
-		nativeReadLine(globals, new Token(TokenType.IDENTIFIER, "readln", null, 0));
-		nativeClear(globals, new Token(TokenType.IDENTIFIER, "clear", null, 0));
-		nativeType(globals, new Token(TokenType.IDENTIFIER, "type", null, 0));
+	private static final NativeFunction.Table NATIVES = NativeFunction.table(StandardLibrary.class, "");
 
+	// returns the global native with that name or null, globals look natives
+	// up the first time a script uses them
+	static QanunCallable find(String name) {
+		return NATIVES.get(name);
 	}
 
-	private static void nativePrint(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				System.out.print(interpreter.stringify(args.get(0)));
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'print'>";
-			}
-		});
+	static Set<String> names() {
+		return NATIVES.names();
 	}
 
-	private static void nativePrintln(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				System.out.println(interpreter.stringify(args.get(0)));
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'println'>";
-			}
-		});
+	@QanunNative("print")
+	static void print(Interpreter interpreter, Object value) {
+		interpreter.getContext().getOut().print(interpreter.stringify(value));
 	}
 
-	private static void nativePrintf(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 2;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				try {
-					if (!(arguments.get(0) instanceof String)) {
-						throw new RuntimeError(token, "First argument must be string");
-					}
-					if (!(arguments.get(1) instanceof List)) {
-						throw new RuntimeError(token, "Second argument must be a list");
-					}
-					String str = (String) arguments.get(0);
-					List list = (List) arguments.get(1);
-					System.out.printf(str, list.toArray());
-				} catch (Exception exp) {
-					throw new RuntimeError(token, "Illegal or wrong format argument exception");
-				}
-				return null;
-			}
-		});
+	@QanunNative("println")
+	static void println(Interpreter interpreter, Object value) {
+		interpreter.getContext().getOut().println(interpreter.stringify(value));
 	}
 
-	private static void nativeClock(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				return (double) System.currentTimeMillis() / 1000.0;
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'clock'>";
-			}
-		});
+	@QanunNative("printf")
+	static void printf(Interpreter interpreter, String format, List<?> arguments) {
+		Object[] values = arguments.toArray();
+		// numbers are formatted as doubles whatever their representation
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] instanceof Long) {
+				values[i] = QanunNumber.toDouble(values[i]);
+			}
+		}
+		try {
+			interpreter.getContext().getOut().printf(format, values);
+		} catch (Exception exp) {
+			throw error("printf", "Illegal or wrong format argument exception");
+		}
 	}
 
-	private static void nativeStr(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				return interpreter.stringify(args.get(0));
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'str'>";
-			}
-		});
+	// runs a function without parameters on a task of its own
+	@QanunNative("spawn")
+	static Task spawn(Interpreter interpreter, Object function) {
+		return Task.spawn(interpreter, new Token(TokenType.IDENTIFIER, "spawn", null, 0), function);
 	}
 
-	private static void nativeLen(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				Object arg = args.get(0);
-				try {
-					if (arg instanceof String) {
-						return (double) interpreter.stringify(arg).length();
-					} else if (arg != null && args instanceof List) {
-						return (double) ((List) arg).size();
-					}
-				} catch (ClassCastException castException) {
-					throw new RuntimeError(new Token(TokenType.IDENTIFIER, interpreter.stringify(args.get(0)), interpreter.stringify(args.get(0)), 0), "Only strings or lists can have length");
-				}
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'len'>";
-			}
-		});
+	@QanunNative("parallelMap")
+	static List<Object> parallelMap(Interpreter interpreter, List<?> list, Object function) {
+		return ParallelLists.map(interpreter, "parallelMap", list, function);
 	}
 
-	private static void nativeCopyList(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				if (arguments.get(0) instanceof List) {
-					List original = (List) (arguments.get(0));
-					return new ArrayList(original);
-				} else {
-					throw new RuntimeError(token, "Expect argument to be List");
-				}
-			}
-		});
+	@QanunNative("parallelFilter")
+	static List<Object> parallelFilter(Interpreter interpreter, List<?> list, Object function) {
+		return ParallelLists.filter(interpreter, "parallelFilter", list, function);
 	}
 
-	private static void nativeNum(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				try {
-					return Double.parseDouble(interpreter.stringify(args.get(0)));
-				} catch (NumberFormatException numberFormatException) {
-					throw new RuntimeError(new Token(TokenType.IDENTIFIER, interpreter.stringify(args.get(0)), interpreter.stringify(args.get(0)), 0), "Only strings with numeric digits can be casted to numbers");
-				}
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'num'>";
-			}
-		});
+	@QanunNative("parallelReduce")
+	static Object parallelReduce(Interpreter interpreter, List<?> list, Object function, Object initial) {
+		return ParallelLists.reduce(interpreter, "parallelReduce", list, function, initial);
 	}
 
-	private static void nativeRead(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				try {
-					BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-					return Character.toString((char) reader.read());
-				} catch (IOException exception) {
-				}
-				return null;
-			}
-
-			@Override
-			public String toString() {
-				return "<native function 'read'>";
-			}
-		});
-
+	@QanunNative("parallelForEach")
+	static void parallelForEach(Interpreter interpreter, List<?> list, Object function) {
+		ParallelLists.forEach(interpreter, "parallelForEach", list, function);
 	}
 
-	private static void nativeReadLine(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
-
-			@Override
-			public Object call(Interpreter interpreter, List<Object> args) {
-				try {
-					BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-					return reader.readLine();
-				} catch (IOException exception) {
+	@QanunNative("clock")
+	static double clock() {
+		return System.currentTimeMillis() / 1000.0;
+	}
 
-				}
-				return null;
-			}
+	@QanunNative("str")
+	static String str(Interpreter interpreter, Object value) {
+		return interpreter.stringify(value);
+	}
 
-			@Override
-			public String toString() {
-				return "<native function 'readln'>";
-			}
-		});
+	@QanunNative("len")
+	static Object len(Interpreter interpreter, Object value) {
+		if (value instanceof String) {
+			return QanunNumber.valueOf(((String) value).length());
+		} else if (value instanceof List) {
+			return QanunNumber.valueOf(((List) value).size());
+		} else if (value == null) {
+			return null;
+		}
+		throw new RuntimeError(new Token(TokenType.IDENTIFIER, interpreter.stringify(value), interpreter.stringify(value), 0), "Only strings or lists can have length");
 	}
 
-	private static void nativeClear(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 0;
-			}
+	@QanunNative("copyList")
+	static List copyList(List original) {
+		return new ArrayList(original);
+	}
 
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				System.out.print("\033[H\033[2J");
-				System.out.flush();
-				return null;
-			}
+	@QanunNative("num")
+	static Object num(Interpreter interpreter, Object value) {
+		try {
+			return QanunNumber.valueOf(Double.parseDouble(interpreter.stringify(value)));
+		} catch (NumberFormatException numberFormatException) {
+			throw new RuntimeError(new Token(TokenType.IDENTIFIER, interpreter.stringify(value), interpreter.stringify(value), 0), "Only strings with numeric digits can be casted to numbers");
+		}
+	}
 
-			@Override
-			public String toString() {
-				return "<native function 'clear'>";
-			}
-		});
+	@QanunNative("read")
+	static String read(Interpreter interpreter) {
+		try {
+			return Character.toString((char) interpreter.getContext().getReader().read());
+		} catch (IOException exception) {
+		}
+		return null;
 	}
 
-	private static void nativeType(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 1;
-			}
+	@QanunNative("readln")
+	static String readln(Interpreter interpreter) {
+		try {
+			return interpreter.getContext().getReader().readLine();
+		} catch (IOException exception) {
 
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				if (arguments.get(0) instanceof String) {
-					return "string";
-				} else if (arguments.get(0) instanceof Double) {
-					return "double";
-				} else if (arguments.get(0) instanceof Boolean) {
-					return "boolean";
-				} else if (arguments.get(0) instanceof QanunFunction) {
-					return "function";
-				} else if (arguments.get(0) instanceof QanunCallable) {
-					return "native function";
-				} else if (arguments.get(0) instanceof List) {
-					return "list";
-				} else if (arguments.get(0) == null) {
-					return "nil";
-				} else {
-					return "unknown";
-				}
-			}
+		}
+		return null;
+	}
 
-			@Override
-			public String toString() {
-				return "<native function 'type'>";
-			}
-		});
+	@QanunNative("clear")
+	static void clear(Interpreter interpreter) {
+		interpreter.getContext().getOut().print("\033[H\033[2J");
+		interpreter.getContext().getOut().flush();
 	}
 
-	private static void nativeSplit(Environment globals, Token token) {
-		globals.define(token, new QanunCallable() {
-			@Override
-			public int arity() {
-				return 2;
-			}
+	@QanunNative("type")
+	static String type(Object value) {
+		if (value instanceof String) {
+			return "string";
+		} else if (QanunNumber.isNumber(value)) {
+			return "double";
+		} else if (value instanceof Boolean) {
+			return "boolean";
+		} else if (value instanceof QanunFunction) {
+			return "function";
+		} else if (value instanceof QanunCallable) {
+			return "native function";
+		} else if (value instanceof List) {
+			return "list";
+		} else if (value == null) {
+			return "nil";
+		} else {
+			return "unknown";
+		}
+	}
 
-			@Override
-			public Object call(Interpreter interpreter, List<Object> arguments) {
-				if (arguments.get(0) instanceof String && arguments.get(1) instanceof String) {
-					String str = (String) arguments.get(0);
-					String sep = (String) arguments.get(1);
-					List res = List.of(str.split(sep));
-					return res;
-				}
-				throw new RuntimeError(token, "first and second parameters must be strings");
-			}
+	@QanunNative("split")
+	static List split(String str, String separator) {
+		return List.of(str.split(separator));
+	}
 
-			@Override
-			public String toString() {
-				return "<native function 'split'>";
-			}
-		});
+	private static RuntimeError error(String function, String message) {
+		return new RuntimeError(new Token(TokenType.IDENTIFIER, function, null, 0), message);
 	}
 
 }
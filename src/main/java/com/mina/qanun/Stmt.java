@@ -32,6 +32,8 @@ abstract class Stmt {
 
 		R visitForEachStmt(ForEach stmt);
 
+		R visitParallelForEachStmt(ParallelForEach stmt);
+
 		R visitBreakStmt(Break stmt);
 
 		R visitContinueStmt(Continue stmt);
@@ -107,8 +109,9 @@ abstract class Stmt {
 
 	static class Module extends Stmt {
 
-		Module(Token name, List<Stmt.Class> classes, List<Stmt.Function> functions, List<Stmt.Var> variables, List<Stmt.Val> constants) {
+		Module(Token name, List<Stmt.Import> imports, List<Stmt.Class> classes, List<Stmt.Function> functions, List<Stmt.Var> variables, List<Stmt.Val> constants) {
 			this.name = name;
+			this.imports = imports;
 			this.classes = classes;
 			this.functions = functions;
 			this.variables = variables;
@@ -121,6 +124,7 @@ abstract class Stmt {
 		}
 
 		final Token name;
+		final List<Stmt.Import> imports;
 		final List<Stmt.Class> classes;
 		final List<Stmt.Function> functions;
 		final List<Stmt.Var> variables;
@@ -247,6 +251,26 @@ abstract class Stmt {
 		final Stmt body;
 	}
 
+	static class ParallelForEach extends Stmt {
+
+		ParallelForEach(Token keyword, Stmt.ForEach loop, List<Expr.Variable> reductions, List<Token> operators) {
+			this.keyword = keyword;
+			this.loop = loop;
+			this.reductions = reductions;
+			this.operators = operators;
+		}
+
+		@Override
+		<R> R accept(Visitor<R> visitor) {
+			return visitor.visitParallelForEachStmt(this);
+		}
+
+		final Token keyword;
+		final Stmt.ForEach loop;
+		final List<Expr.Variable> reductions;
+		final List<Token> operators;
+	}
+
 	static class Break extends Stmt {
 
 		Break(Token name) {
@@ -0,0 +1,159 @@
+package com.mina.qanun;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A function running concurrently with the script that spawned it. Unlike an
+ * isolate a task shares the globals and objects of its spawner, it only has
+ * an interpreter of its own to keep track of the environment it executes
+ * in. Tasks that change the same variables or lists have to take turns.
+ *
+ * @author mina
+ */
+final class Task {
+
+	private final String name;
+	private final Future<Object> future;
+
+	private Task(String name, Future<Object> future) {
+		this.name = name;
+		this.future = future;
+	}
+
+	// the tasks spawned while a Task.scope runs, the first one that fails
+	// cancels the others
+	static final class Scope {
+
+		private final List<Task> tasks = new ArrayList<>();
+		private RuntimeError failure;
+
+		synchronized void add(Task task) {
+			tasks.add(task);
+			if (failure != null) {
+				task.cancel();
+			}
+		}
+
+		synchronized void fail(RuntimeError error) {
+			if (failure == null) {
+				failure = error;
+			}
+			for (Task task : tasks) {
+				task.cancel();
+			}
+		}
+
+		synchronized List<Task> tasks() {
+			return new ArrayList<>(tasks);
+		}
+
+		synchronized RuntimeError failure() {
+			return failure;
+		}
+	}
+
+	static Task spawn(Interpreter interpreter, Token token, Object function) {
+		if (!(function instanceof QanunCallable) || ((QanunCallable) function).arity() != 0) {
+			throw new RuntimeError(token, "Only functions without parameters can be spawned.");
+		}
+		QanunCallable callable = (QanunCallable) function;
+		Interpreter child = new Interpreter(interpreter);
+		Scope scope = interpreter.scope;
+		Task task = new Task(interpreter.stringify(function), TaskThreads.EXECUTOR.submit(() -> {
+			try {
+				return callable.call0(child);
+			} catch (RuntimeError error) {
+				if (scope != null) {
+					scope.fail(error);
+				}
+				throw error;
+			}
+		}));
+		if (scope != null) {
+			scope.add(task);
+		}
+		return task;
+	}
+
+	// runs the function and waits for every task it spawned before
+	// returning, tasks spawned by those tasks included. the first task that
+	// fails cancels the rest and its error is the error of the scope
+	static Object scope(Interpreter interpreter, Token token, Object function) {
+		if (!(function instanceof QanunCallable) || ((QanunCallable) function).arity() != 0) {
+			throw new RuntimeError(token, "A scope has to be a function without parameters.");
+		}
+		Scope enclosing = interpreter.scope;
+		Scope scope = new Scope();
+		interpreter.scope = scope;
+		Object value;
+		try {
+			value = ((QanunCallable) function).call0(interpreter);
+		} catch (RuntimeError error) {
+			scope.fail(error);
+			throw error;
+		} finally {
+			interpreter.scope = enclosing;
+		}
+		// a task adds the ones it spawns before it finishes
+		int joined = 0;
+		for (List<Task> tasks = scope.tasks(); joined < tasks.size(); tasks = scope.tasks()) {
+			for (; joined < tasks.size(); joined++) {
+				tasks.get(joined).join(token);
+			}
+		}
+		if (scope.failure() != null) {
+			throw new RuntimeError(scope.failure().token, scope.failure().getMessage());
+		}
+		return value;
+	}
+
+	// what the function returned, a task that failed fails the caller too
+	Object await(Token token) {
+		try {
+			return future.get();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeError(token, "Interrupted while waiting for task " + name + ".");
+		} catch (CancellationException exception) {
+			throw new RuntimeError(token, "Task " + name + " was cancelled.");
+		} catch (ExecutionException exception) {
+			Throwable cause = exception.getCause();
+			if (cause instanceof RuntimeError) {
+				throw new RuntimeError(((RuntimeError) cause).token, cause.getMessage());
+			}
+			throw new RuntimeError(token, "Task " + name + " failed: " + cause);
+		}
+	}
+
+	// waits without caring how the task ended, returns whether it succeeded
+	boolean join(Token token) {
+		try {
+			await(token);
+			return true;
+		} catch (RuntimeError error) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw error;
+			}
+			return false;
+		}
+	}
+
+	// a task waiting in a blocking native is interrupted, one that is
+	// computing stops at its next Task.cancelled() check
+	boolean cancel() {
+		return future.cancel(true);
+	}
+
+	boolean isDone() {
+		return future.isDone();
+	}
+
+	@Override
+	public String toString() {
+		return "<task " + name + ">";
+	}
+}
@@ -0,0 +1,23 @@
+package com.mina.qanun;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The threads tasks run on. Before Java 21 they are pooled daemon threads,
+ * the jar carries a Java 21 version of this class in META-INF/versions/21
+ * that starts a virtual thread for every task instead.
+ *
+ * @author mina
+ */
+final class TaskThreads {
+
+	static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "qanun-task");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private TaskThreads() {
+	}
+}
@@ -6,6 +6,11 @@ package com.mina.qanun;
  */
 public class Token {
 
+	// shared tokens for the implicit 'this' and 'super' bindings, the
+	// interpreter looks these up on every method call
+	static final Token THIS = new Token(TokenType.THIS, "this", null, -1);
+	static final Token SUPER = new Token(TokenType.SUPER, "super", null, -1);
+
 	private final TokenType type;
 	private final String lexeme;
 	private final Object literal;
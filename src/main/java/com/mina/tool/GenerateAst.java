@@ -47,7 +47,7 @@ public class GenerateAst {
 				"Expression : Expr expression", //expression statment	
 				"Function   : Token name, Expr.AnonymousFun anonFun",
 				"Class    : Token name, Expr.Variable superClass, List<Stmt.Function> methods, List<Stmt.Function> staticMethods",
-				"Module : Token name, List<Stmt.Class> classes, List<Stmt.Function> functions,"
+				"Module : Token name, List<Stmt.Import> imports, List<Stmt.Class> classes, List<Stmt.Function> functions,"
 				+ " List<Stmt.Var> variables, List<Stmt.Val> constants",
 				"If         : Expr condition, Stmt thenBranch,"
 				+ " Stmt elseBranch",
@@ -57,6 +57,7 @@ public class GenerateAst {
 				"While      : Expr condition, Stmt body",
 				"For        : Stmt init, Expr condition, Expr increment, Stmt body",
 				"ForEach    : Stmt init, Expr iterable, Stmt body",
+				"ParallelForEach : Token keyword, Stmt.ForEach loop, List<Expr.Variable> reductions, List<Token> operators",
 				"Break      : Token name",
 				"Continue   : Token name",
 				"Switch   : Expr expression, List<Object> values, List<List<Stmt>> actions", // DO NOT leave spaces in string unless is needed
@@ -0,0 +1,18 @@
+package com.mina.qanun;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The threads tasks run on, one virtual thread per task. A task blocked in
+ * 'readln' or 'File.readFile' only parks its virtual thread.
+ *
+ * @author mina
+ */
+final class TaskThreads {
+
+	static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+	private TaskThreads() {
+	}
+}
@@ -0,0 +1,103 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Allocation budgets for hot runtime paths, measured with the per thread
+ * allocation counter of the HotSpot ThreadMXBean.
+ *
+ * @author mina
+ */
+public class AllocationTest {
+
+	private static final int WARMUP = 20000;
+	private static final int ITERATIONS = 20000;
+	private static final int ROUNDS = 5;
+
+	private static final String SOURCE = ""
+			+ "var counter = 0;\n"
+			+ "fun count() { while (counter < 100) counter = counter + 1; counter = 0; }\n"
+			+ "class Base { fun init() { this.value = 1; } fun get() { return this.value; } }\n"
+			+ "class Derived : Base { fun init() { super.init(); } fun get() { return super.get(); } }\n"
+			+ "var derived = Derived();\n"
+			+ "fun superCall() { return derived.get(); }\n"
+			+ "fun construct() { return Base(); }\n"
+			+ "import \"std:*\";\n"
+			+ "fun time() { return Time.dateAndTime(); }\n"
+			+ "fun sha() { return Crypto.sha(\"qanun\"); }\n";
+
+	// budgets are a little above what the paths allocate today, a call
+	// environment alone takes about 120 bytes and binding a method about 260
+
+	@Test
+	public void numericLoopOnlyAllocatesTheCallEnvironment() {
+		// 100 iterations of compare, add and assign per call
+		assertBudget("count", 160);
+	}
+
+	@Test
+	public void superCallOnlyAllocatesEnvironmentsAndBindings() {
+		assertBudget("superCall", 1056);
+	}
+
+	@Test
+	public void initializerReturnDoesNotAllocateTokens() {
+		assertBudget("construct", 768);
+	}
+
+	@Test
+	public void timeReusesItsFormatter() {
+		assertBudget("time", 768);
+	}
+
+	@Test
+	public void shaReusesItsDigest() {
+		assertBudget("sha", 640);
+	}
+
+	private static void assertBudget(String function, long budget) {
+		com.sun.management.ThreadMXBean threads = threadMXBean();
+		Interpreter interpreter = interpreter(SOURCE);
+		QanunCallable callable = (QanunCallable) interpreter.globals.get(
+				new Token(TokenType.IDENTIFIER, function, null, 0));
+		for (int i = 0; i < WARMUP; i++) {
+			callable.call0(interpreter);
+		}
+		long perOperation = Long.MAX_VALUE;
+		long thread = Thread.currentThread().getId();
+		for (int round = 0; round < ROUNDS; round++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < ITERATIONS; i++) {
+				callable.call0(interpreter);
+			}
+			long after = threads.getThreadAllocatedBytes(thread);
+			perOperation = Math.min(perOperation, (after - before) / ITERATIONS);
+		}
+		assertTrue("'" + function + "' allocated " + perOperation + " bytes per call, budget is " + budget,
+				perOperation <= budget);
+	}
+
+	private static com.sun.management.ThreadMXBean threadMXBean() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(hotspot.isThreadAllocatedMemorySupported());
+		hotspot.setThreadAllocatedMemoryEnabled(true);
+		return hotspot;
+	}
+
+	private static Interpreter interpreter(String source) {
+		QanunContext context = new QanunContext();
+		Interpreter interpreter = context.getInterpreter();
+		List<Stmt> statements = new Parser(new Scanner(source, context).scanTokens(), context).parse();
+		new Resolver(interpreter).resolve(statements);
+		interpreter.interpret(statements);
+		assertTrue(!context.hadError && !context.hadRuntimeError);
+		return interpreter;
+	}
+}
@@ -0,0 +1,163 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Binary arithmetic and comparisons, evaluated straight on an interpreter.
+ *
+ * @author mina
+ */
+public class ArithmeticTest {
+
+	@Test
+	public void nestedArithmeticFollowsPrecedence() {
+		assertEquals(6.5, evaluate("1 + 2 * 3 - 4 / 8;"));
+		assertEquals(9L, evaluate("(1 + 2) * 3;"));
+		assertEquals(1024L, evaluate("2 ** 10;"));
+		assertEquals(1L, evaluate("7 % 3;"));
+		assertEquals(-1.5, evaluate("var a = 2; var b = 0.5; a * -b - b;"));
+	}
+
+	@Test
+	public void comparisonsTakeNestedArithmetic() {
+		assertEquals(true, evaluate("1 + 1 < 3 - 0.5;"));
+		assertEquals(false, evaluate("var n = 10; n - 1 >= n;"));
+		assertEquals(true, evaluate("2 * 2 <= 4;"));
+		assertEquals(true, evaluate("1 + 2 == 3;"));
+	}
+
+	@Test
+	public void plusStillJoinsStringsAndLists() {
+		assertEquals("ab", evaluate("\"a\" + \"b\";"));
+		assertEquals(Arrays.asList(1L, 2L, 3L), evaluate("var a = [1]; (a + [2]) + [3];"));
+		assertEquals(6L, evaluate("var a = 1; a += 2; a++; a + 2;"));
+	}
+
+	@Test
+	public void smallIntegralValuesShareABox() {
+		assertSame(QanunNumber.valueOf(12), QanunNumber.valueOf(12));
+		assertSame(QanunNumber.valueOf(-128), QanunNumber.valueOf(-128));
+		assertNotSame(QanunNumber.valueOf(2000), QanunNumber.valueOf(2000));
+		assertNotSame(QanunNumber.valueOf(0.5), QanunNumber.valueOf(0.5));
+	}
+
+	// 2^53 is the last integer a double holds exactly
+	@Test
+	public void integersStayLongsUpToTwoToThe53() {
+		assertEquals(9007199254740992L, evaluate("9007199254740991 + 1;"));
+		assertEquals(-9007199254740992L, evaluate("-9007199254740991 - 1;"));
+		assertEquals(9007199254740992.0, evaluate("9007199254740992 + 1;"));
+		assertEquals(-9007199254740994.0, evaluate("-9007199254740992 - 2;"));
+		assertEquals(1L, evaluate("0.5 + 0.5;"));
+		assertEquals(1.5, evaluate("1 + 0.5;"));
+	}
+
+	@Test
+	public void overflowingProductsBecomeDoubles() {
+		assertEquals(2147483647.0 * 2147483647.0, evaluate("2147483647 * 2147483647;"));
+		assertEquals(1.8446744073709552E19, evaluate("4294967296 * 4294967296;"));
+		assertEquals(-1.8446744073709552E19, evaluate("4294967296 * -4294967296;"));
+		assertEquals(1099511627776L, evaluate("1048576 * 1048576;"));
+		assertEquals(1.2676506002282294E30, evaluate("2 ** 100;"));
+	}
+
+	@Test
+	public void divisionIsExactOrDouble() {
+		assertEquals(2L, evaluate("6 / 3;"));
+		assertEquals(-3L, evaluate("9 / -3;"));
+		assertEquals(3.5, evaluate("7 / 2;"));
+		assertEquals(1.0 / 3, evaluate("1 / 3;"));
+		assertEquals(-1L, evaluate("-7 % 3;"));
+		assertEquals(1.5, evaluate("7.5 % 2;"));
+		assertEquals(3L, evaluate("var n = 12; n /= 4; n;"));
+	}
+
+	// a long has no -0, these results stay doubles like they were before
+	@Test
+	public void negativeZeroIsKept() {
+		assertNegativeZero("0 * -1;");
+		assertNegativeZero("-5 * 0;");
+		assertNegativeZero("-6 % 3;");
+		assertNegativeZero("0 / -4;");
+		assertNegativeZero("-0;");
+		assertNegativeZero("var zero = 0; -zero;");
+		assertNegativeZero("-0.5 * 0 + (1 - 1) * -2;");
+		assertEquals(0L, evaluate("-(-0);"));
+		assertEquals(0L, evaluate("6 % -3;"));
+		assertEquals(0L, evaluate("0 * 0 + -0;"));
+		assertEquals(false, evaluate("0 * -1 == 0;"));
+		assertEquals("-0", new QanunContext().getInterpreter().stringify(evaluate("0 * -1;")));
+	}
+
+	@Test
+	public void bothRepresentationsCompareAndPrintAlike() {
+		assertEquals(true, evaluate("1 == 1.0;"));
+		assertEquals(true, evaluate("2 / 4 == 0.5;"));
+		assertEquals(20L, evaluate("[10, 20, 30][1];"));
+		assertEquals("b", evaluate("\"abc\"[2 / 2];"));
+		Interpreter interpreter = new QanunContext().getInterpreter();
+		assertEquals("3", interpreter.stringify(evaluate("1.5 * 2;")));
+		assertEquals("1.5005E7", interpreter.stringify(evaluate("15005000;")));
+		assertEquals("[1.0, 2.5]", interpreter.stringify(evaluate("[1, 2.5];")));
+	}
+
+	@Test
+	public void operandsMustBeNumbers() {
+		assertError("1 - \"one\";", "Operands must be a number");
+		assertError("[1] < 2 * 3;", "Operands must be a number");
+		assertError("1 + 2 * nil;", "Operands must be a number");
+		assertError("1 + \"one\";", "Operands must be two numbers or two strings or two lists.");
+		assertError("4 / (2 - 2);", "/ by zero is illegal");
+	}
+
+	// the right operand runs before either side is checked
+	@Test
+	public void bothOperandsAreEvaluatedFirst() {
+		for (String operation : new String[]{"nil < count()", "\"a\" >= count()", "[1] - count() * 2", "(nil) * (count() + 1)"}) {
+			Interpreter interpreter = new QanunContext().getInterpreter();
+			evaluate(interpreter, "var calls = 0;\nfun count() { calls = calls + 1; return 1; }\ncalls;");
+			try {
+				evaluate(interpreter, operation + ";");
+				fail(operation);
+			} catch (RuntimeError error) {
+				assertEquals("Operands must be a number", error.getMessage());
+			}
+			assertEquals(operation, 1L, evaluate(interpreter, "calls;"));
+		}
+	}
+
+	private static void assertNegativeZero(String program) {
+		Object value = evaluate(program);
+		assertEquals(program, Double.valueOf(-0.0), value);
+	}
+
+	private static void assertError(String program, String message) {
+		try {
+			evaluate(program);
+			fail("expected '" + message + "'");
+		} catch (RuntimeError error) {
+			assertEquals(message, error.getMessage());
+		}
+	}
+
+	// runs a program and returns the value of its last expression statement
+	private static Object evaluate(String program) {
+		return evaluate(new QanunContext().getInterpreter(), program);
+	}
+
+	private static Object evaluate(Interpreter interpreter, String program) {
+		QanunContext context = interpreter.getContext();
+		List<Stmt> statements = new Parser(new Scanner(program, context).scanTokens(), context).parse();
+		new Resolver(interpreter).resolve(statements);
+		int last = statements.size() - 1;
+		interpreter.interpret(statements.subList(0, last));
+		return interpreter.evaluate(((Stmt.Expression) statements.get(last)).expression);
+	}
+}
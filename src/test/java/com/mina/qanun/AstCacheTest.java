@@ -0,0 +1,125 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The '.qanc' cache of parsed and resolved programs.
+ *
+ * @author mina
+ */
+public class AstCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// a bit of every kind of statement and expression
+	private static final String PROGRAM = ""
+			+ "class Shape { fun init(name) { this.name = name; } fun area() { return 0; } }\n"
+			+ "class Square : Shape { fun init(side) { super.init(\"square\"); this.side = side; }\n"
+			+ "  fun area() { return this.side ** 2; } }\n"
+			+ "fun counter() { var n = 0; fun next() { n = n + 1; return n; } return next; }\n"
+			+ "var next = counter();\n"
+			+ "next();\n"
+			+ "val square = Square(4);\n"
+			+ "var list = [1, 2.5, \"three\", nil, true];\n"
+			+ "list[1] = 3;\n"
+			+ "var total = 0;\n"
+			+ "for (var i = 0; i < 3; i = i + 1) { if (i == 1) continue; total += i; }\n"
+			+ "for (var item : [4, 5]) total = total + item;\n"
+			+ "while (total < 20) { total++; if (total > 15) break; }\n"
+			+ "parallel for (var x : [1, 2, 3]) reduce (total: +) total = total + x;\n"
+			+ "switch (total) { case 22: println(\"22\"); break; default: println(\"other\"); }\n"
+			+ "var twice = fun (x) { return x * 2; };\n"
+			+ "println(str(next()) + \" \" + square.name + \" \" + str(square.area()));\n"
+			+ "println(list);\n"
+			+ "println(total > 10 and !false ? twice(-total) : nil);\n";
+
+	@Test
+	public void cachedProgramRunsLikeTheSource() throws IOException {
+		Path source = write("program.qan", PROGRAM);
+		Scripts parsing = new Scripts(folder.getRoot().toPath());
+		List<Stmt> parsed = parse(PROGRAM, parsing.context.getInterpreter());
+		AstCache.forSource(source, Files.readAllBytes(source), false).store(parsed, parsing.context.getInterpreter().getLocals());
+		assertTrue(Files.isRegularFile(folder.getRoot().toPath().resolve("program" + AstCache.EXTENSION)));
+
+		Scripts loading = new Scripts(folder.getRoot().toPath());
+		List<Stmt> loaded = AstCache.forSource(source, Files.readAllBytes(source), false).load(loading.context.getInterpreter().getLocals());
+		assertNotNull(loaded);
+		assertEquals(parsed.size(), loaded.size());
+		String expected = "22\n2 square 16\n[1.0, 3.0, three, nil, true]\n-44\n";
+		assertEquals(expected, run(parsed, parsing));
+		assertEquals(expected, run(loaded, loading));
+	}
+
+	@Test
+	public void changedSourceIsAMiss() throws IOException {
+		Path source = write("changed.qan", "println(1);\n");
+		Interpreter interpreter = new QanunContext().getInterpreter();
+		AstCache.forSource(source, Files.readAllBytes(source), false).store(parse("println(1);\n", interpreter), interpreter.getLocals());
+		source = write("changed.qan", "println(2);\n");
+		assertNull(AstCache.forSource(source, Files.readAllBytes(source), false).load(new HashMap<>()));
+	}
+
+	@Test
+	public void corruptCacheIsAMiss() throws IOException {
+		Path source = write("corrupt.qan", "println(\"fine\");\n");
+		write("corrupt" + AstCache.EXTENSION, "QANC but not really");
+		assertNull(AstCache.forSource(source, Files.readAllBytes(source), false).load(new HashMap<>()));
+	}
+
+	// modules are resolved differently, the same source isn't shared
+	@Test
+	public void scriptEntriesAreNotModuleEntries() throws IOException {
+		Path source = write("both.qan", "var x = 1;\n");
+		Interpreter interpreter = new QanunContext().getInterpreter();
+		AstCache.forSource(source, Files.readAllBytes(source), false).store(parse("var x = 1;\n", interpreter), interpreter.getLocals());
+		assertNotNull(AstCache.forSource(source, Files.readAllBytes(source), false).load(new HashMap<>()));
+		assertNull(AstCache.forSource(source, Files.readAllBytes(source), true).load(new HashMap<>()));
+	}
+
+	// identical sources share an entry in the cache directory
+	@Test
+	public void cacheDirectoryIsKeyedByContent() throws IOException {
+		Path first = write("first.qan", "println(\"same\");\n");
+		Path second = write("second.qan", "println(\"same\");\n");
+		Path directory = folder.newFolder("cache").toPath();
+		System.setProperty("qanun.cache.dir", directory.toString());
+		try {
+			Interpreter interpreter = new QanunContext().getInterpreter();
+			AstCache.forSource(first, Files.readAllBytes(first), false).store(parse("println(\"same\");\n", interpreter), interpreter.getLocals());
+			Scripts loading = new Scripts(folder.getRoot().toPath());
+			assertEquals("same\n", run(AstCache.forSource(second, Files.readAllBytes(second), false).load(loading.context.getInterpreter().getLocals()), loading));
+		} finally {
+			System.clearProperty("qanun.cache.dir");
+		}
+		assertEquals(1, directory.toFile().list().length);
+	}
+
+	private Path write(String name, String source) throws IOException {
+		return Files.write(folder.getRoot().toPath().resolve(name), source.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<Stmt> parse(String source, Interpreter interpreter) {
+		List<Stmt> statements = new Parser(new Scanner(source, interpreter.getContext()).scanTokens(), interpreter.getContext()).parse();
+		new Resolver(interpreter).resolve(statements);
+		return statements;
+	}
+
+	private static String run(List<Stmt> statements, Scripts scripts) {
+		scripts.context.getInterpreter().interpret(statements);
+		return scripts.out();
+	}
+}
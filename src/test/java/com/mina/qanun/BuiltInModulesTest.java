@@ -0,0 +1,56 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Imports of 'std:' modules.
+ *
+ * @author mina
+ */
+public class BuiltInModulesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// '*' is what it was before the concurrency modules were added
+	@Test
+	public void starLeavesNewerModuleNamesFree() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("star.qan", ""
+				+ "import \"std:*\";\n"
+				+ "var Task = 1;\n"
+				+ "fun Future() { return 2; }\n"
+				+ "val Isolate = 3;\n"
+				+ "class Concurrent {}\n"
+				+ "println(Task + Future() + Isolate);\n"
+				+ "println(len(Crypto.sha(\"qanun\")));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("6\n64\n", scripts.out());
+	}
+
+	@Test
+	public void newerModulesAreImportedByName() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("named.qan", ""
+				+ "import \"std:*\";\n"
+				+ "import \"std:Concurrent\";\n"
+				+ "import \"std:Future\";\n"
+				+ "var counter = Concurrent.counter();\n"
+				+ "counter.increment();\n"
+				+ "println(counter.sum());\n"
+				+ "println(Future.completed(File != nil).await());\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("1\ntrue\n", scripts.out());
+	}
+
+	@Test
+	public void unknownModulesFail() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		assertEquals(70, scripts.run("unknown.qan", "import \"std:Nope\";\n"));
+		assertEquals("File => 'unknown.qan'\n[line 1] No built in module with name 'Nope'\n", scripts.err());
+	}
+}
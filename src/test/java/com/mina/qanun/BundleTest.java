@@ -0,0 +1,87 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Programs linked with their imports into '.qanb' files.
+ *
+ * @author mina
+ */
+public class BundleTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void bundleRunsWithoutItsSources() throws IOException {
+		Scripts scripts = scripts(library(""));
+		assertTrue(scripts.err(), scripts.bundle("main.qan", "app" + Bundle.EXTENSION));
+		Files.delete(folder.getRoot().toPath().resolve("main.qan"));
+		Files.delete(folder.getRoot().toPath().resolve("lib.qan"));
+		Files.delete(folder.getRoot().toPath().resolve("util.qan"));
+		Scripts run = new Scripts(folder.getRoot().toPath());
+		int code = run.run("app" + Bundle.EXTENSION);
+		assertEquals(run.err(), 0, code);
+		assertEquals("import\n10\n8\n", run.out());
+	}
+
+	// the initializer that prints is kept, the function nothing calls isn't
+	@Test
+	public void unreachableDeclarationsAreLeftOut() throws IOException {
+		Scripts scripts = scripts(library(""));
+		assertTrue(scripts.bundle("main.qan", "shaken" + Bundle.EXTENSION));
+		scripts = scripts(library("fun unused() { return twice(base) + util.add(1, 2); }\nclass Unused {}\n"));
+		assertTrue(scripts.bundle("main.qan", "unused" + Bundle.EXTENSION));
+		assertArrayEquals(Files.readAllBytes(folder.getRoot().toPath().resolve("shaken" + Bundle.EXTENSION)),
+				Files.readAllBytes(folder.getRoot().toPath().resolve("unused" + Bundle.EXTENSION)));
+	}
+
+	@Test
+	public void missingModulesFailTheBuild() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("main.qan", "import \"nowhere\";\n");
+		assertFalse(scripts.bundle("main.qan", "broken" + Bundle.EXTENSION));
+		assertFalse(Files.exists(folder.getRoot().toPath().resolve("broken" + Bundle.EXTENSION)));
+		assertTrue(scripts.err(), scripts.err().contains("Module doesn't exisit"));
+	}
+
+	@Test
+	public void otherFilesAreNotBundles() throws IOException {
+		Path fake = folder.getRoot().toPath().resolve("fake" + Bundle.EXTENSION);
+		Files.write(fake, "not a bundle".getBytes(StandardCharsets.UTF_8));
+		assertNull(Bundle.load(fake, new QanunContext().getInterpreter()));
+	}
+
+	private Scripts scripts(String library) {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("main.qan", ""
+				+ "import \"lib\";\n"
+				+ "fun work() { import \"lib\"; return lib.twice(4); }\n"
+				+ "println(lib.twice(lib.base));\n"
+				+ "println(work());\n");
+		scripts.write("lib.qan", library);
+		scripts.write("util.qan", "fun add(a, b) { return a + b; }\nfun sub(a, b) { return a - b; }\n");
+		return scripts;
+	}
+
+	private String library(String more) {
+		return ""
+				+ "import \"util\";\n"
+				+ "var log = println(\"import\");\n"
+				+ "val base = 5;\n"
+				+ "fun twice(n) { var i = n; return util.add(i, i); }\n"
+				+ more;
+	}
+}
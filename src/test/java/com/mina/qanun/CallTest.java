@@ -0,0 +1,105 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Calls with every number of arguments, from scripts and through the entry
+ * points of QanunCallable.
+ *
+ * @author mina
+ */
+public class CallTest {
+
+	private static final String DECLARATIONS = ""
+			+ "fun none() { return \"none\"; }\n"
+			+ "fun one(a) { return a; }\n"
+			+ "fun two(a, b) { return a - b; }\n"
+			+ "fun three(a, b, c) { return a * b - c; }\n"
+			+ "fun four(a, b, c, d) { return [a, b, c, d]; }\n"
+			+ "class Point { fun init(x, y) { this.x = x; this.y = y; } fun sum() { return this.x + this.y; } }\n"
+			+ "class Empty {}\n";
+
+	@Test
+	public void scriptsCallWithAnyNumberOfArguments() {
+		Interpreter interpreter = interpreter();
+		assertEquals("none", evaluate(interpreter, "none()"));
+		assertEquals("a", evaluate(interpreter, "one(\"a\")"));
+		assertEquals(-1L, evaluate(interpreter, "two(1, 2)"));
+		assertEquals(3L, evaluate(interpreter, "three(1, 5, 2)"));
+		assertEquals(Arrays.asList(1L, 2L, 3L, 4L), evaluate(interpreter, "four(1, 2, 3, 4)"));
+		assertEquals(7L, evaluate(interpreter, "Point(3, 4).sum()"));
+		assertEquals(3L, evaluate(interpreter, "len(\"abc\")"));
+	}
+
+	// arguments are bound in order whichever entry point is used
+	@Test
+	public void everyEntryPointBindsTheSameParameters() {
+		Interpreter interpreter = interpreter();
+		QanunCallable three = global(interpreter, "three");
+		assertEquals(3L, three.call3(interpreter, 1L, 5L, 2L));
+		assertEquals(3L, three.call(interpreter, new Object[]{1L, 5L, 2L}));
+		assertEquals(3L, three.call(interpreter, Arrays.<Object>asList(1L, 5L, 2L)));
+		assertEquals(-1L, global(interpreter, "two").call2(interpreter, 1L, 2L));
+		assertEquals("none", global(interpreter, "none").call0(interpreter));
+		QanunCallable point = global(interpreter, "Point");
+		QanunInstance instance = (QanunInstance) point.call(interpreter, new Object[]{3L, 4L});
+		assertEquals(4L, instance.get(new Token(TokenType.IDENTIFIER, "y", null, 0)));
+		assertTrue(global(interpreter, "Empty").call0(interpreter) instanceof QanunInstance);
+		assertEquals(2L, global(interpreter, "len").call1(interpreter, Arrays.asList(1L, 2L)));
+	}
+
+	@Test
+	public void argumentCountsMustMatchTheArity() {
+		Interpreter interpreter = interpreter();
+		assertError(interpreter, "one()", "Expected 1 arguments but got 0.");
+		assertError(interpreter, "none(1)", "Expected 0 arguments but got 1.");
+		assertError(interpreter, "three(1, 2)", "Expected 3 arguments but got 2.");
+		assertError(interpreter, "two(1, 2, 3)", "Expected 2 arguments but got 3.");
+		assertError(interpreter, "three(1, 2, 3, 4)", "Expected 3 arguments but got 4.");
+		assertError(interpreter, "four(1, 2, 3, 4, 5)", "Expected 4 arguments but got 5.");
+		assertError(interpreter, "Point(1)", "Expected 2 arguments but got 1.");
+		assertError(interpreter, "Empty(1)", "Expected 0 arguments but got 1.");
+		assertError(interpreter, "Point(1, 2, 3)", "Expected 2 arguments but got 3.");
+		assertError(interpreter, "Point(1, 2).sum(1)", "Expected 0 arguments but got 1.");
+		assertError(interpreter, "len()", "Expected 1 arguments but got 0.");
+		assertError(interpreter, "len(\"a\", \"b\")", "Expected 1 arguments but got 2.");
+		assertError(interpreter, "split(\"a\")", "Expected 2 arguments but got 1.");
+		assertError(interpreter, "split(\"a\", \",\", 1)", "Expected 2 arguments but got 3.");
+		assertError(interpreter, "clock(1, 2, 3, 4)", "Expected 0 arguments but got 4.");
+		assertError(interpreter, "\"text\"(1, 2)", "Can only call functions and classes.");
+	}
+
+	private static void assertError(Interpreter interpreter, String expression, String message) {
+		try {
+			evaluate(interpreter, expression);
+			fail("expected '" + message + "'");
+		} catch (RuntimeError error) {
+			assertEquals(message, error.getMessage());
+		}
+	}
+
+	private static Interpreter interpreter() {
+		QanunContext context = new QanunContext();
+		Interpreter interpreter = context.getInterpreter();
+		List<Stmt> statements = new Parser(new Scanner(DECLARATIONS, context).scanTokens(), context).parse();
+		new Resolver(interpreter).resolve(statements);
+		interpreter.interpret(statements);
+		return interpreter;
+	}
+
+	private static QanunCallable global(Interpreter interpreter, String name) {
+		return (QanunCallable) interpreter.globals.get(new Token(TokenType.IDENTIFIER, name, null, 0));
+	}
+
+	private static Object evaluate(Interpreter interpreter, String expression) {
+		List<Stmt> statements = new Parser(new Scanner(expression + ";", interpreter.getContext()).scanTokens(), interpreter.getContext()).parse();
+		new Resolver(interpreter).resolve(statements);
+		return interpreter.evaluate(((Stmt.Expression) statements.get(0)).expression);
+	}
+}
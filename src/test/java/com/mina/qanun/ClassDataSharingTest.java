@@ -0,0 +1,105 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The class data sharing archive and the program that trains it.
+ *
+ * @author mina
+ */
+public class ClassDataSharingTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void archiveIsNamedAfterTheJar() {
+		assertEquals(Paths.get("/opt/qanun/qanun-1.0.jsa"), ClassDataSharing.archive(Paths.get("/opt/qanun/qanun-1.0.jar")));
+	}
+
+	// the tests run from classes, not from the jar
+	@Test
+	public void buildNeedsTheJar() throws IOException, InterruptedException {
+		PrintStream err = System.err;
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(message, true));
+		try {
+			assertEquals(Qanun.Error.EX_GENERAL.getCode(), ClassDataSharing.build(null));
+		} finally {
+			System.setErr(err);
+		}
+		assertTrue(message.toString(), message.toString().contains("only works when qanun runs from its jar"));
+	}
+
+	@Test
+	public void trainingProgramRuns() throws IOException {
+		Path root = folder.getRoot().toPath();
+		for (String name : new String[]{"training.qan", "library.qan"}) {
+			try (InputStream resource = ClassDataSharing.class.getResourceAsStream(name)) {
+				Files.copy(resource, root.resolve(name));
+			}
+		}
+		Scripts scripts = new Scripts(root);
+		int code = scripts.run("training.qan");
+		assertEquals(scripts.err(), 0, code);
+	}
+
+	// the child resolves 'lib' from the directory it was started in
+	@Test
+	public void trainingScriptsImportModules() throws Exception {
+		Path root = folder.getRoot().toPath();
+		Path jar = jar(root.resolve("qanun.jar"));
+		Scripts scripts = new Scripts(root);
+		scripts.write("lib.qan", "fun twice(n) { return n * 2; }\n");
+		Path script = scripts.write("train.qan", "import \"lib\";\nval x = lib.twice(2);\n");
+		Path archive = ClassDataSharing.archive(jar);
+		assertEquals(0, ClassDataSharing.train(jar, archive, script, root, folder.newFolder("cache").toPath()));
+		assertTrue(Files.exists(archive));
+	}
+
+	@Test
+	public void failedTrainingLeavesNoArchive() throws Exception {
+		Path root = folder.getRoot().toPath();
+		Path jar = jar(root.resolve("qanun.jar"));
+		Path script = new Scripts(root).write("broken.qan", "import \"nowhere\";\n");
+		Path archive = ClassDataSharing.archive(jar);
+		assertEquals(70, ClassDataSharing.train(jar, archive, script, root, folder.newFolder("cache").toPath()));
+		assertFalse(Files.exists(archive));
+	}
+
+	// the archive can only be written for classes loaded from a jar
+	private static Path jar(Path jar) throws Exception {
+		Path classes = Paths.get(Qanun.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(classes)) {
+			files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		try (OutputStream out = Files.newOutputStream(jar); JarOutputStream entries = new JarOutputStream(out)) {
+			for (Path file : files) {
+				entries.putNextEntry(new JarEntry(classes.relativize(file).toString().replace('\\', '/')));
+				Files.copy(file, entries);
+				entries.closeEntry();
+			}
+		}
+		return jar;
+	}
+}
@@ -0,0 +1,123 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The thread safe values of 'std:Concurrent', used from the workers of the
+ * parallel natives and from tasks.
+ *
+ * @author mina
+ */
+public class ConcurrentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// above the cutoff, so the updates come from many threads
+	private static final String ITEMS = ""
+			+ "import \"std:Concurrent\";\n"
+			+ "var items = [];\n"
+			+ "for (var i = 1; i <= 5000; i = i + 1) items = items + [i];\n";
+
+	@Test
+	public void countersAndAtomicsDontLoseUpdates() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("count.qan", ITEMS
+				+ "var counter = Concurrent.counter();\n"
+				+ "var atomic = Concurrent.atomic(0);\n"
+				+ "fun visit(x) { counter.increment(); atomic.add(x); }\n"
+				+ "parallelForEach(items, visit);\n"
+				+ "println(counter.sum());\n"
+				+ "println(atomic.get() == 12502500);\n"
+				+ "counter.reset();\n"
+				+ "counter.decrement();\n"
+				+ "println(counter.sum());\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("5000\ntrue\n-1\n", scripts.out());
+	}
+
+	// numbers are compared by value
+	@Test
+	public void atomicsCompareAndSet() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("atomic.qan", ""
+				+ "import \"std:Concurrent\";\n"
+				+ "var atomic = Concurrent.atomic(1);\n"
+				+ "println(atomic.compareAndSet(1, 2));\n"
+				+ "println(atomic.compareAndSet(1, 3));\n"
+				+ "println(atomic.getAndSet(\"four\"));\n"
+				+ "println(atomic.get());\n"
+				+ "atomic.add(1);\n");
+		assertEquals(70, code);
+		assertEquals("true\nfalse\n2\nfour\n", scripts.out());
+		assertTrue(scripts.err(), scripts.err().contains("Only an atomic number can be added to."));
+	}
+
+	@Test
+	public void mapUpdatesAreAtomic() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("map.qan", ITEMS
+				+ "var counts = Concurrent.map();\n"
+				+ "fun increment(count) { if (count == nil) return 1; return count + 1; }\n"
+				+ "fun visit(x) { counts.update(x % 10, increment); }\n"
+				+ "parallelForEach(items, visit);\n"
+				+ "println(counts.size());\n"
+				+ "var total = 0;\n"
+				+ "var values = counts.values();\n"
+				+ "for (var i = 0; i < len(values); i++) total = total + values[i];\n"
+				+ "println(total);\n"
+				+ "println(counts.get(3));\n"
+				+ "println(counts.putIfAbsent(3, 0));\n"
+				+ "println(counts.remove(3));\n"
+				+ "println(counts.containsKey(3));\n"
+				+ "counts.put(nil, 1);\n");
+		assertEquals(70, code);
+		assertEquals("10\n5000\n500\n500\n500\nfalse\n", scripts.out());
+		assertTrue(scripts.err(), scripts.err().contains("A concurrent map can't have a nil key."));
+	}
+
+	@Test
+	public void queuesHandElementsOver() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("queue.qan", ""
+				+ "import \"std:Concurrent\";\n"
+				+ "import \"std:Task\";\n"
+				+ "var queue = Concurrent.boundedQueue(2);\n"
+				+ "fun produce() { for (var i = 1; i <= 100; i++) queue.put(i); queue.put(nil); }\n"
+				+ "var producer = spawn(produce);\n"
+				+ "var total = 0;\n"
+				+ "var next = queue.take();\n"
+				+ "while (next != nil) { total = total + next; next = queue.take(); }\n"
+				+ "Task.join(producer);\n"
+				+ "println(total);\n"
+				+ "println(queue.isEmpty());\n"
+				+ "println(queue.poll());\n"
+				+ "println(queue.offer(1) and queue.offer(2));\n"
+				+ "println(queue.offer(3));\n"
+				+ "println(queue.size());\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("5050\ntrue\nnil\ntrue\nfalse\n2\n", scripts.out());
+	}
+
+	@Test
+	public void readWriteLocksGuardPlainVariables() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("lock.qan", ITEMS
+				+ "var lock = Concurrent.readWriteLock();\n"
+				+ "var count = 0;\n"
+				+ "fun bump() { count = count + 1; }\n"
+				+ "fun current() { return count; }\n"
+				+ "fun visit(x) { lock.write(bump); }\n"
+				+ "parallelForEach(items, visit);\n"
+				+ "println(lock.read(current));\n"
+				+ "lock.write(visit);\n");
+		assertEquals(70, code);
+		assertEquals("5000\n", scripts.out());
+		assertTrue(scripts.err(), scripts.err().contains("Argument 1 of 'write' must be a function without parameters."));
+	}
+}
@@ -0,0 +1,150 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Scripts run by 'qanun --daemon', spoken to the way {@link DaemonClient}
+ * does. The daemon keeps running until the tests' JVM exits.
+ *
+ * @author mina
+ */
+public class DaemonTest {
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static String home;
+	private static String[] daemon;
+
+	@BeforeClass
+	public static void startDaemon() throws Exception {
+		home = System.getProperty("user.home");
+		System.setProperty("user.home", folder.getRoot().getPath());
+		Thread thread = new Thread(() -> {
+			try {
+				Daemon.serve();
+			} catch (IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		}, "qanun-daemon");
+		thread.setDaemon(true);
+		thread.start();
+		Path file = DaemonClient.file();
+		for (int i = 0; i < 500 && (!Files.exists(file) || Files.size(file) == 0); i++) {
+			Thread.sleep(10);
+		}
+		daemon = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().split(" ");
+		Files.write(folder.getRoot().toPath().resolve("hello.qan"),
+				"println(\"hi \" + readln());\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@AfterClass
+	public static void restoreHome() {
+		System.setProperty("user.home", home);
+	}
+
+	@Test
+	public void runsAScriptWithItsInput() throws IOException {
+		Result result = send(daemon[1], "bob\n", "hello.qan");
+		assertEquals(0, result.code);
+		assertEquals("hi bob\n", result.out);
+	}
+
+	// errors end the run with its exit code, the daemon keeps serving
+	@Test
+	public void errorsOnlyEndTheRun() throws IOException {
+		Files.write(folder.getRoot().toPath().resolve("broken.qan"), "var;\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(folder.getRoot().toPath().resolve("failing.qan"), "println(1 - \"a\");\n".getBytes(StandardCharsets.UTF_8));
+		assertEquals(65, send(daemon[1], "", "broken.qan").code);
+		assertEquals(70, send(daemon[1], "", "failing.qan").code);
+		assertEquals("hi again\n", send(daemon[1], "again\n", "hello.qan").out);
+	}
+
+	// the launcher runs these in a JVM of its own when it gets EX_TEMPFAIL
+	@Test
+	public void leavesEverythingButScriptsToTheLauncher() throws IOException {
+		assertEquals(75, send(daemon[1], "").code);
+		assertEquals(75, send(daemon[1], "", "--startup-stats", "hello.qan").code);
+		assertEquals(75, send(daemon[1], "", "--image=prelude.qani").code);
+		assertEquals(75, send(daemon[1], "", "bundle", "hello.qan", "-o", "hello.qanb").code);
+		assertEquals(75, send(daemon[1], "", "snapshot", "hello.qan", "-o", "hello.qani").code);
+	}
+
+	@Test
+	public void clientLeavesEverythingButScriptsToTheLauncher() {
+		assertTrue(DaemonClient.isScript(new String[]{"hello.qan"}));
+		assertTrue(!DaemonClient.isScript(new String[0]));
+		assertTrue(!DaemonClient.isScript(new String[]{"--build-cds"}));
+		assertTrue(!DaemonClient.isScript(new String[]{"bundle", "hello.qan", "-o", "hello.qanb"}));
+	}
+
+	@Test
+	public void ignoresClientsWithoutTheToken() throws IOException {
+		assertEquals(-1, send("wrong", "", "hello.qan").code);
+	}
+
+	private static final class Result {
+
+		int code = -1;
+		String out;
+	}
+
+	// a connection the daemon closed has no exit code
+	private static Result send(String token, String input, String... args) throws IOException {
+		Result result = new Result();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(daemon[0]))) {
+			DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+			output.writeUTF(token);
+			output.writeUTF(folder.getRoot().getPath());
+			output.writeInt(args.length);
+			for (String arg : args) {
+				output.writeUTF(arg);
+			}
+			byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > 0) {
+				output.writeInt(bytes.length);
+				output.write(bytes);
+			}
+			output.writeInt(0);
+			output.flush();
+			DataInputStream frames = new DataInputStream(socket.getInputStream());
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (;;) {
+				int tag = frames.readByte();
+				int length = frames.readInt();
+				if (tag == DaemonClient.EXIT) {
+					result.code = length;
+					break;
+				}
+				byte[] frame = new byte[length];
+				frames.readFully(frame);
+				if (tag == DaemonClient.STDOUT) {
+					out.write(frame);
+				}
+			}
+			result.out = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		} catch (EOFException | SocketException exception) {
+			result.code = -1;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,137 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Values computed on the task threads, combined with 'std:Future'.
+ *
+ * @author mina
+ */
+public class FutureTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// a future that waits until the gate is opened
+	private static final String GATE = ""
+			+ "import \"std:Future\";\n"
+			+ "import \"std:Concurrent\";\n"
+			+ "var gate = Concurrent.queue();\n"
+			+ "fun wait() { return gate.take(); }\n"
+			+ "var slow = Future.run(wait);\n";
+
+	@Test
+	public void thenWaitsForFuturesItGets() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("then.qan", ""
+				+ "import \"std:Future\";\n"
+				+ "fun compute() { var total = 0; for (var i = 1; i <= 100; i++) total = total + i; return total; }\n"
+				+ "fun twice(x) { return x * 2; }\n"
+				+ "fun later(x) { return Future.completed(x + 1); }\n"
+				+ "println(Future.run(compute).then(twice).then(later).await());\n"
+				+ "println(Future.completed(\"done\").isDone());\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("10101\ntrue\n", scripts.out());
+	}
+
+	@Test
+	public void allHashesFilesAtOnce() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		for (int i = 1; i <= 8; i++) {
+			scripts.write("part" + i + ".txt", "part " + i);
+		}
+		int code = scripts.run("hash.qan", ""
+				+ "import \"std:Future\";\n"
+				+ "import \"std:File\";\n"
+				+ "import \"std:Crypto\";\n"
+				+ "fun hasher(name) { fun hash() { return Crypto.sha(File.readFile(name)); } return hash; }\n"
+				+ "var futures = [];\n"
+				+ "for (var i = 1; i <= 8; i++) futures = futures + [Future.run(hasher(\"part\" + str(i) + \".txt\"))];\n"
+				+ "var hashes = Future.all(futures).await();\n"
+				+ "var same = len(hashes) == 8;\n"
+				+ "for (var i = 0; i < 8; i++) { if (hashes[i] != Crypto.sha(\"part \" + str(i + 1))) same = false; }\n"
+				+ "println(same);\n"
+				+ "var mixed = Future.all([1, Future.completed(\"two\"), nil]).await();\n"
+				+ "println(mixed[1]);\n"
+				+ "println(len(mixed));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("true\ntwo\n3\n", scripts.out());
+	}
+
+	@Test
+	public void anyTakesTheFirstValue() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("any.qan", GATE
+				+ "println(Future.any([slow, Future.completed(\"fast\")]).await());\n"
+				+ "gate.put(\"open\");\n"
+				+ "println(slow.await());\n"
+				+ "Future.any([]);\n");
+		assertEquals(70, code);
+		assertEquals("fast\nopen\n", scripts.out());
+		assertTrue(scripts.err(), scripts.err().contains("Future.any needs at least one future."));
+	}
+
+	@Test
+	public void failuresCanBeRecovered() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("recover.qan", ""
+				+ "import \"std:Future\";\n"
+				+ "fun fail() { return len(nil) + \"one\"; }\n"
+				+ "fun fallback(message) { return \"recovered\"; }\n"
+				+ "fun value() { return 1; }\n"
+				+ "println(Future.run(fail).recover(fallback).await());\n"
+				+ "println(Future.run(value).recover(fallback).await());\n"
+				+ "Future.run(fail).await();\n"
+				+ "println(\"unreachable\");\n");
+		assertEquals(70, code);
+		assertEquals("recovered\n1\n", scripts.out());
+	}
+
+	// the future that took too long is cancelled, the gate lets its task end
+	@Test
+	public void slowFuturesTimeOut() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("timeout.qan", GATE
+				+ "fun message(error) { return error; }\n"
+				+ "println(slow.timeout(0.05).recover(message).await());\n"
+				+ "println(slow.isDone());\n"
+				+ "gate.put(\"open\");\n"
+				+ "println(slow.recover(message).await());\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("Future timed out after 0.05 seconds.\ntrue\nFuture was cancelled.\n", scripts.out());
+	}
+
+	@Test
+	public void timeoutsOfFinishedFuturesAreDropped() {
+		QanunFuture done = new QanunFuture(CompletableFuture.completedFuture("done")).timeout(60);
+		assertEquals("done", done.await());
+		assertTrue(QanunFuture.TIMER.getQueue().isEmpty());
+	}
+
+	@Test
+	public void cancelledFuturesFailAwait() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("cancel.qan", GATE
+				+ "println(slow.cancel());\n"
+				+ "println(slow.isDone());\n"
+				+ "gate.put(\"open\");\n"
+				+ "slow.await();\n");
+		assertEquals(70, code);
+		assertEquals("true\ntrue\n", scripts.out());
+		assertTrue(scripts.err(), scripts.err().contains("Future was cancelled."));
+	}
+
+	@Test
+	public void callbacksNeedTheRightParameters() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("arity.qan", "import \"std:Future\";\nfun one(x) { return x; }\nFuture.run(one);\n");
+		assertEquals(70, code);
+		assertTrue(scripts.err(), scripts.err().contains("Argument 1 of 'run' must be a function with no parameters."));
+	}
+}
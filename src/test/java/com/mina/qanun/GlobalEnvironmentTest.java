@@ -0,0 +1,108 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Natives and 'std:' modules are bound the first time a script uses them.
+ *
+ * @author mina
+ */
+public class GlobalEnvironmentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void nativesAreBoundOnFirstUse() {
+		GlobalEnvironment globals = new GlobalEnvironment(new HashMap<>());
+		assertFalse(globals.materialize("nothing"));
+		Object len = globals.get(name("len"));
+		assertTrue(len instanceof QanunCallable);
+		assertEquals(3L, ((QanunCallable) len).call1(new QanunContext().getInterpreter(), "abc"));
+		assertUndefined(globals, "nothing");
+	}
+
+	@Test
+	public void modulesAreCreatedOnFirstUse() {
+		GlobalEnvironment globals = new GlobalEnvironment(new HashMap<>());
+		globals.importModule(name("Crypto"));
+		assertTrue(globals.get(name("Crypto")) instanceof QanunNativeInstance);
+		assertUndefined(globals, "Time");
+	}
+
+	// every thread sees the same function, whichever of them bound it
+	@Test
+	public void nativesAreBoundOnceAcrossThreads() throws Exception {
+		GlobalEnvironment globals = new GlobalEnvironment(new HashMap<>());
+		globals.importModule(name("Crypto"));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Object[]>> results = new ArrayList<>();
+		try {
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return new Object[]{globals.get(name("split")), globals.get(name("Crypto"))};
+				}));
+			}
+			start.countDown();
+			for (Future<Object[]> result : results) {
+				assertSame(globals.get(name("split")), result.get()[0]);
+				assertSame(globals.get(name("Crypto")), result.get()[1]);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertFalse(globals.getConstants().containsKey("split"));
+	}
+
+	@Test
+	public void namesOfNativesAndModulesAreTaken() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		assertEquals(70, scripts.run("native.qan", "var split = 1;\n"));
+		assertTrue(scripts.err(), scripts.err().contains("redeclaration of [ split ]"));
+		assertEquals(70, scripts.run("module.qan", "import \"std:Time\";\nfun Time() {}\n"));
+		assertTrue(scripts.err(), scripts.err().contains("redeclaration of [ Time ]"));
+		assertEquals(70, scripts.run("assign.qan", "len = 1;\n"));
+		assertTrue(scripts.err(), scripts.err().contains("Assignment of constant variable 'len'"));
+	}
+
+	@Test
+	public void scriptsSeeNativesAndModules() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:*\";\n"
+				+ "println(len(Crypto.sha(\"qanun\")));\n"
+				+ "println(type(split(\"a,b\", \",\")));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("64\nlist\n", scripts.out());
+	}
+
+	private static void assertUndefined(Environment globals, String name) {
+		try {
+			globals.get(name(name));
+			fail("'" + name + "' is defined");
+		} catch (RuntimeError error) {
+			assertTrue(error.getMessage(), error.getMessage().contains("Undefined variable"));
+		}
+	}
+
+	private static Token name(String name) {
+		return new Token(TokenType.IDENTIFIER, name, null, 0);
+	}
+}
@@ -0,0 +1,107 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Warm interpreters that forget a run once it's over.
+ *
+ * @author mina
+ */
+public class InterpreterPoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	@Test
+	public void runsForgetTheirGlobals() throws InterruptedException {
+		InterpreterPool pool = pool(1);
+		QanunScript declare = Qanun.compile("var count = 1;\nfun twice(n) { return n * 2; }\nclass Box {}\ntwice(count);\n");
+		assertEquals(2L, pool.execute(declare));
+		assertEquals(2L, pool.execute(declare));
+		try {
+			pool.execute(Qanun.compile("twice(1);\n"));
+			fail("a function outlived its run");
+		} catch (RuntimeError error) {
+			assertTrue(error.getMessage(), error.getMessage().contains("twice"));
+		}
+		assertEquals(3L, pool.execute(Qanun.compile("len(\"abc\");\n")));
+	}
+
+	@Test
+	public void runsImportModulesAgain() throws InterruptedException, IOException {
+		Files.write(folder.getRoot().toPath().resolve("lib.qan"),
+				"var loaded = println(\"loading\");\nvar value = 1;\nfun bump() { value = value + 1; return value; }\n".getBytes(StandardCharsets.UTF_8));
+		InterpreterPool pool = pool(1);
+		QanunScript script = Qanun.compile("import \"lib\";\nimport \"std:Crypto\";\nlib.bump();\n");
+		assertEquals(2L, pool.execute(script));
+		assertEquals(2L, pool.execute(script));
+		assertEquals("loading\nloading\n", out.toString());
+	}
+
+	@Test
+	public void bindingsAreWrittenBack() throws InterruptedException {
+		InterpreterPool pool = pool(1);
+		QanunScript script = Qanun.compile("total = total + step;\n");
+		Map<String, Object> bindings = new HashMap<>();
+		bindings.put("total", 1L);
+		bindings.put("step", 2L);
+		pool.execute(script, bindings);
+		assertEquals(3L, bindings.get("total"));
+		pool.execute(script, bindings);
+		assertEquals(5L, bindings.get("total"));
+		ByteArrayOutputStream other = new ByteArrayOutputStream();
+		pool.execute(Qanun.compile("println(total);\n"), bindings, new PrintStream(other, true), System.err);
+		assertEquals("5\n", other.toString());
+		assertEquals("", out.toString());
+	}
+
+	@Test
+	public void threadsShareTheInterpreters() throws Exception {
+		InterpreterPool pool = pool(2);
+		QanunScript script = Qanun.compile("var square = n * n;\nsquare;\n");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			for (long n = 0; n < 100; n++) {
+				Map<String, Object> bindings = new HashMap<>();
+				bindings.put("n", n);
+				results.add(executor.submit(() -> pool.execute(script, bindings)));
+			}
+			for (int n = 0; n < results.size(); n++) {
+				assertEquals((long) n * n, results.get(n).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void poolNeedsAnInterpreter() {
+		new InterpreterPool(0);
+	}
+
+	private InterpreterPool pool(int size) {
+		return new InterpreterPool(size, folder.getRoot().toPath(), new PrintStream(out, true), new PrintStream(err, true));
+	}
+}
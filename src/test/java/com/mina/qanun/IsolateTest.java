@@ -0,0 +1,144 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Functions and programs that run on interpreters of their own and only
+ * share copies of messages.
+ *
+ * @author mina
+ */
+public class IsolateTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void functionsRunInIsolates() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "fun sum(n) { var total = 0; for (var i = 1; i <= n; i++) { total = total + i; } return total; }\n"
+				+ "var isolates = [];\n"
+				+ "for (var n = 1; n <= 4; n++) { isolates = isolates + [Isolate.spawnFunction(sum, n * 100)]; }\n"
+				+ "var total = 0;\n"
+				+ "for (var i = 0; i < 4; i++) { total = total + Isolate.join(isolates[i]); }\n"
+				+ "println(total);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("150500\n", scripts.out());
+	}
+
+	@Test
+	public void messagesGoBothWays() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "fun doubler() {\n"
+				+ "	import \"std:Isolate\";\n"
+				+ "	var message = Isolate.take();\n"
+				+ "	while (message != nil) { Isolate.post(message * 2); message = Isolate.take(); }\n"
+				+ "	return \"done\";\n"
+				+ "}\n"
+				+ "var worker = Isolate.spawnFunction(doubler, nil);\n"
+				+ "for (var i = 1; i <= 3; i++) { Isolate.send(worker, i); }\n"
+				+ "Isolate.send(worker, nil);\n"
+				+ "for (var i = 1; i <= 3; i++) { println(Isolate.receive(worker)); }\n"
+				+ "println(Isolate.join(worker));\n"
+				+ "println(Isolate.receive(worker));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("2\n4\n6\ndone\nnil\n", scripts.out());
+	}
+
+	// more than the 64 messages a mailbox holds
+	@Test
+	public void joinDoesntWaitOnUnreadMessages() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "fun chatty(n) { import \"std:Isolate\"; for (var i = 0; i < n; i++) { Isolate.post(i); } return n; }\n"
+				+ "var worker = Isolate.spawnFunction(chatty, 200);\n"
+				+ "println(Isolate.join(worker));\n"
+				+ "var count = 0;\n"
+				+ "while (Isolate.receive(worker) != nil) { count++; }\n"
+				+ "println(count);\n"
+				+ "for (var i = 0; i < 200; i++) { Isolate.send(worker, i); }\n"
+				+ "println(\"sent\");\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("200\n200\nsent\n", scripts.out());
+	}
+
+	// neither side sees the other change a list
+	@Test
+	public void messagesAreCopies() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "fun change(list) { list[0][0] = \"isolate\"; return list; }\n"
+				+ "var data = [[\"main\"], \"b\"];\n"
+				+ "var isolate = Isolate.spawnFunction(change, data);\n"
+				+ "data[1] = \"changed\";\n"
+				+ "var result = Isolate.join(isolate);\n"
+				+ "println(data[0][0] + \" \" + data[1]);\n"
+				+ "println(result[0][0] + \" \" + result[1]);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("main changed\nisolate b\n", scripts.out());
+	}
+
+	@Test
+	public void programsRunInIsolates() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("worker.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "var name = Isolate.take();\n"
+				+ "Isolate.post(\"hello \" + name);\n");
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "var worker = Isolate.spawn(\"worker.qan\");\n"
+				+ "Isolate.send(worker, \"bob\");\n"
+				+ "println(Isolate.receive(worker));\n"
+				+ "println(Isolate.join(worker));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("hello bob\nnil\n", scripts.out());
+	}
+
+	@Test
+	public void onlyValuesCanBeSent() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "class Box {}\n"
+				+ "fun keep(value) { return value; }\n"
+				+ "Isolate.spawnFunction(keep, [1, Box()]);\n");
+		assertEquals(70, code);
+		assertTrue(scripts.err(), scripts.err().contains("Only nil, booleans, numbers, strings and lists can be sent between isolates."));
+	}
+
+	@Test
+	public void onlyTopLevelFunctionsCanBeSpawned() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "fun outer() { var hidden = 1; fun inner() { return hidden; } return inner; }\n"
+				+ "Isolate.spawnFunction(outer(), nil);\n");
+		assertEquals(70, code);
+		assertTrue(scripts.err(), scripts.err().contains("Only functions declared at the top level"));
+	}
+
+	// the function sees the natives but not the spawner's globals
+	@Test
+	public void failuresAreReportedByJoin() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("main.qan", ""
+				+ "import \"std:Isolate\";\n"
+				+ "var secret = 42;\n"
+				+ "fun peek() { return len(str(secret)); }\n"
+				+ "Isolate.join(Isolate.spawnFunction(peek, nil));\n");
+		assertEquals(70, code);
+		assertTrue(scripts.err(), scripts.err().contains("Isolate 'peek' failed"));
+	}
+}
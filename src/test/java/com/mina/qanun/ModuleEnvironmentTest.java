@@ -0,0 +1,73 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Module declarations that run the first time they are used.
+ *
+ * @author mina
+ */
+public class ModuleEnvironmentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Broken only fails once it is executed
+	private static final String LIBRARY = ""
+			+ "var log = println(\"import\");\n"
+			+ "fun helper() { return 40; }\n"
+			+ "val limit = 2;\n"
+			+ "fun used() { return helper() + limit; }\n"
+			+ "var notAClass = 1;\n"
+			+ "class Broken : notAClass {}\n"
+			+ "class Base { fun name() { return \"base\"; } }\n"
+			+ "class Derived : Base {}\n"
+			+ "var list = [1, 2];\n";
+
+	@Test
+	public void onlyUsedDeclarationsAreExecuted() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("lib.qan", LIBRARY);
+		int code = scripts.run("main.qan", ""
+				+ "import \"lib\";\n"
+				+ "println(lib.used());\n"
+				+ "println(lib.Derived().name());\n"
+				+ "println(lib.list);\n"
+				+ "lib.Broken();\n");
+		assertEquals(70, code);
+		assertEquals("import\n42\nbase\n[1.0, 2.0]\n", scripts.out());
+		assertTrue(scripts.err(), scripts.err().contains("Superclass must be a class."));
+	}
+
+	@Test
+	public void constantsOfModulesCantBeAssigned() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("lib.qan", "val limit = 3;\nfun bump() { limit = 4; }\n");
+		assertEquals(70, scripts.run("main.qan", "import \"lib\";\nlib.bump();\n"));
+		assertTrue(scripts.err(), scripts.err().contains("Assignment of constant variable 'limit'"));
+	}
+
+	@Test
+	public void initializersThatReadStateAreNotDeferred() {
+		assertTrue(isConstant("[1, \"two\", nil, -3 * (4 + 5)]"));
+		assertTrue(isConstant("true and !false ? 1 : 2"));
+		assertTrue(isConstant("fun (x) { return x; }"));
+		assertFalse(isConstant("clock()"));
+		assertFalse(isConstant("limit + 1"));
+		assertFalse(isConstant("[1, list]"));
+		assertFalse(isConstant("-counter"));
+	}
+
+	private static boolean isConstant(String initializer) {
+		QanunContext context = new QanunContext();
+		List<Stmt> statements = new Parser(new Scanner("var x = " + initializer + ";", context).scanTokens(), context).parse();
+		return ModuleEnvironment.isConstant(((Stmt.Var) statements.get(0)).initializer);
+	}
+}
@@ -0,0 +1,83 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The modules a program imports are parsed ahead of running it.
+ *
+ * @author mina
+ */
+public class ModuleGraphTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void everyReachableModuleIsPrepared() throws IOException {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("a.qan", "import \"c\";\nfun a() { return c.c() + 1; }\n");
+		scripts.write("b.qan", "import \"c\";\nvar b = 2;\n");
+		scripts.write("c.qan", "fun c() { return 3; }\n");
+		scripts.write("unused.qan", "var unused = 4;\n");
+		Map<String, ModuleGraph.Prepared> prepared = prepare(scripts.context, ""
+				+ "import \"a\";\n"
+				+ "import \"b\";\n"
+				+ "import \"std:Time\";\n"
+				+ "var name = \"unused\";\n"
+				+ "import name;\n");
+		assertEquals(names("a", "b", "c"), new TreeSet<>(prepared.keySet()));
+		for (ModuleGraph.Prepared module : prepared.values()) {
+			assertFalse(module.statements.isEmpty());
+		}
+	}
+
+	// the import reports them where it is, in program order
+	@Test
+	public void modulesWithErrorsAreLeftToTheImport() throws IOException {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("broken.qan", "var = 1;\n");
+		scripts.write("fine.qan", "var fine = 1;\n");
+		Map<String, ModuleGraph.Prepared> prepared = prepare(scripts.context, ""
+				+ "import \"fine\";\n"
+				+ "import \"broken\";\n"
+				+ "import \"missing\";\n");
+		assertEquals(names("fine"), new TreeSet<>(prepared.keySet()));
+		assertFalse(scripts.context.hadError);
+		assertEquals("", scripts.err());
+	}
+
+	@Test
+	public void preparedModulesRun() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("a.qan", "import \"c\";\nfun a() { var one = 1; return c.c() + one; }\n");
+		scripts.write("c.qan", "fun c() { var three = 3; return three; }\n");
+		int code = scripts.run("main.qan", "import \"a\";\nimport \"c\";\nprintln(a.a() + c.c());\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("7\n", scripts.out());
+	}
+
+	private static Map<String, ModuleGraph.Prepared> prepare(QanunContext context, String source) {
+		List<Stmt> statements = new Parser(new Scanner(source, context).scanTokens(), context).parse();
+		new Resolver(context.getInterpreter()).resolve(statements);
+		assertFalse(context.hadError);
+		return ModuleGraph.prepare(context, statements);
+	}
+
+	private TreeSet<String> names(String... modules) throws IOException {
+		TreeSet<String> paths = new TreeSet<>();
+		for (String module : modules) {
+			paths.add(new File(folder.getRoot(), module + ".qan").getCanonicalPath());
+		}
+		return paths;
+	}
+}
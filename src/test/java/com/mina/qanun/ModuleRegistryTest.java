@@ -0,0 +1,81 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Modules are loaded once per interpreter and again once their file changed.
+ *
+ * @author mina
+ */
+public class ModuleRegistryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void modulesAreNamedAfterTheirFile() {
+		assertEquals("util", ModuleRegistry.moduleName("lib/util"));
+		assertEquals("lib", ModuleRegistry.moduleName("./lib"));
+		assertEquals("lib", ModuleRegistry.moduleName("lib"));
+	}
+
+	@Test
+	public void modifiedFilesAreDropped() throws IOException {
+		File file = folder.newFile("lib.qan");
+		QanunModule module = module("lib");
+		ModuleRegistry registry = new ModuleRegistry(new QanunContext());
+		assertNull(registry.get(file));
+		registry.put(file, file.lastModified(), module);
+		assertSame(module, registry.get(file));
+		assertTrue(file.setLastModified(file.lastModified() + 2000));
+		assertNull(registry.get(file));
+		assertNull(registry.get(file));
+	}
+
+	@Test
+	public void aFileIsLoadedOnceAtATime() throws IOException {
+		File file = folder.newFile("lib.qan");
+		ModuleRegistry registry = new ModuleRegistry(new QanunContext());
+		assertTrue(registry.beginLoading(file));
+		assertFalse(registry.beginLoading(file));
+		registry.endLoading(file);
+		assertTrue(registry.beginLoading(file));
+	}
+
+	// the initializer runs when the module is loaded
+	@Test
+	public void moduleIsLoadedOncePerInterpreter() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("lib.qan", "var loaded = println(\"loading\");\nvar value = 1;\n");
+		int code = scripts.run("twice.qan", ""
+				+ "import \"lib\";\n"
+				+ "fun again() { import \"./lib\"; return lib.value; }\n"
+				+ "println(again() + lib.value);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("loading\n2\n", scripts.out());
+	}
+
+	@Test
+	public void circularImportsAreReported() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("a.qan", "import \"b\";\nvar a = 1;\n");
+		scripts.write("b.qan", "import \"a\";\nvar b = 2;\n");
+		assertEquals(70, scripts.run("cycle.qan", "import \"a\";\n"));
+		assertTrue(scripts.err(), scripts.err().contains("Circular import of module 'a'"));
+	}
+
+	private static QanunModule module(String name) {
+		return new QanunModule(new Token(TokenType.IDENTIFIER, name, null, 0),
+				new ModuleEnvironment(new Environment(), new QanunContext().getInterpreter()));
+	}
+}
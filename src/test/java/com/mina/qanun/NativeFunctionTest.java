@@ -0,0 +1,132 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Natives bound from annotated static methods.
+ *
+ * @author mina
+ */
+public class NativeFunctionTest {
+
+	static class Natives {
+
+		@QanunNative("half")
+		static double half(double value) {
+			return value / 2;
+		}
+
+		@QanunNative("repeat")
+		static String repeat(String text, long times) {
+			StringBuilder builder = new StringBuilder();
+			for (long i = 0; i < times; i++) {
+				builder.append(text);
+			}
+			return builder.toString();
+		}
+
+		@QanunNative("first")
+		static Object first(List<?> list, Boolean fromEnd) {
+			return fromEnd ? list.get(list.size() - 1) : list.get(0);
+		}
+
+		@QanunNative("self")
+		static Object self(Interpreter interpreter) {
+			return interpreter;
+		}
+
+		@QanunNative(value = "size", module = "Box")
+		static long size() {
+			return 3;
+		}
+	}
+
+	static class Unsupported {
+
+		@QanunNative("count")
+		static int count(int value) {
+			return value;
+		}
+	}
+
+	@Test
+	public void argumentsAndResultsAreConverted() {
+		NativeFunction.Table natives = NativeFunction.table(Natives.class, "");
+		Interpreter interpreter = new QanunContext().getInterpreter();
+		assertEquals(1.5, natives.get("half").call1(interpreter, 3L));
+		assertEquals(2L, natives.get("half").call1(interpreter, 4.0));
+		assertEquals("abab", natives.get("repeat").call2(interpreter, "ab", 2L));
+		assertEquals(3L, natives.get("first").call(interpreter, Arrays.<Object>asList(Arrays.asList(1L, 2L, 3L), true)));
+		assertSame(interpreter, natives.get("self").call0(interpreter));
+		assertEquals(0, natives.get("self").arity());
+		assertEquals(2, natives.get("first").arity());
+	}
+
+	@Test
+	public void modulesOnlyGetTheirOwnNatives() {
+		NativeFunction.Table natives = NativeFunction.table(Natives.class, "Box");
+		assertEquals(3L, natives.get("size").call0(new QanunContext().getInterpreter()));
+		assertNull(natives.get("half"));
+		assertNull(NativeFunction.table(Natives.class, "").get("size"));
+	}
+
+	// binding builds the method handles, it's done once per native
+	@Test
+	public void nativesAreBoundOnce() {
+		NativeFunction.Table natives = NativeFunction.table(Natives.class, "");
+		assertSame(natives.get("repeat"), natives.get("repeat"));
+		assertNull(natives.get("nothing"));
+	}
+
+	@Test
+	public void wrongArgumentTypesNameTheArgument() {
+		NativeFunction.Table natives = NativeFunction.table(Natives.class, "");
+		Interpreter interpreter = new QanunContext().getInterpreter();
+		assertError(() -> natives.get("half").call1(interpreter, "two"), "Argument 1 of 'half' must be a number.");
+		assertError(() -> natives.get("repeat").call2(interpreter, 1L, 2L), "Argument 1 of 'repeat' must be a string.");
+		assertError(() -> natives.get("repeat").call2(interpreter, "ab", 2.5), "Argument 2 of 'repeat' must be an integer.");
+		assertError(() -> natives.get("first").call(interpreter, new Object[]{"list", true}), "Argument 1 of 'first' must be a list.");
+		assertError(() -> natives.get("first").call2(interpreter, Arrays.asList(1L), null), "Argument 2 of 'first' must be a boolean.");
+	}
+
+	@Test
+	public void scriptsGetTheSameErrors() {
+		assertScriptError("split(1, \",\");", "Argument 1 of 'split' must be a string.");
+		assertScriptError("split(\"a,b\", nil);", "Argument 2 of 'split' must be a string.");
+		assertScriptError("copyList(\"abc\");", "Argument 1 of 'copyList' must be a list.");
+		assertScriptError("printf(\"%s\", \"a\");", "Argument 2 of 'printf' must be a list.");
+		assertScriptError("import \"std:Crypto\"; Crypto.sha(42);", "Argument 1 of 'sha' must be a string.");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void unsupportedParameterTypesAreRejected() {
+		NativeFunction.table(Unsupported.class, "").get("count");
+	}
+
+	private static void assertError(Runnable call, String message) {
+		try {
+			call.run();
+			fail("expected '" + message + "'");
+		} catch (RuntimeError error) {
+			assertEquals(message, error.getMessage());
+		}
+	}
+
+	// the last statement is evaluated so its error isn't reported
+	private static void assertScriptError(String program, String message) {
+		QanunContext context = new QanunContext();
+		Interpreter interpreter = context.getInterpreter();
+		List<Stmt> statements = new Parser(new Scanner(program, context).scanTokens(), context).parse();
+		new Resolver(interpreter).resolve(statements);
+		int last = statements.size() - 1;
+		interpreter.interpret(statements.subList(0, last));
+		assertError(() -> interpreter.evaluate(((Stmt.Expression) statements.get(last)).expression), message);
+	}
+}
@@ -0,0 +1,96 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 'parallel for' loops and their reductions.
+ *
+ * @author mina
+ */
+public class ParallelForTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String ITEMS = ""
+			+ "var items = [];\n"
+			+ "for (var i = 1; i <= 200000; i = i + 1) items = items + [i];\n";
+
+	@Test
+	public void reductionsAreExact() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("sums.qan", ITEMS
+				+ "var total = 0;\n"
+				+ "var count = 0;\n"
+				+ "var down = 0;\n"
+				+ "parallel for (var x : items) reduce (total: +, count: +, down: +) {\n"
+				+ "  total = total + x;\n"
+				+ "  count++;\n"
+				+ "  --down;\n"
+				+ "}\n"
+				+ "println(total == 20000100000);\n"
+				+ "println(count);\n"
+				+ "println(down);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("true\n200000\n-200000\n", scripts.out());
+	}
+
+	@Test
+	public void productsMergeInOrder() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.run("product.qan", ""
+				+ "var product = 1;\n"
+				+ "var names = \"\";\n"
+				+ "parallel for (var x : [1, 2, 3, 4, 5]) reduce (product: *) product = product * x;\n"
+				+ "parallel for (var c : \"abc\") reduce (names: +) names = names + c + c;\n"
+				+ "println(product);\n"
+				+ "println(names);\n");
+		assertEquals("120\naabbcc\n", scripts.out());
+	}
+
+	@Test
+	public void listReductionsLeaveTheInitialListAlone() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("lists.qan", ""
+				+ "var start = [\"s\"];\n"
+				+ "var all = start;\n"
+				+ "parallel for (var x : [\"a\", \"b\", \"c\"]) reduce (all: +) all = all + [x];\n"
+				+ "println(all);\n"
+				+ "println(start);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("[s, a, b, c]\n[s]\n", scripts.out());
+	}
+
+	@Test
+	public void incrementOfAnOuterVariableIsRejected() {
+		assertRejected("var count = 0;\nparallel for (var x : [1, 2]) count++;\n");
+		assertRejected("var count = 0;\nparallel for (var x : [1, 2]) ++count;\n");
+		assertRejected("var count = 0;\nparallel for (var x : [1, 2]) count--;\n");
+		assertRejected("var count = 0;\nparallel for (var x : [1, 2]) { fun f() { --count; } f(); }\n");
+	}
+
+	@Test
+	public void assignmentOfAnOuterVariableIsRejected() {
+		assertRejected("var last = 0;\nparallel for (var x : [1, 2]) last = x;\n");
+	}
+
+	@Test
+	public void variablesDeclaredInTheBodyCanBeIncremented() {
+		Qanun.compile("parallel for (var x : [1, 2]) { var n = x; n++; --n; }\n");
+	}
+
+	private static void assertRejected(String source) {
+		try {
+			Qanun.compile(source);
+			fail("compiled " + source);
+		} catch (CompileError error) {
+			assertTrue(error.getMessage(), error.getMessage().contains("A parallel loop can only assign"));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The parallel list natives, on lists above the cutoff they run on the
+ * fork/join pool.
+ *
+ * @author mina
+ */
+public class ParallelListsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String ITEMS = ""
+			+ "var items = [];\n"
+			+ "for (var i = 1; i <= 5000; i = i + 1) items = items + [i];\n"
+			+ "var few = [3, 1, 2];\n";
+
+	@Test
+	public void mapKeepsTheOrder() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("map.qan", ITEMS
+				+ "fun square(x) { var y = x * x; return y; }\n"
+				+ "var squares = parallelMap(items, square);\n"
+				+ "var ordered = len(squares) == len(items);\n"
+				+ "for (var i = 0; i < len(items); i++) { if (squares[i] != items[i] * items[i]) ordered = false; }\n"
+				+ "println(ordered);\n"
+				+ "println(parallelMap(few, square));\n"
+				+ "println(parallelMap([], square));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("true\n[9.0, 1.0, 4.0]\n[]\n", scripts.out());
+	}
+
+	@Test
+	public void filterKeepsTheOrder() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("filter.qan", ITEMS
+				+ "fun even(x) { return x % 2 == 0; }\n"
+				+ "var evens = parallelFilter(items, even);\n"
+				+ "var ordered = len(evens) == 2500;\n"
+				+ "for (var i = 0; i < len(evens); i++) { if (evens[i] != (i + 1) * 2) ordered = false; }\n"
+				+ "println(ordered);\n"
+				+ "println(parallelFilter(few, even));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("true\n[2.0]\n", scripts.out());
+	}
+
+	// without an initial value the first element is where the fold starts
+	@Test
+	public void reduceCombinesThePieces() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("reduce.qan", ITEMS
+				+ "fun add(a, b) { return a + b; }\n"
+				+ "fun join(a, b) { return str(a) + str(b); }\n"
+				+ "println(parallelReduce(items, add, nil) == 12502500);\n"
+				+ "println(parallelReduce(items, add, 10) == 12502510);\n"
+				+ "println(parallelReduce(few, join, nil));\n"
+				+ "println(parallelReduce(few, join, \">\"));\n"
+				+ "println(parallelReduce([], add, nil));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("true\ntrue\n312\n>312\nnil\n", scripts.out());
+	}
+
+	// every worker marks its own elements
+	@Test
+	public void forEachVisitsEveryElement() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("each.qan", ITEMS
+				+ "var seen = [];\n"
+				+ "for (var item : items) seen = seen + [false];\n"
+				+ "fun visit(x) { seen[x - 1] = true; }\n"
+				+ "parallelForEach(items, visit);\n"
+				+ "parallelForEach(few, visit);\n"
+				+ "var all = true;\n"
+				+ "for (var visited : seen) { if (!visited) all = false; }\n"
+				+ "println(all);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("true\n", scripts.out());
+	}
+
+	@Test
+	public void functionsNeedTheRightParameters() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		assertEquals(70, scripts.run("arity.qan", "fun add(a, b) { return a + b; }\nparallelMap([1, 2], add);\n"));
+		assertTrue(scripts.err(), scripts.err().contains("Expect a function with one parameter."));
+	}
+
+	@Test
+	public void errorsInWorkersFailTheCall() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("fail.qan", ITEMS
+				+ "fun check(x) { if (x == 4321) { return x + \"one\"; } return x; }\n"
+				+ "parallelMap(items, check);\n"
+				+ "println(\"unreachable\");\n");
+		assertEquals(70, code);
+		assertEquals("", scripts.out());
+	}
+}
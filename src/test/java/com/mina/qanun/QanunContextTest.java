@@ -0,0 +1,89 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Everything a run needs is kept in its context, contexts share nothing.
+ *
+ * @author mina
+ */
+public class QanunContextTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void contextsRunAtOnceWithTheirOwnState() throws Exception {
+		int runs = 8;
+		List<Scripts> contexts = new ArrayList<>();
+		for (int i = 0; i < runs; i++) {
+			Scripts scripts = new Scripts(folder.newFolder().toPath());
+			scripts.write("lib.qan", "var id = " + i + ";\n");
+			scripts.write("main.qan", ""
+					+ "import \"lib\";\n"
+					+ "var total = 0;\n"
+					+ "for (var i = 0; i < 2000; i++) { total = total + lib.id; }\n"
+					+ "println(str(lib.id) + \" \" + str(total));\n");
+			contexts.add(scripts);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(runs);
+		try {
+			List<Future<Integer>> codes = new ArrayList<>();
+			for (Scripts scripts : contexts) {
+				codes.add(executor.submit(() -> scripts.run("main.qan")));
+			}
+			for (int i = 0; i < runs; i++) {
+				assertEquals(contexts.get(i).err(), 0, (int) codes.get(i).get());
+				assertEquals(i + " " + i * 2000 + "\n", contexts.get(i).out());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// input one read buffered is there for the next
+	@Test
+	public void readsShareOneReader() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		QanunContext context = new QanunContext(folder.getRoot().toPath(),
+				new ByteArrayInputStream("first\nsecond\n".getBytes(StandardCharsets.UTF_8)),
+				new PrintStream(out, true), new PrintStream(err, true));
+		Files.write(folder.getRoot().toPath().resolve("main.qan"),
+				"println(readln());\nprintln(read());\nprintln(readln());\n".getBytes(StandardCharsets.UTF_8));
+		int code = context.runFile("main.qan");
+		assertEquals(err.toString(), 0, code);
+		assertEquals("first\ns\necond\n", out.toString());
+	}
+
+	@Test
+	public void pathsAreResolvedInTheDirectory() throws IOException {
+		Scripts scripts = new Scripts(folder.newFolder().toPath());
+		scripts.write("data.txt", "contents");
+		int code = scripts.run("main.qan", "import \"std:File\";\nprintln(File.readFile(\"data.txt\"));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("contents\n", scripts.out());
+	}
+
+	@Test
+	public void exitCodesFollowTheErrors() {
+		assertEquals(65, new Scripts(folder.getRoot().toPath()).run("syntax.qan", "var = 1;\n"));
+		assertEquals(70, new Scripts(folder.getRoot().toPath()).run("runtime.qan", "println(nothing);\n"));
+		assertEquals(1, new Scripts(folder.getRoot().toPath()).run("script.txt", "println(1);\n"));
+	}
+}
@@ -0,0 +1,102 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The export table of a module.
+ *
+ * @author mina
+ */
+public class QanunModuleTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void slotsFollowTheirNames() {
+		ModuleEnvironment environment = new ModuleEnvironment(new Environment(), new QanunContext().getInterpreter());
+		Token count = new Token(TokenType.IDENTIFIER, "count", null, 0);
+		Token hidden = new Token(TokenType.IDENTIFIER, "hidden", null, 0);
+		environment.export(count);
+		ModuleEnvironment.Export export = environment.getExports().get("count");
+		assertFalse(export.defined);
+		environment.define(count, 1L);
+		assertTrue(export.defined);
+		assertEquals(1L, export.value);
+		environment.assign(count, 2L);
+		assertEquals(2L, export.value);
+		environment.define(hidden, 3L);
+		assertNull(environment.getExports().get("hidden"));
+		assertEquals(2L, new QanunModule(count, environment).get(count));
+	}
+
+	// visitClassStmt defines the name as nil before the class is built
+	@Test
+	public void deferredDeclarationsAreExportedOnceTheyRan() {
+		QanunContext context = new QanunContext();
+		ModuleEnvironment environment = new ModuleEnvironment(new Environment(), context.getInterpreter());
+		Token box = new Token(TokenType.IDENTIFIER, "Box", null, 0);
+		Stmt declaration = new Parser(new Scanner("class Box {}", context).scanTokens(), context).parse().get(0);
+		environment.declare(box, declaration);
+		environment.export(box);
+		ModuleEnvironment.Export export = environment.getExports().get("Box");
+		environment.changed("Box", null);
+		assertFalse(export.defined);
+		Object value = new QanunModule(box, environment).get(box);
+		assertTrue(value instanceof QanunClass);
+		assertTrue(export.defined);
+		assertSame(value, export.value);
+	}
+
+	@Test
+	public void exportsFollowTheirVariables() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("counter.qan", ""
+				+ "var count = 0;\n"
+				+ "var names = [];\n"
+				+ "fun bump(name) { count = count + 1; names = names + [name]; return count; }\n");
+		int code = scripts.run("main.qan", ""
+				+ "import \"counter\";\n"
+				+ "println(counter.count);\n"
+				+ "counter.bump(\"a\");\n"
+				+ "counter.bump(\"b\");\n"
+				+ "println(counter.count);\n"
+				+ "println(len(counter.names));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("0\n2\n2\n", scripts.out());
+	}
+
+	@Test
+	public void modulesSeeEachOthersExports() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("base.qan", "var greeting = \"hi\";\nfun set(value) { greeting = value; }\n");
+		scripts.write("user.qan", ""
+				+ "import \"base\";\n"
+				+ "fun greet(name) { return base.greeting + \" \" + name; }\n");
+		int code = scripts.run("main.qan", ""
+				+ "import \"base\";\n"
+				+ "import \"user\";\n"
+				+ "println(user.greet(\"bob\"));\n"
+				+ "base.set(\"hello\");\n"
+				+ "println(user.greet(\"bob\"));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("hi bob\nhello bob\n", scripts.out());
+	}
+
+	@Test
+	public void unknownMembersAreNil() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("empty.qan", "var x = 1;\n");
+		int code = scripts.run("main.qan", "import \"empty\";\nprintln(empty.y);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("nil\n", scripts.out());
+	}
+}
@@ -0,0 +1,95 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+/**
+ * Programs compiled once and run many times.
+ *
+ * @author mina
+ */
+public class QanunScriptTest {
+
+	private static final QanunScript FIBONACCI = Qanun.compile(""
+			+ "fun fibonacci(n) { if (n < 2) { return n; } return fibonacci(n - 1) + fibonacci(n - 2); }\n"
+			+ "var local = n;\n"
+			+ "result = fibonacci(local);\n"
+			+ "result * 2;\n");
+
+	@Test
+	public void bindingsAreTheGlobals() {
+		Map<String, Object> bindings = new HashMap<>();
+		bindings.put("n", 10L);
+		bindings.put("result", null);
+		assertEquals(110L, FIBONACCI.run(bindings));
+		assertEquals(55L, bindings.get("result"));
+		assertEquals(10L, bindings.get("local"));
+	}
+
+	// every run declares its globals again
+	@Test
+	public void runsShareNothing() {
+		for (long n = 0; n < 5; n++) {
+			Map<String, Object> bindings = new HashMap<>();
+			bindings.put("n", n);
+			bindings.put("result", null);
+			FIBONACCI.run(bindings);
+			assertEquals(n, bindings.get("local"));
+		}
+	}
+
+	@Test
+	public void scriptRunsOnManyThreads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			for (long n = 0; n < 64; n++) {
+				Map<String, Object> bindings = new HashMap<>();
+				bindings.put("n", n % 16);
+				bindings.put("result", null);
+				results.add(executor.submit(() -> FIBONACCI.run(bindings)));
+			}
+			long[] expected = new long[16];
+			expected[1] = 1;
+			for (int i = 2; i < expected.length; i++) {
+				expected[i] = expected[i - 1] + expected[i - 2];
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(expected[i % 16] * 2, results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void compileErrorsHaveTheMessages() {
+		try {
+			Qanun.compile("var = 1;\n");
+			fail("a broken program compiled");
+		} catch (CompileError error) {
+			assertTrue(error.getMessage(), error.getMessage().contains("[line 1]"));
+		}
+	}
+
+	@Test
+	public void runtimeErrorsAreThrown() {
+		QanunScript script = Qanun.compile("fun fail(value) { return value + 1; }\nfail(\"one\");\n");
+		try {
+			script.run();
+			fail("a string and a number were added");
+		} catch (RuntimeError error) {
+			assertTrue(error.getMessage(), !error.getMessage().isEmpty());
+		}
+	}
+}
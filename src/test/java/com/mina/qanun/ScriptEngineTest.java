@@ -0,0 +1,134 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.Set;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import org.junit.Test;
+
+/**
+ * Qanun behind javax.script.
+ *
+ * @author mina
+ */
+public class ScriptEngineTest {
+
+	public interface Calculator {
+
+		int add(int a, int b);
+	}
+
+	private final ScriptEngine engine = new ScriptEngineManager().getEngineByName("qanun");
+
+	@Test
+	public void engineIsFoundByNameAndExtension() {
+		assertTrue(engine instanceof QanunScriptEngine);
+		assertTrue(new ScriptEngineManager().getEngineByExtension("qan") instanceof QanunScriptEngine);
+	}
+
+	@Test
+	public void evalReturnsTheLastExpression() throws ScriptException {
+		engine.put("x", 40);
+		assertEquals(42L, engine.eval("x + 2;"));
+		engine.eval("var y = x * 2;");
+		assertEquals(80L, engine.get("y"));
+	}
+
+	@Test
+	public void compiledScriptCanBeEvaluatedTwice() throws ScriptException {
+		CompiledScript script = ((Compilable) engine).compile(""
+				+ "var z = 1;\n"
+				+ "val limit = 3;\n"
+				+ "fun twice(n) { return n * 2; }\n"
+				+ "class Box {}\n"
+				+ "twice(z) + limit;\n");
+		assertEquals(5L, script.eval());
+		assertEquals(5L, script.eval());
+		engine.eval("var limit = 4;");
+		assertEquals(4L, engine.eval("limit;"));
+	}
+
+	@Test
+	public void compiledScriptKeepsStateInItsBindings() throws ScriptException {
+		CompiledScript script = ((Compilable) engine).compile("x = x + 1; x;");
+		Bindings bindings = engine.createBindings();
+		bindings.put("x", 1);
+		assertEquals(2L, script.eval(bindings));
+		assertEquals(3L, script.eval(bindings));
+		assertEquals(3L, bindings.get("x"));
+	}
+
+	@Test
+	public void javaNumbersInPlainBindingsAreConverted() throws ScriptException {
+		Bindings bindings = new SimpleBindings();
+		bindings.put("count", 41);
+		bindings.put("ratio", 0.5f);
+		bindings.put("small", (short) 2);
+		assertEquals(42L, engine.eval("count + 1;", bindings));
+		assertEquals(1L, engine.eval("ratio * small;", bindings));
+		engine.setBindings(new SimpleBindings(), ScriptContext.ENGINE_SCOPE);
+		engine.put("count", 7);
+		assertEquals(14L, engine.eval("count * 2;"));
+	}
+
+	// the session is made once per bindings, so are the numbers converted
+	@Test
+	public void plainBindingsAreScannedOncePerSession() throws ScriptException, NoSuchMethodException {
+		int[] scans = new int[1];
+		Bindings bindings = new SimpleBindings() {
+			@Override
+			public Set<Map.Entry<String, Object>> entrySet() {
+				scans[0]++;
+				return super.entrySet();
+			}
+		};
+		bindings.put("count", 1);
+		engine.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+		engine.eval("fun next() { count = count + 1; return count; }");
+		assertEquals(2L, ((Invocable) engine).invokeFunction("next"));
+		assertEquals(3L, engine.eval("next();"));
+		assertEquals(1, scans[0]);
+	}
+
+	@Test
+	public void functionsAreInvocable() throws ScriptException, NoSuchMethodException {
+		engine.eval("fun add(a, b) { return a + b; }\n"
+				+ "class P { fun init(n) { this.n = n; } fun get() { return this.n * 10; } }\n"
+				+ "var p = P(7);\n");
+		Invocable invocable = (Invocable) engine;
+		assertEquals(7.5, invocable.invokeFunction("add", 3, 4.5));
+		assertEquals(3, invocable.getInterface(Calculator.class).add(1, 2));
+		assertEquals(70L, invocable.invokeMethod(engine.get("p"), "get"));
+		assertNull(invocable.getInterface(Runnable.class));
+	}
+
+	@Test
+	public void printsGoToTheContextWriter() throws ScriptException {
+		StringWriter writer = new StringWriter();
+		engine.getContext().setWriter(writer);
+		engine.eval("println(\"hi\"); print(1);");
+		assertEquals("hi\n1", writer.toString());
+	}
+
+	@Test(expected = ScriptException.class)
+	public void runtimeErrorsAreScriptExceptions() throws ScriptException {
+		engine.eval("var z = nope;");
+	}
+
+	@Test(expected = ScriptException.class)
+	public void syntaxErrorsAreScriptExceptions() throws ScriptException {
+		engine.eval("var ;");
+	}
+}
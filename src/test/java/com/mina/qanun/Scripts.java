@@ -0,0 +1,70 @@
+package com.mina.qanun;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs test programs from a directory of their own and keeps what they
+ * print.
+ *
+ * @author mina
+ */
+final class Scripts {
+
+	final Path directory;
+	private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+	final QanunContext context;
+
+	Scripts(Path directory) {
+		this.directory = directory;
+		this.context = new QanunContext(directory, new ByteArrayInputStream(new byte[0]),
+				new PrintStream(out, true), new PrintStream(err, true));
+	}
+
+	Path write(String name, String source) {
+		try {
+			return Files.write(directory.resolve(name), source.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	// returns the exit code of the run
+	int run(String name) {
+		try {
+			return context.runFile(name);
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	// links a program of the directory into a bundle, like 'qanun bundle'
+	boolean bundle(String name, String output) {
+		try {
+			return Bundle.build(context, directory.resolve(name), directory.resolve(output));
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	// writes the program and runs it
+	int run(String name, String source) {
+		write(name, source);
+		return run(name);
+	}
+
+	String out() {
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	String err() {
+		return new String(err.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
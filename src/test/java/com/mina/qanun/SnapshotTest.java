@@ -0,0 +1,99 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Images of the globals a prelude leaves behind.
+ *
+ * @author mina
+ */
+public class SnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String PRELUDE = ""
+			+ "import \"shapes\";\n"
+			+ "import \"std:Crypto\";\n"
+			+ "fun counter() { var count = 0; fun next() { count = count + 1; return count; } return next; }\n"
+			+ "var next = counter();\n"
+			+ "var also = next;\n"
+			+ "next();\n"
+			+ "class Named { fun init(name) { this.name = name; } static fun of(name) { return Named(name); } }\n"
+			+ "class Person : Named { fun init(name) { super.init(name); } fun greet() { return \"hi \" + this.name; } }\n"
+			+ "val bob = Person(\"bob\");\n"
+			+ "var items = [shapes.Square(2), 2.5, \"three\", nil, true];\n"
+			+ "var hash = Crypto.sha;\n"
+			+ "var say = println;\n";
+
+	private static final String MAIN = ""
+			+ "println(next());\n"
+			+ "println(also());\n"
+			+ "say(bob.greet());\n"
+			+ "println(Named.of(\"x\").name);\n"
+			+ "println(items[0].area());\n"
+			+ "println(len(items));\n"
+			+ "println(shapes.Square(3).area());\n"
+			+ "println(hash(\"qanun\") == Crypto.sha(\"qanun\"));\n";
+
+	@Test
+	public void restoredGlobalsAreWhatThePreludeLeft() throws IOException {
+		Path image = snapshot(PRELUDE);
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		assertTrue(Snapshot.restore(image, scripts.context.getInterpreter()));
+		int code = scripts.run("main.qan", MAIN);
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("2\n3\nhi bob\nx\n4\n5\n9\ntrue\n", scripts.out());
+	}
+
+	@Test
+	public void restoredConstantsStayConstant() throws IOException {
+		Path image = snapshot(PRELUDE);
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		assertTrue(Snapshot.restore(image, scripts.context.getInterpreter()));
+		assertEquals(70, scripts.run("main.qan", "bob = nil;\n"));
+		assertTrue(scripts.err(), scripts.err().contains("Assignment of constant variable 'bob'"));
+	}
+
+	// only values a script can make are written
+	@Test
+	public void valuesThatCantBeStoredFail() throws IOException {
+		Interpreter interpreter = new QanunContext().getInterpreter();
+		interpreter.globals.define(new Token(TokenType.IDENTIFIER, "thread", null, 0), Thread.currentThread());
+		try {
+			Snapshot.write(interpreter, folder.getRoot().toPath().resolve("prelude" + Snapshot.EXTENSION));
+			fail("a thread was put in a snapshot");
+		} catch (RuntimeError error) {
+			assertTrue(error.getMessage(), error.getMessage().contains("in a snapshot"));
+		}
+	}
+
+	@Test
+	public void otherFilesAreNotSnapshots() throws IOException {
+		Path image = folder.getRoot().toPath().resolve("fake" + Snapshot.EXTENSION);
+		Files.write(image, "not an image".getBytes(StandardCharsets.UTF_8));
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		assertFalse(Snapshot.restore(image, scripts.context.getInterpreter()));
+	}
+
+	private Path snapshot(String prelude) throws IOException {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("shapes.qan", "class Square { fun init(side) { this.side = side; } fun area() { return this.side * this.side; } }\n");
+		int code = scripts.run("prelude.qan", prelude);
+		assertEquals(scripts.err(), 0, code);
+		Path image = folder.getRoot().toPath().resolve("prelude" + Snapshot.EXTENSION);
+		Snapshot.write(scripts.context.getInterpreter(), image);
+		return image;
+	}
+}
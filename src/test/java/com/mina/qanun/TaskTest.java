@@ -0,0 +1,131 @@
+package com.mina.qanun;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tasks spawned with 'spawn' and std:Task.
+ *
+ * @author mina
+ */
+public class TaskTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String LIBRARY = ""
+			+ "fun twice(n) { var i = n; return i * 2; }\n"
+			+ "class Box { fun init(value) { this.value = value; } }\n"
+			+ "class Pair : Box { fun init(value) { super.init(value * 2); } }\n";
+
+	@Test
+	public void spawnedFunctionsShareGlobals() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("shared.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "var list = [1, 2];\n"
+				+ "fun work() { return len(list) * 10; }\n"
+				+ "println(Task.await(spawn(work)));\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("20\n", scripts.out());
+	}
+
+	@Test
+	public void taskImportsBeforeTheMainScript() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("lib.qan", LIBRARY);
+		int code = scripts.run("first.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "fun work() { import \"lib\"; return lib.twice(2); }\n"
+				+ "println(Task.await(spawn(work)));\n"
+				+ "import \"lib\";\n"
+				+ "println(lib.twice(3));\n"
+				+ "println(lib.Pair(4).value);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("4\n6\n8\n", scripts.out());
+	}
+
+	@Test
+	public void tasksImportTheSameModuleAtOnce() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		scripts.write("lib.qan", LIBRARY);
+		int code = scripts.run("many.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "fun work() { import \"lib\"; return lib.twice(1) + lib.Pair(1).value; }\n"
+				+ "var tasks = [];\n"
+				+ "for (var i = 0; i < 16; i = i + 1) tasks = tasks + [spawn(work)];\n"
+				+ "var total = 0;\n"
+				+ "for (var task : tasks) total = total + Task.await(task);\n"
+				+ "println(total);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("64\n", scripts.out());
+	}
+
+	// declarations of a module are run the first time they are used, here
+	// that happens on the tasks while the main script keeps using the module
+	@Test
+	public void lazyDeclarationsReachedFromTasks() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		StringBuilder library = new StringBuilder();
+		StringBuilder uses = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			library.append("fun f").append(i).append("(n) { var i = n; return i + 1; }\n");
+			uses.append(" + lib.f").append(i).append("(0)");
+		}
+		scripts.write("lib.qan", library.toString());
+		int code = scripts.run("lazy.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "import \"lib\";\n"
+				+ "fun work() { return 0" + uses + "; }\n"
+				+ "var tasks = [];\n"
+				+ "for (var i = 0; i < 8; i = i + 1) tasks = tasks + [spawn(work)];\n"
+				+ "var total = work();\n"
+				+ "for (var task : tasks) total = total + Task.await(task);\n"
+				+ "println(total);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("1800\n", scripts.out());
+	}
+
+	@Test
+	public void scopeFailsWithTheFirstError() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("scope.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "fun broken() { return nil + 1; }\n"
+				+ "fun slow() { while (!Task.cancelled()) {} return 1; }\n"
+				+ "fun body() { spawn(slow); spawn(broken); }\n"
+				+ "Task.scope(body);\n");
+		assertEquals(70, code);
+		assertTrue(scripts.err(), scripts.err().contains("Operands must be two numbers"));
+	}
+
+	// the tasks of a task spawned in a scope belong to the scope too
+	@Test
+	public void scopeWaitsForNestedTasks() {
+		Scripts scripts = new Scripts(folder.getRoot().toPath());
+		int code = scripts.run("nested.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "var results = [nil];\n"
+				+ "fun leaf() { var total = 0; for (var i = 0; i < 10000; i++) total = total + i; if (total > 0) results[0] = \"leaf\"; }\n"
+				+ "fun middle() { spawn(leaf); }\n"
+				+ "fun body() { spawn(middle); }\n"
+				+ "Task.scope(body);\n"
+				+ "println(results[0]);\n");
+		assertEquals(scripts.err(), 0, code);
+		assertEquals("leaf\n", scripts.out());
+		scripts = new Scripts(folder.getRoot().toPath());
+		code = scripts.run("failing.qan", ""
+				+ "import \"std:Task\";\n"
+				+ "fun broken() { return nil + 1; }\n"
+				+ "fun slow() { while (!Task.cancelled()) {} return 1; }\n"
+				+ "fun middle() { spawn(slow); spawn(broken); }\n"
+				+ "fun body() { spawn(middle); }\n"
+				+ "Task.scope(body);\n");
+		assertEquals(70, code);
+		assertTrue(scripts.err(), scripts.err().contains("Operands must be two numbers"));
+	}
+}